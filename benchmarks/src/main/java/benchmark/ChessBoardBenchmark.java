@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.SideHasNoMovesException;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Move generation and legality queries on ChessBoard, each call going
+ * through every position of the phase.
+ *
+ * @author Joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessBoardBenchmark {
+
+    @Param({"opening", "middlegame", "endgame"})
+    private String phase;
+
+    private ChessBoard[] boards;
+    private MoveList list;
+
+    // every move the pieces to move can make on an empty board, for each
+    // position, the candidates a controller asks pieceCanMove about
+    private List<List<Move>> candidates;
+
+    @Setup
+    public void setUp() {
+        List<String> fens = Positions.fens(phase);
+        boards = new ChessBoard[fens.size()];
+        list = new MoveList();
+        candidates = new ArrayList<>();
+
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new ChessBoard(fens.get(i));
+            Side side = boards[i].getSideToMove();
+            List<Move> moves = new ArrayList<>();
+            for (Map.Entry<Piece, Position> e
+                    : boards[i].getAllActivePiecesPositions().entrySet()) {
+                if (e.getKey().getSide() == side) {
+                    moves.addAll(e.getKey().generateMoves(e.getValue()));
+                }
+            }
+            candidates.add(moves);
+        }
+    }
+
+    @Benchmark
+    public void generateAllMovesForSide(Blackhole bh)
+        throws SideHasNoMovesException {
+        for (ChessBoard board : boards) {
+            bh.consume(board.generateAllMovesForSide(
+                        board.getSideToMove()));
+        }
+    }
+
+    @Benchmark
+    public void generateLegalMoves(Blackhole bh) {
+        for (ChessBoard board : boards) {
+            board.generateLegalMoves(board.getSideToMove(), list);
+            bh.consume(list.size());
+        }
+    }
+
+    @Benchmark
+    public void pieceCanMove(Blackhole bh) {
+        for (int i = 0; i < boards.length; i++) {
+            Side side = boards[i].getSideToMove();
+            for (Move m : candidates.get(i)) {
+                bh.consume(boards[i].pieceCanMove(m, side));
+            }
+        }
+    }
+
+    @Benchmark
+    public void isInCheck(Blackhole bh) {
+        for (ChessBoard board : boards) {
+            bh.consume(board.isInCheck(Side.WHITE));
+            bh.consume(board.isInCheck(Side.BLACK));
+        }
+    }
+}
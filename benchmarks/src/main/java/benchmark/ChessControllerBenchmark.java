@@ -0,0 +1,93 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import gamecontrol.ChessController;
+import model.IllegalMoveException;
+import model.Move;
+import model.Position;
+import model.chess.ChessBoard;
+import model.chess.PromotionMove;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One full turn through ChessController in every position of the phase:
+ * the move itself, the check test in endTurn and the move generation for
+ * the next side in beginTurn.
+ *
+ * Fresh controllers are set up before every call, which JMH does outside
+ * the measured time; the turns are long enough for that to be accurate.
+ *
+ * @author Joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessControllerBenchmark {
+
+    @Param({"opening", "middlegame", "endgame"})
+    private String phase;
+
+    private ChessController[] controllers;
+    private Move[] moves;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        List<String> fens = Positions.fens(phase);
+        controllers = new ChessController[fens.size()];
+        moves = new Move[fens.size()];
+        for (int i = 0; i < controllers.length; i++) {
+            String fen = fens.get(i);
+            controllers[i] = new ChessController(() -> new ChessBoard(fen));
+            controllers[i].startGame();
+            moves[i] = firstMove(controllers[i]);
+        }
+    }
+
+    @Benchmark
+    public void makeMove(Blackhole bh) throws IllegalMoveException {
+        for (int i = 0; i < controllers.length; i++) {
+            controllers[i].makeMove(moves[i]);
+            controllers[i].endTurn();
+            controllers[i].beginTurn();
+            bh.consume(controllers[i]);
+        }
+    }
+
+    // always play the same move: the first piece in board order to the
+    // first square it can reach, leaving out promotions which would ask the
+    // player for a piece
+    private static Move firstMove(ChessController controller) {
+        Move move = null;
+        for (int sq = 0; sq < 64 && move == null; sq++) {
+            for (Move m : controller.getMovesForPieceAt(Position.of(sq))) {
+                if (!(m instanceof PromotionMove) && (move == null
+                            || index(m) < index(move))) {
+                    move = m;
+                }
+            }
+        }
+        return move;
+    }
+
+    private static int index(Move m) {
+        return m.getDestination().getRow() * 8 + m.getDestination().getCol();
+    }
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import model.Piece;
+import model.Position;
+import model.chess.ChessBoard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ChessPiece.generateMoves for every piece of one type in every corpus
+ * position.
+ *
+ * @author Joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PieceBenchmark {
+
+    @Param({"PAWN", "ROOK", "KNIGHT", "BISHOP", "QUEEN", "KING"})
+    private String type;
+
+    private List<Piece> pieces;
+    private List<Position> positions;
+
+    @Setup
+    public void setUp() {
+        pieces = new ArrayList<>();
+        positions = new ArrayList<>();
+        for (String fen : Positions.all()) {
+            for (Map.Entry<Piece, Position> e : new ChessBoard(fen)
+                    .getAllActivePiecesPositions().entrySet()) {
+                if (e.getKey().getType().toString().equals(type)) {
+                    pieces.add(e.getKey());
+                    positions.add(e.getValue());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void generateMoves(Blackhole bh) {
+        for (int i = 0; i < pieces.size(); i++) {
+            bh.consume(pieces.get(i).generateMoves(positions.get(i)));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The positions every benchmark runs over, several for each game phase so
+ * that no single position's quirks decide a result. White is to move in
+ * all of them so that ChessController can start from any.
+ *
+ * @author Joe
+ */
+final class Positions {
+
+    static final List<String> OPENING = Collections.unmodifiableList(
+            Arrays.asList(
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+        "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w KQkq - 1 5",
+        "rnbqkb1r/ppp1pppp/5n2/3p4/2PP4/8/PP2PPPP/RNBQKBNR w KQkq - 1 3",
+        "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4"
+    ));
+
+    static final List<String> MIDDLEGAME = Collections.unmodifiableList(
+            Arrays.asList(
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - -",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -",
+        "r2q1rk1/pp2bppp/2n1pn2/3p4/3P4/2NBPN2/PP3PPP/R2Q1RK1 w - - 0 10",
+        "2rq1rk1/pb1nbppp/1p2pn2/2pp4/2PP4/1PN1PN2/PB2BPPP/2RQ1RK1 w - - 0 11"
+    ));
+
+    static final List<String> ENDGAME = Collections.unmodifiableList(
+            Arrays.asList(
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -",
+        "8/5pk1/6p1/8/3R4/6P1/5PKP/3r4 w - - 0 40",
+        "8/4kp2/4p1p1/3nP3/5P2/3B2P1/5K2/8 w - - 0 35",
+        "8/8/4k3/3p4/3P4/4K3/8/8 w - - 0 50"
+    ));
+
+    private static final Map<String, List<String>> BY_PHASE =
+        new HashMap<>();
+
+    static {
+        BY_PHASE.put("opening", OPENING);
+        BY_PHASE.put("middlegame", MIDDLEGAME);
+        BY_PHASE.put("endgame", ENDGAME);
+    }
+
+    private Positions() {
+    }
+
+    /**
+     * @param phase opening, middlegame or endgame
+     * @return the FENs of the positions of that phase
+     */
+    static List<String> fens(String phase) {
+        List<String> fens = BY_PHASE.get(phase);
+        if (fens == null) {
+            throw new IllegalArgumentException("No positions for " + phase);
+        }
+        return fens;
+    }
+
+    /**
+     * @return the FENs of every phase
+     */
+    static List<String> all() {
+        List<String> all = new ArrayList<>(OPENING);
+        all.addAll(MIDDLEGAME);
+        all.addAll(ENDGAME);
+        return all;
+    }
+}
@@ -256,7 +256,7 @@ public class BoardView {
                 buttonTypeThree, buttonTypeCancel);
             Optional<ButtonType> result = alert.showAndWait();
             if (result.get() == buttonTypeOne) {
-                reset(new AIChessController());
+                reset(new AIChessController(Platform::runLater));
             } else if (result.get() == buttonTypeTwo) {
                 reset(new ChessController());
             } else if (result.get() == buttonTypeThree) {
@@ -266,6 +266,26 @@ public class BoardView {
             }
         }
     }
+    /**
+     * Tells the user the computer could not choose a move, and asks it
+     * again if the user wants to.
+     *
+     * @param cause why the engine failed
+     */
+    private void handleEngineError(Throwable cause) {
+        Alert alert = new Alert(AlertType.ERROR);
+        alert.setTitle("The computer could not move");
+        alert.setHeaderText("Do you want it to try again?");
+        alert.setContentText(String.valueOf(cause));
+        ButtonType retry = new ButtonType("Try again");
+        ButtonType cancel = new ButtonType("Cancel", ButtonData.CANCEL_CLOSE);
+        alert.getButtonTypes().setAll(retry, cancel);
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isPresent() && result.get() == retry) {
+            controller.beginTurn();
+        }
+    }
+
     /**
      * Updates UI that depends upon which Side's turn it is
      * @param s The new Side whose turn it currently is
@@ -284,7 +304,16 @@ public class BoardView {
         if (controller instanceof NetworkedChessController) {
             ((NetworkedChessController) controller).close();
         }
+        // the computer must not go on thinking about an abandoned game
+        if (controller instanceof AIChessController
+                && controller != newController) {
+            ((AIChessController) controller).close();
+        }
         controller = newController;
+        if (controller instanceof AIChessController) {
+            ((AIChessController) controller).addEngineErrorListener(
+                    this::handleEngineError);
+        }
         isRotated = false;
         if (controller instanceof NetworkedChessController) {
             Side mySide
@@ -332,7 +361,7 @@ public class BoardView {
         /* Add the tiles */
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                Tile tile = new TileView(new Position(row, col));
+                Tile tile = new TileView(Position.of(row, col));
                 gridPane.add(tile.getRootNode(),
                         1 + tile.getPosition().getCol(),
                         1 + tile.getPosition().getRow());
@@ -8,6 +8,7 @@ import gamecontrol.ChessController;
 import gamecontrol.GameController;
 import gamecontrol.NetworkedChessController;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -51,7 +52,8 @@ public class ChessFX extends Application {
         join = new Button("Join the Host");
 
         humanVsHuman.setOnMouseClicked(e -> board.reset(new ChessController()));
-        humanVsAi.setOnMouseClicked(e -> board.reset(new AIChessController()));
+        humanVsAi.setOnMouseClicked(e -> board.reset(
+                    new AIChessController(Platform::runLater)));
         holdNet.setOnMouseClicked(makeHostListener());
         join.setOnMouseClicked(makeJoinListener(inputline));
         join.disableProperty().bind(Bindings.isEmpty(inputline.textProperty()));
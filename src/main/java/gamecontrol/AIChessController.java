@@ -1,53 +1,278 @@
 package gamecontrol;
 
 import gamecontrol.ai.AIChessEngine;
+import gamecontrol.ai.AsyncChessEngine;
+import gamecontrol.ai.PolyglotBook;
 import gamecontrol.ai.RandomChessEngine;
+import gamecontrol.ai.Tablebase;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import model.Board;
 import model.IllegalMoveException;
 import model.Move;
+import model.Position;
 import model.Side;
+import model.chess.PromotionMove;
 
 /**
  * Controls a game between one human and one computer
  *
+ * The computer thinks on a thread of its own: beginTurn returns at once,
+ * and the computer's move is made later, on the move executor given to the
+ * constructor. The board is not thread safe, so that executor must run the
+ * move on the thread the human's moves are made on. Until then the human
+ * cannot move. If the engine fails,
+ * no move is made and the engine error listeners are told.
+ *
  * @author Yufeng Wang
  */
 public class AIChessController extends ChessController {
 
     private Side mySide;
     private AIChessEngine aiChessEngine;
+    private AsyncChessEngine asyncEngine;
+    private Executor moveExecutor;
+    private long moveDeadlineMillis;
+    // the computer's move being thought about, or null
+    private volatile CompletableFuture<Move> thinking;
+    private PolyglotBook openingBook;
+    private Tablebase tablebase;
+    private boolean pondering;
+    private List<Consumer<Throwable>> engineErrorCallbacks =
+        new ArrayList<>();
+    private volatile Throwable engineError;
 
-    public AIChessController() {
-        this(Side.WHITE);
+    /**
+     * @param moveExecutor where the computer's moves are made once found,
+     * see setMoveExecutor
+     */
+    public AIChessController(Executor moveExecutor) {
+        this(Side.WHITE, moveExecutor);
     }
 
-    public AIChessController(Side s) {
-        this(s, new RandomChessEngine());
+    public AIChessController(Side s, Executor moveExecutor) {
+        this(s, new RandomChessEngine(), moveExecutor);
     }
 
-    public AIChessController(Side s, AIChessEngine ai) {
+    public AIChessController(Side s, AIChessEngine ai,
+            Executor moveExecutor) {
         mySide = s;
         aiChessEngine = ai;
+        asyncEngine = new AsyncChessEngine(ai);
+        setMoveExecutor(moveExecutor);
+    }
+
+    public AIChessController(Side s, AIChessEngine ai,
+            Supplier<? extends Board> boardFactory, Executor moveExecutor) {
+        super(boardFactory);
+        mySide = s;
+        aiChessEngine = ai;
+        asyncEngine = new AsyncChessEngine(ai);
+        setMoveExecutor(moveExecutor);
     }
 
     @Override
     public void beginTurn() {
         super.beginTurn();
-        if (getCurrentSide() != mySide && !getCurrentState().isGameOver()) {
-            Move selected = aiChessEngine.chooseNextMove(getCurrentMoves(),
-                    getBoard());
+        if (getCurrentSide() == mySide || getCurrentState().isGameOver()
+                || thinking != null) {
+            return;
+        }
+        Move selected = null;
+        if (openingBook != null) {
+            selected = openingBook.chooseMove(getCurrentMoves(), getBoard());
+        }
+        if (selected == null && tablebase != null) {
+            selected = tablebase.chooseMove(getCurrentMoves(), getBoard());
+        }
+        if (selected != null) {
+            aiChessEngine.stopPondering();
+            play(selected);
+            return;
+        }
+
+        engineError = null;
+        CompletableFuture<Move> move = asyncEngine.chooseNextMove(
+                getCurrentMoves(), getBoard(), moveDeadlineMillis);
+        thinking = move;
+        move.whenCompleteAsync((m, e) -> {
+            // a cancelled move belongs to a game that is over
+            if (thinking != move) {
+                return;
+            }
+            thinking = null;
+            if (e != null) {
+                failed(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+                return;
+            }
+            play(m);
+        }, moveExecutor);
+    }
+
+    // makes the computer's move, or any legal one if it has none to offer
+    private void play(Move selected) {
+        try {
+            super.makeMove(selected == null ? anyMove() : selected);
+        } catch (IllegalMoveException e) {
             try {
-                super.makeMove(selected);
-            } catch (IllegalMoveException e) {
-                beginTurn();
+                super.makeMove(anyMove());
+            } catch (IllegalMoveException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+        super.endTurn();
+        super.beginTurn();
+        if (pondering && !getCurrentState().isGameOver()) {
+            aiChessEngine.ponder(getBoard(), getCurrentSide());
+        }
+    }
+
+    // leaves the computer's turn open, for beginTurn to ask again
+    private void failed(Throwable cause) {
+        engineError = cause;
+        for (Consumer<Throwable> listener : engineErrorCallbacks) {
+            listener.accept(cause);
+        }
+    }
+
+    private Move anyMove() {
+        for (Set<Move> moves : getCurrentMoves().values()) {
+            for (Move m : moves) {
+                if (m instanceof PromotionMove) {
+                    ((PromotionMove) m).setPromotingTo(
+                            getDefaultPromotionType());
+                }
+                return m;
             }
-            super.endTurn();
-            super.beginTurn();
+        }
+        throw new IllegalStateException("No legal moves");
+    }
+
+    @Override
+    public Set<Move> getMovesForPieceAt(Position p) {
+        return getCurrentSide() == mySide ? super.getMovesForPieceAt(p)
+            : new HashSet<>();
+    }
+
+    /**
+     * Only the human's moves are made from outside; the computer's are
+     * made by beginTurn.
+     */
+    @Override
+    public void makeMove(Move possibleMove) throws IllegalMoveException {
+        if (getCurrentSide() != mySide) {
+            throw new IllegalMoveException(possibleMove);
+        }
+        super.makeMove(possibleMove);
+    }
+
+    /**
+     * @return whether the computer is thinking about a move
+     */
+    public boolean isThinking() {
+        return thinking != null;
+    }
+
+    /**
+     * @param listener told, on the move executor, when the engine fails
+     * instead of choosing a move; the computer's turn stays open until
+     * beginTurn is called again
+     */
+    public void addEngineErrorListener(Consumer<Throwable> listener) {
+        engineErrorCallbacks.add(listener);
+    }
+
+    /**
+     * @return why the engine failed to choose the computer's last move, or
+     * null if it did not
+     */
+    public Throwable getEngineError() {
+        return engineError;
+    }
+
+    /**
+     * @param executor where the computer's moves are made once found, on
+     * the thread the human's moves are made on, for instance
+     * Platform::runLater for a JavaFX UI
+     */
+    public void setMoveExecutor(Executor executor) {
+        moveExecutor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * @param millis how long the engine may think about a move before it
+     * is stopped and plays the best it has found, or 0 for no limit
+     */
+    public void setMoveDeadline(long millis) {
+        moveDeadlineMillis = millis;
+    }
+
+    /**
+     * Stops the computer thinking about this game, for when the game is
+     * abandoned. Any move it was thinking about is never made.
+     */
+    public void close() {
+        CompletableFuture<Move> move = thinking;
+        thinking = null;
+        if (move != null) {
+            move.cancel(false);
+        }
+        aiChessEngine.stopPondering();
+    }
+
+    /**
+     * Plays moves from book while it knows the position, and only asks the
+     * engine once the game has left it.
+     *
+     * @param book the opening book, or null to always ask the engine
+     */
+    public void setOpeningBook(PolyglotBook book) {
+        openingBook = book;
+    }
+
+    /**
+     * Plays perfectly from the endgame tables once few enough pieces are
+     * left, whatever the engine.
+     *
+     * @param tablebase the endgame tables, or null to always ask the engine
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Lets the engine think on the human's time, about the position it
+     * expects the human to leave. Engines that cannot ponder ignore it.
+     *
+     * @param pondering whether to ponder after every move
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            aiChessEngine.stopPondering();
         }
     }
 
     @Override
     public GameController getNewInstance() {
-        AIChessController res = new AIChessController();
+        AIChessController res = new AIChessController(mySide, aiChessEngine,
+                getBoardFactory(), moveExecutor);
+        // one thread for the engine, which must not think about this game
+        res.asyncEngine = asyncEngine;
+        close();
+        res.setOpeningBook(openingBook);
+        res.setTablebase(tablebase);
+        res.setMoveDeadline(moveDeadlineMillis);
+        res.setPondering(pondering);
         res.setCurrentState(ChessState.ONGOING);
         return res;
     }
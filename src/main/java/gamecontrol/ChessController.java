@@ -10,6 +10,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import model.Board;
 import model.IllegalMoveException;
 import model.Move;
 import model.Piece;
@@ -33,7 +34,8 @@ import model.chess.PromotionMove;
  */
 public class ChessController implements GameController {
 
-    private ChessBoard board;
+    private Supplier<? extends Board> boardFactory;
+    private Board board;
     private Side currentSide;
     private Map<Piece, Set<Move>> currentMoves;
     private List<BiConsumer<Move, List<Position>>> moveCallbacks;
@@ -47,12 +49,23 @@ public class ChessController implements GameController {
 
 
     public ChessController() {
+        this(ChessBoard::new);
+    }
+
+    /**
+     * Creates a controller that plays on boards made by boardFactory, for
+     * instance BitboardChessBoard::new
+     *
+     * @param boardFactory supplies a board with all pieces in the right place
+     */
+    public ChessController(Supplier<? extends Board> boardFactory) {
+        this.boardFactory = boardFactory;
         moveCallbacks = new ArrayList<>();
         stateCallbacks = new ArrayList<>();
         sideCallbacks = new ArrayList<>();
         promotionCallback = null;
         setCurrentState(ChessState.ONGOING);
-        setBoard(new ChessBoard());
+        setBoard(boardFactory.get());
         setCurrentSide(Side.WHITE);
         setCurrentMoves(new HashMap<>());
     }
@@ -143,10 +156,10 @@ public class ChessController implements GameController {
             if (m instanceof CastlingMove) {
                 CastlingMove cm = (CastlingMove) m;
                 CastlingMove.CastlingType castlingType = cm.getCastlingType();
-                Position start = new Position(mover.getSide().getBackRow(),
+                Position start = Position.of(mover.getSide().getBackRow(),
                         castlingType.getStartCol());
 
-                Position dest = new Position(mover.getSide().getBackRow(),
+                Position dest = Position.of(mover.getSide().getBackRow(),
                         castlingType.getDestCol());
 
                 Move moveTwo = new Move(start, dest);
@@ -161,11 +174,21 @@ public class ChessController implements GameController {
             // check for pawn promotion
             if (m instanceof PromotionMove) {
                 PromotionMove pm = (PromotionMove) m;
+                // a move that names its piece, an engine's say, keeps it
+                if (possibleMove instanceof PromotionMove
+                        && ((PromotionMove) possibleMove).getPromotingTo()
+                            != null) {
+                    pm.setPromotingTo(
+                            ((PromotionMove) possibleMove).getPromotingTo());
+                }
                 if (promotionCallback != null
                         && pm.getPromotingTo() == null) {
                     pm.setPromotingTo(promotionCallback.get());
 
                 }
+                if (pm.getPromotingTo() == null) {
+                    pm.setPromotingTo(getDefaultPromotionType());
+                }
                 board.replacePieceAt(m.getDestination(),
                         ChessUtils.getPieceOfType(
                                 pm.getPromotingTo(), currentSide));
@@ -261,16 +284,20 @@ public class ChessController implements GameController {
 
     @Override
     public GameController getNewInstance() {
-        ChessController res = new ChessController();
+        ChessController res = new ChessController(boardFactory);
         res.setCurrentState(ChessState.ONGOING);
         return res;
     }
 
-    protected ChessBoard getBoard() {
+    protected Board getBoard() {
         return board;
     }
 
-    private void setBoard(ChessBoard board) {
+    protected Supplier<? extends Board> getBoardFactory() {
+        return boardFactory;
+    }
+
+    private void setBoard(Board board) {
         this.board = board;
     }
 
@@ -280,6 +307,10 @@ public class ChessController implements GameController {
 
     protected Move queryForMove(Move m) {
         Move found = null;
+        // a piece of the side not to move has no moves
+        if (currentMoves == null || currentMoves.get(selectedPiece) == null) {
+            return null;
+        }
         for (Move test : currentMoves.get(selectedPiece)) {
             if (m.equals(test)) {
                 found = test;
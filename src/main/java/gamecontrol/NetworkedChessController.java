@@ -125,9 +125,9 @@ public class NetworkedChessController extends ChessController {
         if (m instanceof CastlingMove) {
             CastlingMove.CastlingType type
                     = ((CastlingMove) m).getCastlingType();
-            Position start = new Position(m.getDestination().getRow(),
+            Position start = Position.of(m.getDestination().getRow(),
                     type.getStartCol());
-            Position dest = new Position(m.getDestination().getRow(),
+            Position dest = Position.of(m.getDestination().getRow(),
                     type.getDestCol());
             Move castleMove = new Move(start, dest);
             out.println(m + ";" + castleMove);
@@ -163,7 +163,7 @@ public class NetworkedChessController extends ChessController {
         int row = Integer.parseInt(coords[0].trim());
         int col = Integer.parseInt(coords[1].trim());
 
-        Position passantCapturePos = new Position(row, col);
+        Position passantCapturePos = Position.of(row, col);
 
         Move m = parseRegularMove(pass[2]);
 
@@ -189,10 +189,10 @@ public class NetworkedChessController extends ChessController {
     private Move parseRegularMove(String move) {
         String[] both = move.split("->");
         String[] first = both[0].replaceAll("\\(|\\)", "").split(",");
-        Position uno = new Position(Integer.parseInt(
+        Position uno = Position.of(Integer.parseInt(
                 first[0].trim()), Integer.parseInt(first[1].trim()));
         String[] second = both[1].replaceAll("\\(|\\)", "").split(",");
-        Position dos = new Position(Integer.parseInt(
+        Position dos = Position.of(Integer.parseInt(
                 second[0].trim()), Integer.parseInt(second[1].trim()));
         return new Move(uno, dos);
     }
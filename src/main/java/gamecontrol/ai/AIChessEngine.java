@@ -3,6 +3,7 @@ package gamecontrol.ai;
 import model.Board;
 import model.Move;
 import model.Piece;
+import model.Side;
 
 import java.util.Map;
 import java.util.Set;
@@ -21,4 +22,38 @@ public interface AIChessEngine {
      * @return the AI's move
      */
     Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board);
+
+    /**
+     * Choose the next move, returning early when stop is given; engines
+     * that cannot stop early ignore it
+     * @param pieceMoves
+     * @param board
+     * @param stop stops this move's search and no other, whenever it comes
+     * @return the AI's move, or null if stopped before it had one
+     */
+    default Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves,
+            Board board, StopSignal stop) {
+        return chooseNextMove(pieceMoves, board);
+    }
+
+    /**
+     * Make a chooseNextMove running on another thread return as soon as it
+     * can, with the best move it has, or null if it has none yet
+     */
+    default void stop() {
+    }
+
+    /**
+     * Think about the game while the opponent does, if the engine can
+     * @param board the position after the engine's move
+     * @param opponent the side to move
+     */
+    default void ponder(Board board, Side opponent) {
+    }
+
+    /**
+     * Stop any thinking ponder started
+     */
+    default void stopPondering() {
+    }
 }
@@ -0,0 +1,596 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * Searches with negamax and alpha-beta pruning, one ply deeper at a time,
+ * until the SearchLimits say stop. When a time budget runs out in the
+ * middle of an iteration, the move of the last finished iteration is
+ * played, so a move always comes back within the budget.
+ *
+ * With more than one thread the search is Lazy SMP: helper threads search
+ * the same position on their own board copies, sharing nothing but the
+ * transposition table. What they store there steers and shortcuts the main
+ * thread, whose iterations alone decide the move.
+ *
+ * With a Tablebase set, positions the endgame tables hold are played from
+ * them at once, and the search scores every such position it reaches from
+ * the tables instead of searching on.
+ *
+ * After its move the engine can ponder: search, on the opponent's time,
+ * the position the opponent's expected reply leads to. If the opponent
+ * plays that reply, the next chooseNextMove carries on with that search
+ * instead of starting over; otherwise the search is stopped, and the
+ * transposition table keeps what it found. Pondering uses the same threads
+ * as a normal search, at the lowest priority, and stops by itself once it
+ * has used its ponder limits, by default those of the engine's own moves,
+ * so a long think by the opponent does not keep every thread busy.
+ *
+ * The board handed to chooseNextMove is copied, never changed. The result
+ * of the last search, including nodes per second, is kept for callers that
+ * want to report it.
+ *
+ * Usage: AlphaBetaChessEngine depth [fen], or AlphaBetaChessEngine
+ * millis ms [fen] for a timed search
+ *
+ * @author Joe
+ */
+public class AlphaBetaChessEngine implements AIChessEngine {
+
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_HASH_MEGABYTES = 16;
+
+    private final TranspositionTable table;
+    // one per thread, kept from one move to the next
+    private final PawnTable[] pawnTables;
+    private final int threads;
+    private ExecutorService helpers;
+    private volatile SearchLimits limits;
+    private volatile SearchLimits ponderLimits;
+    private volatile SearchOptions options = SearchOptions.all();
+    private volatile SearchResult lastResult;
+    private volatile Tablebase tablebase;
+    // the main searcher of the search under way, for stop
+    private volatile Searcher searching;
+    private ExecutorService ponderer;
+    private PonderSearch pondering;
+    private long ponderHits;
+    private long ponderMisses;
+    private Consumer<SearchResult> iterationListener;
+
+    public AlphaBetaChessEngine() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param depth how many plies to look ahead, at least 1
+     */
+    public AlphaBetaChessEngine(int depth) {
+        this(SearchLimits.depth(depth));
+    }
+
+    /**
+     * @param limits when every search should stop
+     */
+    public AlphaBetaChessEngine(SearchLimits limits) {
+        this(limits, DEFAULT_HASH_MEGABYTES);
+    }
+
+    /**
+     * @param limits when every search should stop
+     * @param hashMegabytes the size of the transposition table, which is
+     * kept from one move to the next
+     */
+    public AlphaBetaChessEngine(SearchLimits limits, int hashMegabytes) {
+        this(limits, hashMegabytes, 1);
+    }
+
+    /**
+     * @param limits when every search should stop
+     * @param hashMegabytes the size of the transposition table, which is
+     * kept from one move to the next
+     * @param threads how many threads search at once, at least 1
+     */
+    public AlphaBetaChessEngine(SearchLimits limits, int hashMegabytes,
+            int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.limits = limits;
+        this.threads = threads;
+        table = new TranspositionTable(hashMegabytes);
+        pawnTables = new PawnTable[threads];
+        for (int i = 0; i < threads; i++) {
+            pawnTables[i] = new PawnTable(PawnTable.DEFAULT_ENTRIES);
+        }
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        return chooseNextMove(pieceMoves, board, null);
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board,
+            StopSignal stop) {
+        if (pieceMoves == null || pieceMoves.isEmpty()) {
+            return null;
+        }
+        Side side = pieceMoves.keySet().iterator().next().getSide();
+        ChessBoard copy = board instanceof ChessBoard
+            ? new ChessBoard((ChessBoard) board) : new ChessBoard(board, side);
+
+        SearchResult pondered = takePondering(copy, side, stop);
+        SearchResult result = pondered != null ? pondered
+            : search(copy, side, limits, null, stop);
+        // stopped before the first iteration finished
+        if (result == null) {
+            return null;
+        }
+        lastResult = result;
+        return result.getMove();
+    }
+
+    /**
+     * Makes the search under way, on whatever thread, finish with the move
+     * of its last finished iteration.
+     */
+    @Override
+    public void stop() {
+        Searcher s = searching;
+        if (s != null) {
+            s.stop();
+        }
+    }
+
+    /**
+     * Starts searching, in the background, the position that the
+     * opponent's expected reply leads to. The reply is the best move the
+     * transposition table knows for the opponent, so nothing is pondered
+     * before a search has been made from the position before.
+     *
+     * @param board the position after the engine's move, which is copied
+     * @param opponent the side to move in it
+     */
+    @Override
+    public void ponder(Board board, Side opponent) {
+        stopPondering();
+        ChessBoard copy = board instanceof ChessBoard
+            ? new ChessBoard((ChessBoard) board)
+            : new ChessBoard(board, opponent);
+        int reply = expectedReply(copy, opponent);
+        if (reply == PackedMove.NONE) {
+            return;
+        }
+        copy.makeMove(reply);
+        Side side = Searcher.opponent(opponent);
+        SearchLimits budget = getPonderLimits();
+        PonderSearch p = new PonderSearch(reply, copy.hash(), side, budget);
+        p.setFuture(pondererPool().submit(() -> search(copy, side, budget,
+                        p, null)));
+        synchronized (this) {
+            pondering = p;
+        }
+    }
+
+    /**
+     * Stops pondering, if the engine is, and waits until it has stopped.
+     */
+    @Override
+    public void stopPondering() {
+        PonderSearch p;
+        synchronized (this) {
+            p = pondering;
+            pondering = null;
+            if (p != null) {
+                ponderMisses++;
+            }
+        }
+        // waited for unlocked, as the search may need the helper pool
+        if (p != null) {
+            p.cancel();
+        }
+    }
+
+    /**
+     * @return the search running on the opponent's time, or null
+     */
+    synchronized PonderSearch getPondering() {
+        return pondering;
+    }
+
+    // the pondered result if board is the position being pondered, after
+    // stopping any search of another
+    private SearchResult takePondering(ChessBoard board, Side side,
+            StopSignal stop) {
+        PonderSearch p;
+        synchronized (this) {
+            p = pondering;
+            if (p == null || !p.matches(board.hash(), side)) {
+                p = null;
+            } else {
+                pondering = null;
+                ponderHits++;
+            }
+        }
+        if (p == null) {
+            stopPondering();
+            return null;
+        }
+        if (stop != null) {
+            stop.register(p::stop);
+        }
+        SearchLimits moveLimits = limits;
+        SearchResult result = p.hit(moveLimits);
+        // a search that ran out of its budget short of the move's limits is
+        // redone; the table makes that quick
+        if (p.isSpent() && (result == null || moveLimits.isTimed()
+                    || result.getDepth() < moveLimits.getMaxDepth())) {
+            return null;
+        }
+        return result;
+    }
+
+    // the opponent's move the table expects, if it is legal here
+    private int expectedReply(ChessBoard board, Side opponent) {
+        long entry = table.probe(board.hash());
+        if (entry == TranspositionTable.MISS) {
+            return PackedMove.NONE;
+        }
+        MoveList moves = new MoveList();
+        board.generateLegalMoves(opponent, moves);
+        int move = TranspositionTable.move(entry);
+        return moves.contains(move) ? move : PackedMove.NONE;
+    }
+
+    /**
+     * Searches board to the given depth. The board is played on but left as
+     * it was found.
+     *
+     * @param board the position
+     * @param side the side to find a move for
+     * @param searchDepth how many plies to look ahead
+     * @return the best move and the statistics of the search
+     */
+    public SearchResult search(ChessBoard board, Side side, int searchDepth) {
+        return search(board, side, SearchLimits.depth(searchDepth));
+    }
+
+    /**
+     * Deepens the search of board one ply at a time until searchLimits are
+     * reached. The board is played on but left as it was found.
+     *
+     * @param board the position
+     * @param side the side to find a move for
+     * @param searchLimits when to stop
+     * @return the best move of the deepest finished iteration and the
+     * statistics of the whole search, or null if stop came before the
+     * first iteration finished
+     */
+    public SearchResult search(ChessBoard board, Side side,
+            SearchLimits searchLimits) {
+        stopPondering();
+        return search(board, side, searchLimits, null, null);
+    }
+
+    // a search, or with ponder set, a search that ponder's hit can turn
+    // into one for a move; stop, if set, stops this search only
+    private SearchResult search(ChessBoard board, Side side,
+            SearchLimits searchLimits, PonderSearch ponder, StopSignal stop) {
+        Tablebase tables = tablebase;
+        if (tables != null && board.getSideToMove() == side) {
+            SearchResult known = probe(board, tables);
+            if (known != null) {
+                return known;
+            }
+        }
+        table.newSearch();
+        SearchOptions searchOptions = options;
+        pawnTables[0].clearStats();
+        Searcher searcher = new Searcher(board, table, searchOptions,
+                pawnTables[0]);
+        searcher.setTablebase(tables);
+        searching = searcher;
+        if (ponder != null) {
+            ponder.attach(searcher);
+        }
+        if (stop != null) {
+            // a stop given before this point takes effect here
+            stop.register(searcher::stop);
+        }
+        List<Searcher> helperSearchers = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        for (int id = 1; id < threads; id++) {
+            Searcher helper = new Searcher(new ChessBoard(board), table,
+                    searchOptions, pawnTables[id]);
+            helper.setTablebase(tables);
+            helperSearchers.add(helper);
+            running.add(helperPool().submit(helperTask(helper, side, id,
+                            ponder != null)));
+        }
+
+        try {
+            return deepen(board, side, searchLimits, searcher,
+                    helperSearchers, ponder);
+        } finally {
+            searching = null;
+            for (Searcher helper : helperSearchers) {
+                helper.stop();
+            }
+            // the helpers must be off the table before the next search
+            for (Future<?> f : running) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+    }
+
+    // the tables' move, when they hold the position
+    private static SearchResult probe(ChessBoard board, Tablebase tables) {
+        long start = System.nanoTime();
+        int value = tables.value(board);
+        int best = tables.bestMove(board);
+        if (best == PackedMove.NONE) {
+            return null;
+        }
+        return new SearchResult(board.toMove(best), PackedMove.toString(best),
+                Searcher.tablebaseScore(value, 0), 0, 0,
+                System.nanoTime() - start);
+    }
+
+    // iterative deepening on the main thread
+    private SearchResult deepen(ChessBoard board, Side side,
+            SearchLimits searchLimits, Searcher searcher,
+            List<Searcher> helperSearchers, PonderSearch ponder) {
+        long start = System.nanoTime();
+
+        SearchResult result = null;
+        int best = PackedMove.NONE;
+        for (int depth = 1;; depth++) {
+            // a pondering search keeps to its budget until it is hit, then
+            // to the move's limits timed from the hit
+            boolean unhit = ponder != null && !ponder.isHit();
+            SearchLimits current = ponder == null ? searchLimits
+                : unhit ? ponder.getBudget() : ponder.getLimits();
+            long since = ponder == null ? start
+                : unhit ? ponder.getStartNanos() : ponder.getHitNanos();
+            long budget = current.getMoveTimeMillis() * 1000000L;
+            if (depth > current.getMaxDepth() || unhit && current.isTimed()
+                    && System.nanoTime() - since >= budget) {
+                if (unhit) {
+                    ponder.budgetSpent();
+                }
+                break;
+            }
+            // the first iteration always finishes so there is a move; the
+            // budget of an unhit ponder is only checked between iterations,
+            // so a hit never finds the search cut short
+            if (depth >= 2 && current.isTimed() && !unhit) {
+                searcher.setDeadline(since + budget);
+            }
+            int move = searcher.search(side, depth, best);
+            if (searcher.isAborted()) {
+                break;
+            }
+
+            best = move;
+            long elapsed = System.nanoTime() - start;
+            Move m = best == PackedMove.NONE ? null : board.toMove(best);
+            long nodes = searcher.getNodes();
+            for (Searcher helper : helperSearchers) {
+                // read while the helper runs, so only roughly right
+                nodes += helper.getNodes();
+            }
+            PawnTable pawns = pawnTables[0];
+            result = new SearchResult(m, PackedMove.toString(best),
+                    searcher.getBestScore(), depth, nodes, elapsed,
+                    pawns.getProbes(), pawns.getHits(),
+                    pawns.getSavedNanos());
+            if (iterationListener != null) {
+                iterationListener.accept(result);
+            }
+            if (ponder != null) {
+                ponder.finished(depth);
+            }
+
+            // nothing to choose from, or a forced mate was found
+            if (best == PackedMove.NONE || Math.abs(searcher.getBestScore())
+                    > Searcher.MATE - Searcher.MAX_PLY) {
+                break;
+            }
+            // the next iteration takes several times as long as this one
+            // and would most likely be thrown away
+            if (current.isTimed()
+                    && System.nanoTime() - since > budget / 2) {
+                if (unhit) {
+                    ponder.budgetSpent();
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    // helpers deepen until stopped; every other one starts a ply deeper so
+    // the threads spread over two depths instead of racing on one
+    private static Runnable helperTask(Searcher helper, Side side, int id,
+            boolean pondering) {
+        return () -> {
+            // a pondering search keeps to the priority of the ponder thread
+            Thread.currentThread().setPriority(pondering
+                    ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY);
+            for (int depth = 1 + id % 2; depth <= Searcher.MAX_PLY; depth++) {
+                helper.search(side, depth, PackedMove.NONE);
+                if (helper.isAborted()) {
+                    return;
+                }
+            }
+        };
+    }
+
+    private synchronized ExecutorService pondererPool() {
+        if (ponderer == null) {
+            ponderer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "search-ponder");
+                t.setDaemon(true);
+                // the opponent's side of the machine comes first
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        }
+        return ponderer;
+    }
+
+    private synchronized ExecutorService helperPool() {
+        if (helpers == null) {
+            helpers = Executors.newFixedThreadPool(threads - 1, r -> {
+                Thread t = new Thread(r, "search-helper");
+                // never keep the application alive
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return helpers;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the result of the last chooseNextMove, or null before the
+     * first
+     */
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * @return how often the opponent played the reply that was pondered
+     */
+    public synchronized long getPonderHits() {
+        return ponderHits;
+    }
+
+    /**
+     * @return how often pondering was stopped because the opponent played
+     * something else, or the game went on without the engine
+     */
+    public synchronized long getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * @return the share of pondered replies the opponent played, 0 before
+     * any
+     */
+    public synchronized double getPonderHitRate() {
+        long ponders = ponderHits + ponderMisses;
+        return ponders == 0 ? 0 : (double) ponderHits / ponders;
+    }
+
+    public SearchLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return how far ponder searches before the opponent moves
+     */
+    public SearchLimits getPonderLimits() {
+        SearchLimits l = ponderLimits;
+        return l == null ? limits : l;
+    }
+
+    /**
+     * @param ponderLimits how far ponder searches before the opponent
+     * moves, a depth or a time that is checked between iterations; null for
+     * the limits of the engine's own moves, the default. A search that is
+     * hit after it stopped is redone if it falls short of the move.
+     */
+    public void setPonderLimits(SearchLimits ponderLimits) {
+        this.ponderLimits = ponderLimits;
+    }
+
+    /**
+     * @param limits when the next chooseNextMove should stop, for instance
+     * SearchLimits.clock with the time left on a game clock
+     */
+    public void setLimits(SearchLimits limits) {
+        this.limits = limits;
+    }
+
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * @param tablebase endgame tables for later searches to play and score
+     * from, or null for none
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public SearchOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @param options the selective techniques later searches use; all of
+     * them unless set
+     */
+    public void setOptions(SearchOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * @param listener told about every finished iteration of a search, on
+     * the searching thread
+     */
+    public void setIterationListener(Consumer<SearchResult> listener) {
+        iterationListener = listener;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println(
+                    "Usage: AlphaBetaChessEngine depth|millis ms [fen]");
+            System.exit(1);
+        }
+        boolean timed = args.length > 1 && args[1].equals("ms");
+        int fenStart = timed ? 2 : 1;
+        SearchLimits limits = timed
+            ? SearchLimits.moveTime(Long.parseLong(args[0]))
+            : SearchLimits.depth(Integer.parseInt(args[0]));
+        ChessBoard board = args.length > fenStart
+            ? new ChessBoard(String.join(" ",
+                        Arrays.copyOfRange(args, fenStart, args.length)))
+            : new ChessBoard();
+
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(limits);
+        engine.setIterationListener(System.out::println);
+        engine.search(board, board.getSideToMove(), limits);
+    }
+}
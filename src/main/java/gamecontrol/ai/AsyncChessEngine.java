@@ -0,0 +1,109 @@
+package gamecontrol.ai;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+
+/**
+ * Runs an AIChessEngine on a thread of its own, so that whoever asks for a
+ * move, a UI thread say, is never held up while the engine thinks.
+ *
+ * Moves are chosen one at a time in the order they are asked for. A move
+ * can be cancelled, and can be given a deadline, counted from when the
+ * engine starts on it, after which the engine is told to stop and play the
+ * best move it has. Each move has its own StopSignal, so neither reaches
+ * the search of another move; engines that cannot stop early finish in
+ * their own time either way.
+ *
+ * The board and moves handed over must not change until the move comes
+ * back or is cancelled.
+ *
+ * @author Joe
+ */
+public final class AsyncChessEngine {
+
+    private final AIChessEngine engine;
+    private ExecutorService mover;
+    private ScheduledExecutorService timer;
+
+    public AsyncChessEngine(AIChessEngine engine) {
+        this.engine = engine;
+    }
+
+    public AIChessEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @param pieceMoves the legal moves, as for AIChessEngine
+     * @param board the position
+     * @param deadlineMillis how long the engine may think before it is told
+     * to stop, or 0 for as long as it likes
+     * @return the engine's move, possibly null; cancelling it stops its
+     * search, or keeps it from starting
+     */
+    public CompletableFuture<Move> chooseNextMove(
+            Map<Piece, Set<Move>> pieceMoves, Board board,
+            long deadlineMillis) {
+        CompletableFuture<Move> result = new CompletableFuture<>();
+        StopSignal stop = new StopSignal();
+        moverPool().execute(() -> {
+            // cancelled while waiting for the move before
+            if (result.isDone()) {
+                return;
+            }
+            // the time spent waiting for the move before does not count
+            ScheduledFuture<?> deadline = deadlineMillis <= 0 ? null
+                : timerPool().schedule(stop::stop, deadlineMillis,
+                        TimeUnit.MILLISECONDS);
+            try {
+                result.complete(engine.chooseNextMove(pieceMoves, board,
+                            stop));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+            }
+        });
+        result.whenComplete((m, e) -> {
+            if (result.isCancelled()) {
+                stop.stop();
+            }
+        });
+        return result;
+    }
+
+    private synchronized ExecutorService moverPool() {
+        if (mover == null) {
+            mover = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ai-move");
+                // never keep the application alive
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return mover;
+    }
+
+    private synchronized ScheduledExecutorService timerPool() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ai-deadline");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,290 @@
+package gamecontrol.ai;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Builds a Polyglot opening book, as PolyglotBook reads it, from a corpus
+ * of finished games. Every game is replayed through a ChessBoard and the
+ * wins, draws and losses of each move in its first plies are counted; a
+ * move is written with the Polyglot weight of two per win and one per
+ * draw, scaled to 16 bits within each position.
+ *
+ * Files are read in parallel, one file per thread, each counting into its
+ * own BookCounts, which are merged as the files finish. Files ending in .gz
+ * are unzipped on the fly. See GameReplayer for the formats that are read.
+ *
+ * Usage: BookBuilder [-plies n] [-min n] [-threads n] book.bin games...
+ *
+ * @author Joe
+ */
+public final class BookBuilder {
+
+    public static final int DEFAULT_PLIES = 40;
+    public static final int DEFAULT_MIN_GAMES = 2;
+
+    private static final int MAX_WEIGHT = 0xFFFF;
+
+    private final int plies;
+    private final int minGames;
+    private final int threads;
+    private final BookCounts counts = new BookCounts();
+
+    private long games;
+    private long skipped;
+
+    public BookBuilder() {
+        this(DEFAULT_PLIES, DEFAULT_MIN_GAMES,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param plies how many moves of each game go into the book
+     * @param minGames how many games must have played a move for it to be
+     * written
+     * @param threads how many files are read at once
+     */
+    public BookBuilder(int plies, int minGames, int threads) {
+        this.plies = plies;
+        this.minGames = minGames;
+        this.threads = threads;
+    }
+
+    /**
+     * Counts the games of every file, reading several files at once.
+     */
+    public void addGames(List<Path> files) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<GameReplayer>> results = new ArrayList<>();
+            for (Path file : files) {
+                results.add(pool.submit(() -> read(file)));
+            }
+            for (Future<GameReplayer> result : results) {
+                add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading games", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the games read from in, on the calling thread.
+     */
+    public void addGames(Reader in) throws IOException {
+        GameReplayer replayer = new GameReplayer(plies, new BookCounts());
+        replayer.read(in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in));
+        add(replayer);
+    }
+
+    /**
+     * @return the games counted
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * @return the games skipped for a bad move or an unknown result
+     */
+    public long getSkippedGames() {
+        return skipped;
+    }
+
+    /**
+     * Writes the book: the moves played in at least minGames games and won
+     * or drawn at least once, sorted by unsigned key and, within a
+     * position, best first.
+     *
+     * @return the number of entries written
+     */
+    public long write(Path out) throws IOException {
+        // copy the entries worth keeping out of the table, so that sorting
+        // them moves little data
+        int n = 0;
+        long[] keys = new long[counts.size()];
+        int[] moves = new int[counts.size()];
+        int[] weights = new int[counts.size()];
+        for (int i = 0; i < counts.capacity(); i++) {
+            if (!counts.isUsed(i)) {
+                continue;
+            }
+            long weight = 2L * counts.wins(i) + counts.draws(i);
+            long played = (long) counts.wins(i) + counts.draws(i)
+                + counts.losses(i);
+            if (played >= minGames && weight > 0) {
+                keys[n] = counts.key(i);
+                moves[n] = counts.move(i);
+                weights[n] = (int) Math.min(Integer.MAX_VALUE, weight);
+                n++;
+            }
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        sort(order, 0, n - 1, keys, weights);
+
+        try (DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(out),
+                        1 << 16))) {
+            for (int first = 0; first < n;) {
+                // the best move of the position comes first and sets the
+                // scale for the rest
+                long key = keys[order[first]];
+                int best = weights[order[first]];
+                int last = first;
+                while (last < n && keys[order[last]] == key) {
+                    int e = order[last++];
+                    long weight = best <= MAX_WEIGHT ? weights[e]
+                        : Math.max(1, (long) weights[e] * MAX_WEIGHT / best);
+                    data.writeLong(key);
+                    data.writeShort(moves[e]);
+                    data.writeShort((int) weight);
+                    data.writeInt(0);
+                }
+                first = last;
+            }
+        }
+        return n;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int plies = DEFAULT_PLIES;
+        int minGames = DEFAULT_MIN_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            if (args[i].equals("-plies")) {
+                plies = value;
+            } else if (args[i].equals("-min")) {
+                minGames = value;
+            } else if (args[i].equals("-threads")) {
+                threads = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+        if (args.length - i < 2) {
+            System.err.println("Usage: BookBuilder [-plies n] [-min n]"
+                    + " [-threads n] book.bin games...");
+            return;
+        }
+        Path out = Paths.get(args[i]);
+        List<Path> files = new ArrayList<>();
+        for (i++; i < args.length; i++) {
+            files.add(Paths.get(args[i]));
+        }
+
+        long start = System.nanoTime();
+        BookBuilder builder = new BookBuilder(plies, minGames, threads);
+        builder.addGames(files);
+        long entries = builder.write(out);
+        long nanos = Math.max(1, System.nanoTime() - start);
+        System.out.printf("%d games, %d skipped, %d entries in %.1f s,"
+                + " %d games/s%n", builder.getGames(),
+                builder.getSkippedGames(), entries, nanos / 1e9,
+                builder.getGames() * 1000000000L / nanos);
+        System.out.println("Keys are this project's own, see PolyglotKey;"
+                + " other Polyglot tools cannot read the book");
+    }
+
+    private GameReplayer read(Path file) throws IOException {
+        GameReplayer replayer = new GameReplayer(plies, new BookCounts());
+        InputStream in = Files.newInputStream(file);
+        if (file.toString().endsWith(".gz")) {
+            try {
+                in = new GZIPInputStream(in, 1 << 16);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        // PGN is Latin-1, which also reads any byte without failing
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        in, StandardCharsets.ISO_8859_1), 1 << 16)) {
+            replayer.read(reader);
+        }
+        return replayer;
+    }
+
+    private synchronized void add(GameReplayer replayer) {
+        counts.merge(replayer.getCounts());
+        games += replayer.getGames();
+        skipped += replayer.getSkipped();
+    }
+
+    // sorts the entry numbers in order by unsigned key, then by weight
+    // from high to low
+    private static void sort(int[] order, int low, int high, long[] keys,
+            int[] weights) {
+        while (high - low > 16) {
+            int pivot = order[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(order[i], pivot, keys, weights) < 0) {
+                    i++;
+                }
+                while (compare(order[j], pivot, keys, weights) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            // recurse into the smaller half so the stack stays shallow
+            if (j - low < high - i) {
+                sort(order, low, j, keys, weights);
+                low = i;
+            } else {
+                sort(order, i, high, keys, weights);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            int e = order[i];
+            int j = i - 1;
+            while (j >= low && compare(order[j], e, keys, weights) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = e;
+        }
+    }
+
+    private static int compare(int a, int b, long[] keys, int[] weights) {
+        int c = Long.compareUnsigned(keys[a], keys[b]);
+        return c != 0 ? c : Integer.compare(weights[b], weights[a]);
+    }
+}
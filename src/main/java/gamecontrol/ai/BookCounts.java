@@ -0,0 +1,164 @@
+package gamecontrol.ai;
+
+/**
+ * Wins, draws and losses of every book move seen, by Polyglot position key
+ * and Polyglot move, counted for the side that played the move. An open
+ * addressing table of primitive arrays, so counting millions of moves
+ * allocates nothing but the occasional bigger table.
+ *
+ * A table is not thread safe; every reader counts into its own and they
+ * are merged at the end.
+ *
+ * @author Joe
+ */
+final class BookCounts {
+
+    static final int WIN = 1;
+    static final int DRAW = 0;
+    static final int LOSS = -1;
+
+    private static final int INITIAL_BITS = 12;
+
+    private long[] keys;
+    // a Polyglot move is never 0, which marks an empty slot
+    private int[] moves;
+    private int[] wins;
+    private int[] draws;
+    private int[] losses;
+    private int bits;
+    private int size;
+
+    BookCounts() {
+        allocate(INITIAL_BITS);
+    }
+
+    /**
+     * Counts one game in which the side to move played move.
+     *
+     * @param key the Polyglot key of the position
+     * @param move the move as a Polyglot book writes it
+     * @param result WIN, DRAW or LOSS for the side that played it
+     */
+    void add(long key, int move, int result) {
+        add(key, move, result == WIN ? 1 : 0, result == DRAW ? 1 : 0,
+                result == LOSS ? 1 : 0);
+    }
+
+    /**
+     * Adds the counts of other to this table.
+     */
+    void merge(BookCounts other) {
+        // walking a bigger table in slot order would pile its entries up
+        // in one stretch of a smaller one
+        while (capacity() < other.capacity()) {
+            grow();
+        }
+        for (int i = 0; i < other.capacity(); i++) {
+            if (other.moves[i] != 0) {
+                add(other.keys[i], other.moves[i], other.wins[i],
+                        other.draws[i], other.losses[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct position and move pairs
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots, for walking the table with the
+     * accessors below
+     */
+    int capacity() {
+        return moves.length;
+    }
+
+    /**
+     * @return whether slot i holds a position and move
+     */
+    boolean isUsed(int i) {
+        return moves[i] != 0;
+    }
+
+    long key(int i) {
+        return keys[i];
+    }
+
+    int move(int i) {
+        return moves[i];
+    }
+
+    int wins(int i) {
+        return wins[i];
+    }
+
+    int draws(int i) {
+        return draws[i];
+    }
+
+    int losses(int i) {
+        return losses[i];
+    }
+
+    private void add(long key, int move, int win, int draw, int loss) {
+        int i = find(key, move);
+        if (moves[i] == 0) {
+            keys[i] = key;
+            moves[i] = move;
+            if (++size * 2 > capacity()) {
+                grow();
+                i = find(key, move);
+            }
+        }
+        wins[i] += win;
+        draws[i] += draw;
+        losses[i] += loss;
+    }
+
+    // the slot of key and move, or the empty slot where they belong
+    private int find(long key, int move) {
+        int mask = capacity() - 1;
+        int i = slot(key, move);
+        while (moves[i] != 0 && (keys[i] != key || moves[i] != move)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int slot(long key, int move) {
+        // the keys are random already; the move tells apart the moves of
+        // one position
+        return (int) ((key ^ move * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldMoves = moves;
+        int[] oldWins = wins;
+        int[] oldDraws = draws;
+        int[] oldLosses = losses;
+        allocate(bits + 1);
+        for (int i = 0; i < oldMoves.length; i++) {
+            if (oldMoves[i] != 0) {
+                int j = find(oldKeys[i], oldMoves[i]);
+                keys[j] = oldKeys[i];
+                moves[j] = oldMoves[i];
+                wins[j] = oldWins[i];
+                draws[j] = oldDraws[i];
+                losses[j] = oldLosses[i];
+            }
+        }
+    }
+
+    private void allocate(int bits) {
+        this.bits = bits;
+        keys = new long[1 << bits];
+        moves = new int[1 << bits];
+        wins = new int[1 << bits];
+        draws = new int[1 << bits];
+        losses = new int[1 << bits];
+    }
+}
@@ -0,0 +1,67 @@
+package gamecontrol.ai;
+
+import java.nio.ByteBuffer;
+
+import model.Side;
+import model.chess.ChessPiece;
+
+/**
+ * Looks up positions of one material in the endgame table that holds it,
+ * with the pieces listed in whatever order the caller keeps them. When the
+ * table has the colours the other way round, the board is flipped and the
+ * side to move swapped on the way in.
+ *
+ * @author Joe
+ */
+final class EndgameProbe {
+
+    private final EndgameTable table;
+    private final ByteBuffer data;
+    private final boolean flip;
+    // the caller's piece for each piece of the table
+    private final int[] order;
+
+    /**
+     * @param sides the side of each of the caller's pieces
+     * @param types the type of each of the caller's pieces
+     * @param table the table of the material, either way round
+     * @param data the values of table
+     */
+    EndgameProbe(Side[] sides, ChessPiece.ChessPieceType[] types,
+            EndgameTable table, ByteBuffer data) {
+        this.table = table;
+        this.data = data;
+        int n = table.getPieces();
+        flip = !EndgameTable.name(sides, types, n).equals(table.getName());
+        order = new int[n];
+        boolean[] used = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            Side side = flip ? Searcher.opponent(table.side(k))
+                : table.side(k);
+            for (int i = 0; i < n; i++) {
+                if (!used[i] && sides[i] == side
+                        && types[i] == table.type(k)) {
+                    used[i] = true;
+                    order[k] = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param squares the square of each of the caller's pieces
+     * @param toMove the side to move
+     * @param scratch room for a square per piece
+     * @return the table's byte for the position, see EndgameTable
+     */
+    int value(int[] squares, Side toMove, int[] scratch) {
+        for (int k = 0; k < order.length; k++) {
+            int sq = squares[order[k]];
+            // a flipped board puts White's pieces where Black's were
+            scratch[k] = flip ? sq ^ 56 : sq;
+        }
+        Side s = flip ? Searcher.opponent(toMove) : toMove;
+        return data.get(table.index(scratch, s)) & 0xFF;
+    }
+}
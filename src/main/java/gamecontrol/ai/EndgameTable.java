@@ -0,0 +1,240 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessPiece;
+
+/**
+ * The layout of one endgame table: which pieces it holds and where each
+ * position lives in it.
+ *
+ * A table is named by its material, White's pieces and then Black's, each
+ * starting with the king and strongest first, for example KQK, KPK or
+ * KBNK. The stronger side is always White; the same endgame with colours
+ * reversed is looked up with the board flipped.
+ *
+ * A position's index packs the side to move, the white king and every
+ * other piece's square, in the order the name lists them. The white king is
+ * kept on the a to d files by mirroring the board, which halves the table
+ * and is exact as no castling is left in these endgames. Every index
+ * stands for exactly one placement, so there are no collisions; placements
+ * that are not legal positions are marked INVALID.
+ *
+ * Each position is one byte: 0 for a draw, 1 to 127 for a win for the side
+ * to move in that many moves, 128 plus n for a loss in n moves, 128 itself
+ * being checkmate, and INVALID.
+ *
+ * @author Joe
+ */
+final class EndgameTable {
+
+    static final int DRAW = 0;
+    static final int INVALID = 255;
+
+    private static final int LOSS = 128;
+
+    private static final String LETTERS = "KQRBNP";
+    private static final ChessPiece.ChessPieceType[] TYPES = {
+        ChessPiece.ChessPieceType.KING, ChessPiece.ChessPieceType.QUEEN,
+        ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.BISHOP,
+        ChessPiece.ChessPieceType.KNIGHT, ChessPiece.ChessPieceType.PAWN
+    };
+    // by LETTERS, to decide which side is the stronger
+    private static final int[] VALUES = {0, 9, 5, 3, 3, 1};
+
+    private final String name;
+    private final Side[] sides;
+    private final ChessPiece.ChessPieceType[] types;
+    private final int size;
+
+    private EndgameTable(String name, Side[] sides,
+            ChessPiece.ChessPieceType[] types) {
+        this.name = name;
+        this.sides = sides;
+        this.types = types;
+        size = 2 * 32 << 6 * (types.length - 1);
+    }
+
+    /**
+     * @param name the material, for example KRKP or KPKR, in any order
+     * @return the table of the material, which has the stronger side first
+     */
+    static EndgameTable of(String name) {
+        EndgameTable table = parse(name);
+        String proper = canonical(name(table.sides, table.types,
+                    table.types.length));
+        return proper.equals(name) ? table : parse(proper);
+    }
+
+    private static EndgameTable parse(String name) {
+        int blackKing = name.indexOf('K', 1);
+        if (!name.startsWith("K") || blackKing < 0) {
+            throw new IllegalArgumentException("Not an endgame: " + name);
+        }
+        // the kings first, then the others in the order of the name
+        List<Side> sides = new ArrayList<>();
+        List<ChessPiece.ChessPieceType> types = new ArrayList<>();
+        sides.add(Side.WHITE);
+        types.add(ChessPiece.ChessPieceType.KING);
+        sides.add(Side.BLACK);
+        types.add(ChessPiece.ChessPieceType.KING);
+        for (int i = 1; i < name.length(); i++) {
+            int letter = LETTERS.indexOf(name.charAt(i));
+            if (letter < 0 || letter == 0 && i != blackKing) {
+                throw new IllegalArgumentException("Not an endgame: " + name);
+            }
+            if (i != blackKing) {
+                sides.add(i < blackKing ? Side.WHITE : Side.BLACK);
+                types.add(TYPES[letter]);
+            }
+        }
+        return new EndgameTable(name, sides.toArray(new Side[0]),
+                types.toArray(new ChessPiece.ChessPieceType[0]));
+    }
+
+    /**
+     * @param sides the side of each piece
+     * @param types the type of each piece, two of them kings
+     * @param n how many of the entries are pieces
+     * @return the name of the material as written, with either side first
+     */
+    static String name(Side[] sides, ChessPiece.ChessPieceType[] types,
+            int n) {
+        StringBuilder white = new StringBuilder("K");
+        StringBuilder black = new StringBuilder("K");
+        for (int letter = 1; letter < LETTERS.length(); letter++) {
+            for (int i = 0; i < n; i++) {
+                if (types[i] == TYPES[letter]) {
+                    (sides[i] == Side.WHITE ? white : black)
+                        .append(LETTERS.charAt(letter));
+                }
+            }
+        }
+        return white.append(black).toString();
+    }
+
+    /**
+     * @return the name of the table that holds the material, which is name
+     * itself or name with the colours reversed
+     */
+    static String canonical(String name) {
+        int blackKing = name.indexOf('K', 1);
+        String white = name.substring(0, blackKing);
+        String black = name.substring(blackKing);
+        return isStronger(black, white) ? black + white : name;
+    }
+
+    // whether one side's pieces are worth more than the other's, the
+    // stronger pieces breaking a tie
+    private static boolean isStronger(String a, String b) {
+        int difference = value(a) - value(b);
+        if (difference != 0) {
+            return difference > 0;
+        }
+        for (int i = 1; i < Math.min(a.length(), b.length()); i++) {
+            int c = LETTERS.indexOf(b.charAt(i)) - LETTERS.indexOf(a.charAt(i));
+            if (c != 0) {
+                return c > 0;
+            }
+        }
+        return a.length() > b.length();
+    }
+
+    private static int value(String pieces) {
+        int value = 0;
+        for (int i = 1; i < pieces.length(); i++) {
+            value += VALUES[LETTERS.indexOf(pieces.charAt(i))];
+        }
+        return value;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of pieces, kings included
+     */
+    int getPieces() {
+        return types.length;
+    }
+
+    Side side(int piece) {
+        return sides[piece];
+    }
+
+    ChessPiece.ChessPieceType type(int piece) {
+        return types[piece];
+    }
+
+    /**
+     * @return the number of positions, valid or not
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param squares the square of each piece, in this table's order
+     * @param toMove the side to move
+     * @return where the position, or its mirror image, is in the table
+     */
+    int index(int[] squares, Side toMove) {
+        // the files are mirrored when the white king is on the e to h files
+        int mirror = Bitboards.col(squares[0]) > 3 ? 7 : 0;
+        int king = squares[0] ^ mirror;
+        int index = toMove.ordinal() * 32 + Bitboards.row(king) * 4
+            + Bitboards.col(king);
+        for (int i = 1; i < types.length; i++) {
+            index = index << 6 | (squares[i] ^ mirror);
+        }
+        return index;
+    }
+
+    /**
+     * Fills in the squares of the position at index.
+     *
+     * @return the side to move
+     */
+    Side decode(int index, int[] squares) {
+        for (int i = types.length - 1; i > 0; i--) {
+            squares[i] = index & 63;
+            index >>>= 6;
+        }
+        squares[0] = Bitboards.square((index & 31) / 4, index % 4);
+        return Side.values()[index / 32];
+    }
+
+    /**
+     * @return the byte of a win in plies half moves, an odd number
+     */
+    static int win(int plies) {
+        return (plies + 1) / 2;
+    }
+
+    /**
+     * @return the byte of a loss in plies half moves, an even number
+     */
+    static int loss(int plies) {
+        return LOSS + plies / 2;
+    }
+
+    static boolean isWin(int value) {
+        return value > DRAW && value < LOSS;
+    }
+
+    static boolean isLoss(int value) {
+        return value >= LOSS && value != INVALID;
+    }
+
+    /**
+     * @param value a win or a loss
+     * @return how many half moves until mate
+     */
+    static int plies(int value) {
+        return isWin(value) ? 2 * value - 1 : 2 * (value - LOSS);
+    }
+}
@@ -0,0 +1,106 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.PieceSquareTables;
+
+/**
+ * Static evaluation of a position for the search, in centipawns, and the
+ * plain piece values the move ordering and exchange evaluation use.
+ *
+ * @author Joe
+ */
+public final class Evaluator {
+
+    // indexed by ChessPieceType ordinal; the king is never traded
+    private static final int[] VALUES = {100, 500, 320, 330, 900, 0};
+
+    // endgame, per row a passed pawn has advanced, for every row between
+    // a king and the square in front of the pawn
+    private static final int PASSED_ENEMY_KING = 5;
+    private static final int PASSED_OWN_KING = 2;
+
+    private Evaluator() {
+    }
+
+    /**
+     * @param type a chess piece type
+     * @return what the piece is worth in centipawns
+     */
+    public static int value(ChessPiece.ChessPieceType type) {
+        return VALUES[type.ordinal()];
+    }
+
+    /**
+     * @param board the position
+     * @param move a PackedMove of the side to move on board
+     * @return the material move wins once every capture on its destination
+     * has been played out, negative if it loses material
+     */
+    public static int see(ChessBoard board, int move) {
+        return board.see(move, VALUES);
+    }
+
+    /**
+     * A tapered evaluation: the middlegame and endgame piece-square scores
+     * the board keeps up to date plus the pawn structure, blended by the
+     * game phase. Reading them costs the same however many pieces there
+     * are, and the pawn structure is almost always cached. The cached
+     * passed pawns are scored once more in the endgame by how near the
+     * kings are to them, which the pawn table cannot know.
+     *
+     * @param board the position
+     * @param s the side the score is for
+     * @param pawns the cache of pawn structure scores
+     * @return how much better the position is for s than for its opponent
+     */
+    static int evaluate(ChessBoard board, Side s, PawnTable pawns) {
+        int entry = pawns.probe(board);
+        int midgame = board.getMidgameScore(Side.WHITE)
+            - board.getMidgameScore(Side.BLACK) + pawns.midgame(entry);
+        int endgame = board.getEndgameScore(Side.WHITE)
+            - board.getEndgameScore(Side.BLACK) + pawns.endgame(entry)
+            + kingsToPassers(board, Side.WHITE, pawns.passed(entry,
+                        Side.WHITE))
+            - kingsToPassers(board, Side.BLACK, pawns.passed(entry,
+                        Side.BLACK));
+        int phase = Math.min(board.getPhase(), PieceSquareTables.MAX_PHASE);
+        int score = (midgame * phase
+                + endgame * (PieceSquareTables.MAX_PHASE - phase))
+            / PieceSquareTables.MAX_PHASE;
+        return s == Side.WHITE ? score : -score;
+    }
+
+    // rewards s for a passed pawn its own king is near and the enemy king
+    // is far from, the more the further the pawn has come
+    private static int kingsToPassers(ChessBoard board, Side s, long passed) {
+        long own = board.getPieces(s, ChessPiece.ChessPieceType.KING);
+        long enemy = board.getPieces(s == Side.WHITE ? Side.BLACK
+                : Side.WHITE, ChessPiece.ChessPieceType.KING);
+        if (passed == 0 || own == 0 || enemy == 0) {
+            return 0;
+        }
+        int ownKing = Bitboards.first(own);
+        int enemyKing = Bitboards.first(enemy);
+        int score = 0;
+        for (long bb = passed; bb != 0; bb &= bb - 1) {
+            int sq = Bitboards.first(bb);
+            // white pawns move towards row 0; a passed pawn is never on
+            // the last row, so the stop square is on the board
+            int stop = s == Side.WHITE ? sq - 8 : sq + 8;
+            int advanced = s == Side.WHITE ? 6 - Bitboards.row(sq)
+                : Bitboards.row(sq) - 1;
+            score += advanced * (PASSED_ENEMY_KING * distance(enemyKing, stop)
+                    - PASSED_OWN_KING * distance(ownKing, stop));
+        }
+        return score;
+    }
+
+    // the number of king moves between two squares
+    private static int distance(int a, int b) {
+        return Math.max(Math.abs(Bitboards.row(a) - Bitboards.row(b)),
+                Math.abs(Bitboards.col(a) - Bitboards.col(b)));
+    }
+}
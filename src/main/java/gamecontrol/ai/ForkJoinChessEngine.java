@@ -0,0 +1,225 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * Searches every root move as its own task on a ForkJoinPool, and with
+ * splitReplies every reply to a root move too, so idle workers steal
+ * subtrees from busy ones.
+ *
+ * Unlike the Lazy SMP mode of AlphaBetaChessEngine the result depends only
+ * on the position and the depth, never on the number of threads or how the
+ * tasks were scheduled: every subtree is searched with a full window and a
+ * transposition table that is emptied before it starts, and ties go to the
+ * lowest PackedMove. The price is that subtrees cannot narrow each other's
+ * windows, so more nodes are searched than by one alpha-beta search.
+ *
+ * The engine owns its pool: close it when done, or its worker threads are
+ * kept until the pool is garbage collected.
+ *
+ * @author Joe
+ */
+public class ForkJoinChessEngine implements AIChessEngine, AutoCloseable {
+
+    // per worker thread, cleared before every subtree
+    private static final int TABLE_MEGABYTES = 2;
+
+    private final int depth;
+    private final boolean splitReplies;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<TranspositionTable> tables =
+        ThreadLocal.withInitial(() -> new TranspositionTable(TABLE_MEGABYTES));
+    // only a cache of exact scores, so it need not be cleared
+    private final ThreadLocal<PawnTable> pawnTables =
+        ThreadLocal.withInitial(() -> new PawnTable(
+                    PawnTable.DEFAULT_ENTRIES));
+    private volatile SearchResult lastResult;
+
+    /**
+     * @param depth how many plies to look ahead, at least 1
+     * @param parallelism how many worker threads to use
+     * @param splitReplies whether the replies to each root move are split
+     * into tasks as well, which balances the work better when there are
+     * few root moves or many threads
+     */
+    public ForkJoinChessEngine(int depth, int parallelism,
+            boolean splitReplies) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        this.depth = depth;
+        this.splitReplies = splitReplies;
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Searches only the moves in pieceMoves, on a copy of board.
+     */
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        if (pieceMoves == null || pieceMoves.isEmpty()) {
+            return null;
+        }
+        Side side = pieceMoves.keySet().iterator().next().getSide();
+        ChessBoard copy = board instanceof ChessBoard
+            ? new ChessBoard((ChessBoard) board) : new ChessBoard(board, side);
+
+        MoveList rootMoves = new MoveList();
+        for (Set<Move> moves : pieceMoves.values()) {
+            for (Move m : moves) {
+                int move = copy.encode(m);
+                if (!rootMoves.contains(move)) {
+                    rootMoves.add(move);
+                }
+            }
+        }
+        lastResult = search(copy, side, rootMoves);
+        return lastResult.getMove();
+    }
+
+    /**
+     * Searches every legal move of side. The board is not changed.
+     */
+    public SearchResult search(ChessBoard board, Side side) {
+        MoveList rootMoves = new MoveList();
+        board.generateLegalMoves(side, rootMoves);
+        return search(board, side, rootMoves);
+    }
+
+    private SearchResult search(ChessBoard board, Side side,
+            MoveList rootMoves) {
+        long start = System.nanoTime();
+        // the order the moves came in must not decide ties
+        int[] moves = new int[rootMoves.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = rootMoves.get(i);
+        }
+        Arrays.sort(moves);
+
+        List<SubtreeTask> tasks = new ArrayList<>();
+        for (int move : moves) {
+            tasks.add(new SubtreeTask(board, move, Searcher.opponent(side),
+                        depth - 1, 1, splitReplies));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        int best = PackedMove.NONE;
+        int bestScore = -Searcher.INFINITY;
+        long nodes = 0;
+        for (int i = 0; i < moves.length; i++) {
+            SubtreeTask task = tasks.get(i);
+            nodes += task.nodes;
+            if (-task.score > bestScore) {
+                bestScore = -task.score;
+                best = moves[i];
+            }
+        }
+        if (best == PackedMove.NONE) {
+            return new SearchResult(null, "0000", 0, depth, nodes,
+                    System.nanoTime() - start);
+        }
+        return new SearchResult(board.toMove(best), PackedMove.toString(best),
+                bestScore, depth, nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * @return the result of the last chooseNextMove, or null before the
+     * first
+     */
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts the worker threads down once any search under way has finished.
+     * The engine cannot search after this.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // scores the position after one move for the side that answers it;
+    // tasks are never serialized
+    @SuppressWarnings("serial")
+    private final class SubtreeTask extends RecursiveAction {
+
+        private final ChessBoard board;
+        private final Side side;
+        private final int depth;
+        private final int ply;
+        private final boolean split;
+        private int score;
+        private long nodes;
+
+        SubtreeTask(ChessBoard parent, int move, Side side, int depth,
+                int ply, boolean split) {
+            board = new ChessBoard(parent);
+            board.makeMove(move);
+            this.side = side;
+            this.depth = depth;
+            this.ply = ply;
+            this.split = split;
+        }
+
+        @Override
+        protected void compute() {
+            if (split && depth > 1) {
+                splitReplies();
+                return;
+            }
+            TranspositionTable table = tables.get();
+            table.clear();
+            Searcher searcher = new Searcher(board, table,
+                    SearchOptions.all(), pawnTables.get());
+            score = searcher.score(side, depth, ply);
+            nodes = searcher.getNodes();
+        }
+
+        private void splitReplies() {
+            MoveList replies = new MoveList();
+            board.generateLegalMoves(side, replies);
+            nodes = 1;
+            if (replies.isEmpty()) {
+                score = board.isInCheck(side) ? -Searcher.MATE + ply : 0;
+                return;
+            }
+            List<SubtreeTask> tasks = new ArrayList<>();
+            for (int i = 0; i < replies.size(); i++) {
+                tasks.add(new SubtreeTask(board, replies.get(i),
+                            Searcher.opponent(side), depth - 1, ply + 1,
+                            false));
+            }
+            invokeAll(tasks);
+
+            score = -Searcher.INFINITY;
+            for (SubtreeTask task : tasks) {
+                nodes += task.nodes;
+                score = Math.max(score, -task.score);
+            }
+        }
+    }
+}
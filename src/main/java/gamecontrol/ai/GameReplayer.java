@@ -0,0 +1,377 @@
+package gamecontrol.ai;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * Replays finished games through a ChessBoard and counts the opening moves
+ * of each into a BookCounts.
+ *
+ * Games are read as PGN, with tags, comments, variations and numeric
+ * annotations skipped and a FEN tag honoured, or as plain lists of moves
+ * in coordinate notation such as e2e4 e7e5 g1f3. Both notations may be
+ * mixed freely. A game ends at its result, 1-0, 0-1, 1/2-1/2 or *; a game
+ * without a decided result or with a move that does not parse or is not
+ * legal is skipped.
+ *
+ * @author Joe
+ */
+final class GameReplayer {
+
+    private final int plies;
+    private final BookCounts counts;
+    private final ChessBoard start = new ChessBoard();
+    private final MoveList legal = new MoveList();
+
+    // the game being read
+    private ChessBoard board = start;
+    private String fen;
+    private final long[] keys;
+    private final int[] moves;
+    private final Side[] movers;
+    private int played;
+    private boolean inGame;
+    private boolean broken;
+
+    // nesting of comments and variations still open at the end of a line
+    private boolean inComment;
+    private int variations;
+
+    private long games;
+    private long skipped;
+
+    /**
+     * @param plies how many moves of each game count, from its start
+     * @param counts what the moves are counted into
+     */
+    GameReplayer(int plies, BookCounts counts) {
+        this.plies = plies;
+        this.counts = counts;
+        keys = new long[plies];
+        moves = new int[plies];
+        movers = new Side[plies];
+    }
+
+    /**
+     * Reads every game in, counting the finished ones. A game cut off at
+     * the end of the input is dropped.
+     */
+    void read(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            readLine(line);
+        }
+        if (inGame) {
+            endGame(null);
+        }
+    }
+
+    /**
+     * @return the games counted so far
+     */
+    long getGames() {
+        return games;
+    }
+
+    /**
+     * @return the games skipped for a bad move or an unknown result
+     */
+    long getSkipped() {
+        return skipped;
+    }
+
+    BookCounts getCounts() {
+        return counts;
+    }
+
+    private void readLine(String line) {
+        int i = 0;
+        int n = line.length();
+        if (!inComment && variations == 0 && n > 0 && line.charAt(0) == '[') {
+            readTag(line);
+            return;
+        }
+        while (i < n) {
+            char c = line.charAt(i);
+            if (inComment) {
+                inComment = c != '}';
+                i++;
+            } else if (c == '{') {
+                inComment = true;
+                i++;
+            } else if (c == ';') {
+                // the rest of the line is a comment
+                return;
+            } else if (c == '(') {
+                variations++;
+                i++;
+            } else if (c == ')') {
+                variations = Math.max(0, variations - 1);
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int end = i;
+                while (end < n && !isDelimiter(line.charAt(end))) {
+                    end++;
+                }
+                if (variations == 0) {
+                    readToken(line, i, end);
+                }
+                i = end;
+            }
+        }
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '{' || c == '(' || c == ')'
+            || c == ';';
+    }
+
+    private void readTag(String line) {
+        if (inGame) {
+            // the last game had no result
+            endGame(null);
+        }
+        if (line.startsWith("[FEN ")) {
+            int open = line.indexOf('"');
+            int close = line.lastIndexOf('"');
+            if (open >= 0 && close > open) {
+                fen = line.substring(open + 1, close);
+            }
+        }
+    }
+
+    private void readToken(String line, int start, int end) {
+        if (matches(line, start, end, "1-0")) {
+            endGame(Side.WHITE);
+            return;
+        } else if (matches(line, start, end, "0-1")) {
+            endGame(Side.BLACK);
+            return;
+        } else if (matches(line, start, end, "1/2-1/2")) {
+            endGame(null, true);
+            return;
+        } else if (matches(line, start, end, "*")) {
+            endGame(null);
+            return;
+        }
+        // move numbers, 12. or 12..., may run into the move itself
+        int digits = start;
+        while (digits < end && Character.isDigit(line.charAt(digits))) {
+            digits++;
+        }
+        if (digits > start && digits < end && line.charAt(digits) == '.'
+                || digits == end) {
+            start = digits;
+            while (start < end && line.charAt(start) == '.') {
+                start++;
+            }
+        }
+        if (start == end || line.charAt(start) == '$') {
+            return;
+        }
+        if (!inGame) {
+            startGame();
+        }
+        if (broken || played == plies) {
+            return;
+        }
+        Side s = board.getSideToMove();
+        int move = parseMove(s, line, start, end);
+        if (move == PackedMove.NONE) {
+            broken = true;
+            return;
+        }
+        keys[played] = PolyglotKey.of(board);
+        moves[played] = PolyglotBook.bookMove(move);
+        movers[played] = s;
+        played++;
+        board.makeMove(move);
+    }
+
+    private static boolean matches(String line, int start, int end,
+            String token) {
+        return end - start == token.length()
+            && line.regionMatches(start, token, 0, token.length());
+    }
+
+    private void startGame() {
+        inGame = true;
+        board = fen == null ? start : new ChessBoard(fen);
+    }
+
+    private void endGame(Side winner) {
+        endGame(winner, false);
+    }
+
+    // counts the game if it is sound and decided; a draw has no winner
+    private void endGame(Side winner, boolean drawn) {
+        if (!broken && (winner != null || drawn) && played > 0) {
+            for (int i = 0; i < played; i++) {
+                counts.add(keys[i], moves[i], drawn ? BookCounts.DRAW
+                        : movers[i] == winner ? BookCounts.WIN
+                        : BookCounts.LOSS);
+            }
+            games++;
+        } else if (inGame) {
+            skipped++;
+        }
+        // the start position is reused, so take the game back
+        if (board == start) {
+            for (int i = 0; i < played; i++) {
+                start.unmakeMove();
+            }
+        }
+        board = start;
+        fen = null;
+        played = 0;
+        inGame = false;
+        broken = false;
+    }
+
+    /**
+     * Finds the legal move a token stands for, in SAN such as Nbd7, exd8=Q+
+     * or O-O, or in coordinate notation such as b8d7 or e7d8q.
+     *
+     * @return the move, or PackedMove.NONE if there is no such legal move
+     */
+    private int parseMove(Side s, String line, int start, int end) {
+        // check, mate and annotation marks say nothing about the move
+        while (end > start && "+#!?".indexOf(line.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        if (end - start < 2) {
+            return PackedMove.NONE;
+        }
+        board.generateLegalMoves(s, legal);
+
+        char first = line.charAt(start);
+        if (first == 'O' || first == '0') {
+            int flags = end - start >= 5 ? PackedMove.QUEEN_CASTLE
+                : PackedMove.KING_CASTLE;
+            for (int i = 0; i < legal.size(); i++) {
+                if (PackedMove.flags(legal.get(i)) == flags) {
+                    return legal.get(i);
+                }
+            }
+            return PackedMove.NONE;
+        }
+
+        if (isCoordinate(line, start, end)) {
+            int from = square(line, start);
+            int to = square(line, start + 2);
+            ChessPiece.ChessPieceType promotion = end - start == 5
+                ? promotion(Character.toUpperCase(line.charAt(start + 4)))
+                : null;
+            return find(s, null, from, to, -1, -1, promotion);
+        }
+
+        ChessPiece.ChessPieceType type = ChessPiece.ChessPieceType.PAWN;
+        if (Character.isUpperCase(first)) {
+            type = piece(first);
+            if (type == null) {
+                return PackedMove.NONE;
+            }
+            start++;
+        }
+        ChessPiece.ChessPieceType promotion = null;
+        if (Character.isUpperCase(line.charAt(end - 1))) {
+            promotion = promotion(line.charAt(end - 1));
+            if (promotion == null) {
+                return PackedMove.NONE;
+            }
+            end--;
+            if (end > start && line.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+        if (end - start < 2 || !isSquare(line, end - 2)) {
+            return PackedMove.NONE;
+        }
+        int to = square(line, end - 2);
+
+        // what is left says where the piece comes from, if it has to
+        int fromRow = -1;
+        int fromCol = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = line.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromCol = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRow = '8' - c;
+            } else if (c != 'x' && c != '-' && c != ':') {
+                return PackedMove.NONE;
+            }
+        }
+        return find(s, type, -1, to, fromRow, fromCol, promotion);
+    }
+
+    // the legal move that fits every given part, type and from being
+    // optional
+    private int find(Side s, ChessPiece.ChessPieceType type, int from, int to,
+            int fromRow, int fromCol, ChessPiece.ChessPieceType promotion) {
+        for (int i = 0; i < legal.size(); i++) {
+            int m = legal.get(i);
+            int f = PackedMove.from(m);
+            if (PackedMove.to(m) == to && (from < 0 || f == from)
+                    && (fromRow < 0 || Bitboards.row(f) == fromRow)
+                    && (fromCol < 0 || Bitboards.col(f) == fromCol)
+                    && PackedMove.promotionType(m) == promotion
+                    && (type == null || (board.getPieces(s, type)
+                            & Bitboards.bit(f)) != 0)) {
+                return m;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    private static boolean isCoordinate(String line, int start, int end) {
+        return (end - start == 4 || end - start == 5) && isSquare(line, start)
+            && isSquare(line, start + 2);
+    }
+
+    private static boolean isSquare(String line, int i) {
+        char file = line.charAt(i);
+        char rank = line.charAt(i + 1);
+        return file >= 'a' && file <= 'h' && rank >= '1' && rank <= '8';
+    }
+
+    private static int square(String line, int i) {
+        return Bitboards.square('8' - line.charAt(i + 1),
+                line.charAt(i) - 'a');
+    }
+
+    private static ChessPiece.ChessPieceType piece(char c) {
+        switch (c) {
+        case 'K':
+            return ChessPiece.ChessPieceType.KING;
+        case 'P':
+            return ChessPiece.ChessPieceType.PAWN;
+        default:
+            return promotion(c);
+        }
+    }
+
+    private static ChessPiece.ChessPieceType promotion(char c) {
+        switch (c) {
+        case 'Q':
+            return ChessPiece.ChessPieceType.QUEEN;
+        case 'R':
+            return ChessPiece.ChessPieceType.ROOK;
+        case 'B':
+            return ChessPiece.ChessPieceType.BISHOP;
+        case 'N':
+            return ChessPiece.ChessPieceType.KNIGHT;
+        default:
+            return null;
+        }
+    }
+}
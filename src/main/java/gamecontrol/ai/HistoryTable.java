@@ -0,0 +1,72 @@
+package gamecontrol.ai;
+
+import model.Piece;
+import model.Position;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.PackedMove;
+
+/**
+ * What the search has learned about quiet moves that cut off: the last two
+ * killer moves at every ply, and for every piece and destination square a
+ * history score that grows with the depth of each cutoff.
+ *
+ * @author Joe
+ */
+final class HistoryTable {
+
+    // halving every score once one passes this keeps them from overflowing
+    // and lets old cutoffs fade
+    private static final int MAX_SCORE = 1 << 24;
+
+    private static final int PIECE_KINDS =
+        2 * ChessPiece.ChessPieceType.values().length;
+
+    private final int[][] scores = new int[PIECE_KINDS][64];
+    private final int[][] killers = new int[Searcher.MAX_PLY + 1][2];
+
+    /**
+     * @param slot 0 for the newest killer, 1 for the one before
+     * @return a killer move at ply, or PackedMove.NONE
+     */
+    int killer(int ply, int slot) {
+        return killers[ply][slot];
+    }
+
+    /**
+     * @param move a quiet move of the side to move on board
+     */
+    int score(ChessBoard board, int move) {
+        return scores[pieceIndex(board, PackedMove.from(move))]
+            [PackedMove.to(move)];
+    }
+
+    /**
+     * Remembers a quiet move that caused a cutoff. The move must not have
+     * been made on board.
+     */
+    void cutoff(ChessBoard board, int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] pieceScores = scores[pieceIndex(board, PackedMove.from(move))];
+        int to = PackedMove.to(move);
+        pieceScores[to] += depth * depth;
+        if (pieceScores[to] > MAX_SCORE) {
+            for (int[] row : scores) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] /= 2;
+                }
+            }
+        }
+    }
+
+    private static int pieceIndex(ChessBoard board, int sq) {
+        Piece p = board.getPieceAt(Position.of(Bitboards.row(sq),
+                    Bitboards.col(sq)));
+        return p.getSide().ordinal() * PIECE_KINDS / 2
+            + ((ChessPiece.ChessPieceType) p.getType()).ordinal();
+    }
+}
@@ -0,0 +1,194 @@
+package gamecontrol.ai;
+
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * Hands out the moves of one position best first, in stages: the hash
+ * move, captures and promotions by most valuable victim and least valuable
+ * attacker, the two killer moves of the ply, then the quiet moves by their
+ * history score. A stage is only generated once the ones before it are used
+ * up, so a cutoff on the hash move or a capture never pays for the quiet
+ * moves.
+ *
+ * Within a stage the best remaining move is picked on every call rather
+ * than sorting, as most nodes cut off after one or two moves.
+ *
+ * One picker serves one ply of one searcher and is reused for every node at
+ * that ply.
+ *
+ * @author Joe
+ */
+final class MovePicker {
+
+    private static final int HASH_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int CAPTURES = 2;
+    private static final int KILLERS = 3;
+    private static final int GENERATE_QUIETS = 4;
+    private static final int QUIETS = 5;
+    private static final int DONE = 6;
+
+    private final ChessBoard board;
+    private final HistoryTable history;
+    private final MoveList moves = new MoveList();
+    private final int[] scores = new int[256];
+
+    private Side side;
+    private int hashMove;
+    private int killer1;
+    private int killer2;
+    private boolean capturesOnly;
+    private int stage;
+    private int next;
+
+    /**
+     * @param board the board the searcher plays on
+     * @param history shared by every ply of the searcher
+     */
+    MovePicker(ChessBoard board, HistoryTable history) {
+        this.board = board;
+        this.history = history;
+    }
+
+    /**
+     * Starts on the moves of a new position.
+     *
+     * @param s the side to move
+     * @param hashMove tried first if it is legal here, or PackedMove.NONE
+     * @param ply where the position is in the search, for the killers
+     * @param captures whether only captures and promotions are wanted
+     */
+    void reset(Side s, int hashMove, int ply, boolean captures) {
+        side = s;
+        this.hashMove = hashMove;
+        killer1 = history.killer(ply, 0);
+        killer2 = history.killer(ply, 1);
+        capturesOnly = captures;
+        stage = HASH_MOVE;
+    }
+
+    /**
+     * @return the next move to search, or PackedMove.NONE when there are
+     * no more
+     */
+    // each stage falls into the next once it is used up
+    @SuppressWarnings("fallthrough")
+    int next() {
+        switch (stage) {
+        case HASH_MOVE:
+            stage = GENERATE_CAPTURES;
+            if (hashMove != PackedMove.NONE
+                    && (!capturesOnly || isTactical(hashMove))
+                    && board.isLegal(side, hashMove)) {
+                return hashMove;
+            }
+            // fall through
+        case GENERATE_CAPTURES:
+            board.generateLegalCaptures(side, moves);
+            for (int i = 0; i < moves.size(); i++) {
+                scores[i] = mvvLva(moves.get(i));
+            }
+            next = 0;
+            stage = CAPTURES;
+            // fall through
+        case CAPTURES:
+            int capture = pickBest();
+            if (capture != PackedMove.NONE) {
+                return capture;
+            }
+            if (capturesOnly) {
+                stage = DONE;
+                return PackedMove.NONE;
+            }
+            stage = KILLERS;
+            next = 0;
+            // fall through
+        case KILLERS:
+            while (next < 2) {
+                int killer = next++ == 0 ? killer1 : killer2;
+                if (killer != PackedMove.NONE && killer != hashMove
+                        && board.isLegal(side, killer)) {
+                    return killer;
+                }
+            }
+            stage = GENERATE_QUIETS;
+            // fall through
+        case GENERATE_QUIETS:
+            board.generateLegalQuiets(side, moves);
+            for (int i = 0; i < moves.size(); i++) {
+                scores[i] = history.score(board, moves.get(i));
+            }
+            next = 0;
+            stage = QUIETS;
+            // fall through
+        case QUIETS:
+            int quiet;
+            do {
+                quiet = pickBest();
+            } while (quiet != PackedMove.NONE
+                    && (quiet == killer1 || quiet == killer2));
+            if (quiet != PackedMove.NONE) {
+                return quiet;
+            }
+            stage = DONE;
+            // fall through
+        default:
+            return PackedMove.NONE;
+        }
+    }
+
+    // swaps the best scored move left into place next, skipping the hash
+    // move, which has been searched already
+    private int pickBest() {
+        while (next < moves.size()) {
+            int best = next;
+            for (int i = next + 1; i < moves.size(); i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            int move = moves.get(best);
+            moves.set(best, moves.get(next));
+            scores[best] = scores[next];
+            next++;
+            if (move != hashMove) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    // the victim counts far more than the attacker, so any capture of a
+    // queen comes before any capture of a rook
+    private int mvvLva(int move) {
+        int to = PackedMove.to(move);
+        int score = 0;
+        if (PackedMove.isEnPassant(move)) {
+            score = Evaluator.value(ChessPiece.ChessPieceType.PAWN) * 16;
+        } else if (PackedMove.isCapture(move)) {
+            score = Evaluator.value(typeAt(to)) * 16;
+        }
+        ChessPiece.ChessPieceType promotion = PackedMove.promotionType(move);
+        if (promotion != null) {
+            score += Evaluator.value(promotion) * 16;
+        }
+        return score - Evaluator.value(typeAt(PackedMove.from(move))) / 16;
+    }
+
+    private ChessPiece.ChessPieceType typeAt(int sq) {
+        Piece p = board.getPieceAt(Position.of(Bitboards.row(sq),
+                    Bitboards.col(sq)));
+        return (ChessPiece.ChessPieceType) p.getType();
+    }
+
+    private static boolean isTactical(int move) {
+        return PackedMove.isCapture(move) || PackedMove.isPromotion(move);
+    }
+}
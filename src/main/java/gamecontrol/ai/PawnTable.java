@@ -0,0 +1,224 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+
+/**
+ * Caches the pawn structure evaluation by the board's pawn hash. Pawns
+ * move in few of the moves a search makes, so nearly every evaluation finds
+ * its pawns already scored.
+ *
+ * An entry holds the middlegame and endgame score of doubled, isolated,
+ * backward and passed pawns, from White's side, and the passed pawns of
+ * each side. A table is not thread safe; every searcher needs its own.
+ *
+ * @author Joe
+ */
+final class PawnTable {
+
+    static final int DEFAULT_ENTRIES = 1 << 14;
+
+    private static final int DOUBLED_MIDGAME = -10;
+    private static final int DOUBLED_ENDGAME = -20;
+    private static final int ISOLATED_MIDGAME = -10;
+    private static final int ISOLATED_ENDGAME = -15;
+    private static final int BACKWARD_MIDGAME = -8;
+    private static final int BACKWARD_ENDGAME = -10;
+
+    // by rows left to promotion; the piece-square tables already pay for
+    // advancing, this is for having no pawn in the way
+    private static final int[] PASSED_MIDGAME = {0, 60, 35, 20, 10, 5, 0, 0};
+    private static final int[] PASSED_ENDGAME = {
+        0, 120, 80, 50, 30, 15, 10, 0
+    };
+
+    private static final long[] FILES = new long[8];
+    private static final long[] ADJACENT_FILES = new long[8];
+    // [side][square]: where enemy pawns stop a pawn from being passed
+    private static final long[][] PASSED_SPANS = new long[2][64];
+    // [side][square]: where friendly pawns could still support a pawn
+    private static final long[][] SUPPORT_SPANS = new long[2][64];
+
+    static {
+        for (int col = 0; col < 8; col++) {
+            for (int row = 0; row < 8; row++) {
+                FILES[col] |= Bitboards.bit(Bitboards.square(row, col));
+            }
+        }
+        for (int col = 0; col < 8; col++) {
+            ADJACENT_FILES[col] = (col > 0 ? FILES[col - 1] : 0)
+                | (col < 7 ? FILES[col + 1] : 0);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int row = Bitboards.row(sq);
+            int col = Bitboards.col(sq);
+            long files = FILES[col] | ADJACENT_FILES[col];
+            for (int r = 0; r < 8; r++) {
+                long rowMask = 0xFFL << (8 * r);
+                // white pawns move towards row 0
+                if (r < row) {
+                    PASSED_SPANS[Side.WHITE.ordinal()][sq] |= files & rowMask;
+                } else {
+                    SUPPORT_SPANS[Side.WHITE.ordinal()][sq] |=
+                        ADJACENT_FILES[col] & rowMask;
+                }
+                if (r > row) {
+                    PASSED_SPANS[Side.BLACK.ordinal()][sq] |= files & rowMask;
+                } else {
+                    SUPPORT_SPANS[Side.BLACK.ordinal()][sq] |=
+                        ADJACENT_FILES[col] & rowMask;
+                }
+            }
+        }
+    }
+
+    private final long[] keys;
+    private final int[] midgame;
+    private final int[] endgame;
+    private final long[][] passed;
+    private final int mask;
+
+    private long probes;
+    private long hits;
+    private long missNanos;
+
+    /**
+     * @param entries rounded down to a power of two
+     */
+    PawnTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        midgame = new int[size];
+        endgame = new int[size];
+        passed = new long[2][size];
+        mask = size - 1;
+        // every entry starts out as the empty pawn structure, which is
+        // right for the pawn hash of no pawns, 0, and misses for any other
+    }
+
+    /**
+     * Finds the pawn structure of board, scoring it first if it is not
+     * cached.
+     *
+     * @return the entry, for midgame, endgame and passed
+     */
+    int probe(ChessBoard board) {
+        long key = board.pawnHash();
+        int entry = (int) key & mask;
+        probes++;
+        if (keys[entry] == key) {
+            hits++;
+            return entry;
+        }
+        long start = System.nanoTime();
+        keys[entry] = key;
+        score(board, entry);
+        missNanos += System.nanoTime() - start;
+        return entry;
+    }
+
+    /**
+     * @return the middlegame pawn structure score for White
+     */
+    int midgame(int entry) {
+        return midgame[entry];
+    }
+
+    /**
+     * @return the endgame pawn structure score for White
+     */
+    int endgame(int entry) {
+        return endgame[entry];
+    }
+
+    /**
+     * @return the passed pawns of side s
+     */
+    long passed(int entry, Side s) {
+        return passed[s.ordinal()][entry];
+    }
+
+    long getProbes() {
+        return probes;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return roughly the time the hits saved: what scoring the pawns took
+     * on average, for every hit
+     */
+    long getSavedNanos() {
+        long misses = probes - hits;
+        return misses == 0 ? 0 : missNanos / misses * hits;
+    }
+
+    void clearStats() {
+        probes = 0;
+        hits = 0;
+        missNanos = 0;
+    }
+
+    private void score(ChessBoard board, int entry) {
+        long white = board.getPieces(Side.WHITE,
+                ChessPiece.ChessPieceType.PAWN);
+        long black = board.getPieces(Side.BLACK,
+                ChessPiece.ChessPieceType.PAWN);
+        midgame[entry] = 0;
+        endgame[entry] = 0;
+        passed[Side.WHITE.ordinal()][entry] = score(Side.WHITE, white, black,
+                entry, 1);
+        passed[Side.BLACK.ordinal()][entry] = score(Side.BLACK, black, white,
+                entry, -1);
+    }
+
+    // adds the terms of the pawns of s to the entry, with sign 1 for White
+    // and -1 for Black, and returns the passed pawns
+    private long score(Side s, long own, long enemy, int entry, int sign) {
+        long passedPawns = 0;
+        int mg = 0;
+        int eg = 0;
+        for (int col = 0; col < 8; col++) {
+            int onFile = Bitboards.count(own & FILES[col]);
+            if (onFile > 1) {
+                mg += DOUBLED_MIDGAME * (onFile - 1);
+                eg += DOUBLED_ENDGAME * (onFile - 1);
+            }
+        }
+
+        for (long bb = own; bb != 0; bb &= bb - 1) {
+            int sq = Bitboards.first(bb);
+            int col = Bitboards.col(sq);
+            if ((enemy & PASSED_SPANS[s.ordinal()][sq]) == 0) {
+                passedPawns |= Bitboards.bit(sq);
+                int toGo = s == Side.WHITE ? Bitboards.row(sq)
+                    : 7 - Bitboards.row(sq);
+                mg += PASSED_MIDGAME[toGo];
+                eg += PASSED_ENDGAME[toGo];
+            }
+            if ((own & ADJACENT_FILES[col]) == 0) {
+                mg += ISOLATED_MIDGAME;
+                eg += ISOLATED_ENDGAME;
+            } else if ((own & SUPPORT_SPANS[s.ordinal()][sq]) == 0
+                    && stopIsGuarded(s, sq, enemy)) {
+                mg += BACKWARD_MIDGAME;
+                eg += BACKWARD_ENDGAME;
+            }
+        }
+        midgame[entry] += sign * mg;
+        endgame[entry] += sign * eg;
+        return passedPawns;
+    }
+
+    // whether an enemy pawn guards the square in front of the pawn on sq
+    private static boolean stopIsGuarded(Side s, int sq, long enemy) {
+        int stop = s == Side.WHITE ? sq - 8 : sq + 8;
+        // an enemy pawn attacks stop from where a pawn of s on stop would
+        return stop >= 0 && stop < 64
+            && (Bitboards.pawnAttacks(s, stop) & enemy) != 0;
+    }
+}
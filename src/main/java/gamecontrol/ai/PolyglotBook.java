@@ -0,0 +1,279 @@
+package gamecontrol.ai;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.King;
+import model.chess.PackedMove;
+import model.chess.PromotionMove;
+
+/**
+ * An opening book in the Polyglot format, read straight from a memory
+ * mapped file. The file is a list of 16 byte big-endian entries sorted by
+ * position key: the key, the move, its weight and 4 bytes of learning data
+ * that are ignored. Looking up a position is a binary search over the
+ * mapping, so a book of any size costs no heap and only the pages that are
+ * touched are read from disk.
+ *
+ * Keys are made by PolyglotKey, which says which books can be read.
+ *
+ * @author Joe
+ */
+public final class PolyglotBook implements Closeable {
+
+    static final int ENTRY_BYTES = 16;
+
+    // a mapping can be at most 2 GB; entries never straddle two of these
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    // promotion pieces as a Polyglot move numbers them, from 1
+    private static final ChessPiece.ChessPieceType[] PROMOTIONS = {
+        ChessPiece.ChessPieceType.KNIGHT, ChessPiece.ChessPieceType.BISHOP,
+        ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.QUEEN
+    };
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long entries;
+    private final Random random;
+
+    private PolyglotBook(FileChannel channel, Random random)
+        throws IOException {
+        this.channel = channel;
+        this.random = random;
+        long size = channel.size();
+        entries = size / ENTRY_BYTES;
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_BYTES - 1)
+                / SEGMENT_BYTES)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * SEGMENT_BYTES;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(SEGMENT_BYTES, size - start));
+        }
+        // such a book would never find a position, say so at once
+        if (contains(PolyglotKey.PUBLISHED_START)
+                && !contains(PolyglotKey.of(new ChessBoard()))) {
+            throw new IOException("Book uses the published Polyglot keys,"
+                + " which this build does not have; only books made by"
+                + " BookBuilder can be read");
+        }
+    }
+
+    /**
+     * @param path a Polyglot .bin file
+     * @return the book, which picks among moves at random
+     * @throws IOException also if the book was made with the published
+     * Polyglot keys, see PolyglotKey
+     */
+    public static PolyglotBook open(Path path) throws IOException {
+        return open(path, new Random());
+    }
+
+    /**
+     * @param path a Polyglot .bin file
+     * @param random decides between the moves of a position
+     */
+    public static PolyglotBook open(Path path, Random random)
+        throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PolyglotBook(channel, random);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Picks a book move for the position, more often the more weight the
+     * book gives it.
+     *
+     * @param pieceMoves the legal moves, as a controller hands them to an
+     * AIChessEngine
+     * @param board the position
+     * @return one of the moves in pieceMoves, or null if the book has none
+     * for the position
+     */
+    public Move chooseMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        List<Move> moves = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = find(pieceMoves, board, moves, weights);
+        if (total == 0) {
+            return null;
+        }
+        int pick = random.nextInt(total);
+        for (int i = 0; i < moves.size(); i++) {
+            pick -= weights.get(i);
+            if (pick < 0) {
+                return moves.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the moves of pieceMoves the book knows for the position, in
+     * the order the book lists them, which is usually best first
+     */
+    public List<Move> getMoves(Map<Piece, Set<Move>> pieceMoves,
+            Board board) {
+        List<Move> moves = new ArrayList<>();
+        find(pieceMoves, board, moves, new ArrayList<>());
+        return moves;
+    }
+
+    /**
+     * @return the number of entries in the book
+     */
+    public long size() {
+        return entries;
+    }
+
+    /**
+     * Closes the file. The mapping itself lives until it is garbage
+     * collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @param move a packed move
+     * @return the move as a Polyglot book writes it
+     */
+    static int bookMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        if (PackedMove.isCastling(move)) {
+            // the king takes its own rook
+            to = Bitboards.square(Bitboards.row(to),
+                    PackedMove.flags(move) == PackedMove.KING_CASTLE ? 7 : 0);
+        }
+        int bookMove = PolyglotKey.square(to)
+            | PolyglotKey.square(from) << 6;
+        ChessPiece.ChessPieceType promotion = PackedMove.promotionType(move);
+        for (int i = 0; i < PROMOTIONS.length; i++) {
+            if (PROMOTIONS[i] == promotion) {
+                bookMove |= (i + 1) << 12;
+            }
+        }
+        return bookMove;
+    }
+
+    // fills moves and weights with the book moves that are also in
+    // pieceMoves and returns the sum of their weights
+    private int find(Map<Piece, Set<Move>> pieceMoves, Board board,
+            List<Move> moves, List<Integer> weights) {
+        if (pieceMoves == null || pieceMoves.isEmpty() || entries == 0) {
+            return 0;
+        }
+        Side side = pieceMoves.keySet().iterator().next().getSide();
+        ChessBoard position = board instanceof ChessBoard
+            ? (ChessBoard) board : new ChessBoard(board, side);
+        long key = PolyglotKey.of(position);
+
+        int total = 0;
+        for (long i = lowerBound(key); i < entries && key(i) == key; i++) {
+            Move m = translate(pieceMoves, board, move(i));
+            int weight = weight(i);
+            if (m != null && weight > 0) {
+                moves.add(m);
+                weights.add(weight);
+                total += weight;
+            }
+        }
+        return total;
+    }
+
+    private boolean contains(long key) {
+        long i = lowerBound(key);
+        return i < entries && key(i) == key;
+    }
+
+    // the first entry whose key is not below key, comparing keys unsigned
+    // as Polyglot sorts them
+    private long lowerBound(long key) {
+        long low = 0;
+        long high = entries;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long key(long entry) {
+        long offset = entry * ENTRY_BYTES;
+        return segments[(int) (offset / SEGMENT_BYTES)]
+            .getLong((int) (offset % SEGMENT_BYTES));
+    }
+
+    private int move(long entry) {
+        long offset = entry * ENTRY_BYTES + 8;
+        return segments[(int) (offset / SEGMENT_BYTES)]
+            .getShort((int) (offset % SEGMENT_BYTES)) & 0xFFFF;
+    }
+
+    private int weight(long entry) {
+        long offset = entry * ENTRY_BYTES + 10;
+        return segments[(int) (offset / SEGMENT_BYTES)]
+            .getShort((int) (offset % SEGMENT_BYTES)) & 0xFFFF;
+    }
+
+    /**
+     * Finds the move in pieceMoves that a Polyglot move stands for. Polyglot
+     * writes castling as the king taking its own rook, and names the piece
+     * a pawn promotes to.
+     */
+    private static Move translate(Map<Piece, Set<Move>> pieceMoves,
+            Board board, int bookMove) {
+        int from = PolyglotKey.square(((bookMove >>> 6) & 63));
+        int to = PolyglotKey.square(bookMove & 63);
+        int promotion = (bookMove >>> 12) & 7;
+
+        Position start = Bitboards.position(from);
+        Piece mover = board.getPieceAt(start);
+        if (mover == null || pieceMoves.get(mover) == null) {
+            return null;
+        }
+        Position dest = Bitboards.position(to);
+        if (mover instanceof King && start.getRow() == dest.getRow()
+                && Math.abs(start.getCol() - dest.getCol()) > 1) {
+            dest = Position.of(dest.getRow(),
+                    dest.getCol() > start.getCol() ? 6 : 2);
+        }
+
+        for (Move m : pieceMoves.get(mover)) {
+            if (m.getStart().equals(start) && m.getDestination().equals(dest)) {
+                if (m instanceof PromotionMove && promotion > 0) {
+                    ((PromotionMove) m).setPromotingTo(
+                            PROMOTIONS[promotion - 1]);
+                }
+                return m;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.CastlingMove;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+
+/**
+ * Position keys the way Polyglot opening books compute them: the XOR of
+ * 781 random numbers, one per piece kind and square, one per castling
+ * right, one for the file of an en passant square a pawn of the side to
+ * move stands next to, and one if White is to move.
+ *
+ * Only books made with the same 781 numbers can be read. The layout is
+ * Polyglot's, but the numbers come from a fixed seed rather than the
+ * published Random64 table, which is not part of this project; books made
+ * by BookBuilder read back, books made by other tools do not match until
+ * RANDOMS holds the published numbers in the same order, and PolyglotBook
+ * refuses them by their starting position key.
+ *
+ * @author Joe
+ */
+final class PolyglotKey {
+
+    private static final int CASTLING = 768;
+    private static final int EN_PASSANT = 772;
+    private static final int TURN = 780;
+    private static final int RANDOM_COUNT = 781;
+
+    /**
+     * The key the published Random64 table gives the starting position,
+     * which any book made by another Polyglot tool holds.
+     */
+    static final long PUBLISHED_START = 0x463B96181691FC9CL;
+
+    private static final long SEED = 0x31D71DCE64B2C310L;
+
+    // Polyglot counts pawn, knight, bishop, rook, queen, king; indexed by
+    // ChessPieceType ordinal
+    private static final int[] KINDS = {0, 3, 1, 2, 4, 5};
+
+    private static final long[] RANDOMS = randoms();
+
+    private PolyglotKey() {
+    }
+
+    /**
+     * @return the Polyglot key of the position on board
+     */
+    static long of(ChessBoard board) {
+        long key = 0;
+        for (Side s : Side.values()) {
+            for (ChessPiece.ChessPieceType t
+                    : ChessPiece.ChessPieceType.values()) {
+                // black pieces come first, then white of the same kind
+                int kind = 2 * KINDS[t.ordinal()] + (s == Side.WHITE ? 1 : 0);
+                for (long bb = board.getPieces(s, t); bb != 0;
+                        bb &= bb - 1) {
+                    key ^= RANDOMS[64 * kind + square(Bitboards.first(bb))];
+                }
+            }
+        }
+
+        CastlingMove.CastlingType king = CastlingMove.CastlingType.KING_SIDE;
+        CastlingMove.CastlingType queen = CastlingMove.CastlingType.QUEEN_SIDE;
+        if (board.hasCastlingRight(Side.WHITE, king)) {
+            key ^= RANDOMS[CASTLING];
+        }
+        if (board.hasCastlingRight(Side.WHITE, queen)) {
+            key ^= RANDOMS[CASTLING + 1];
+        }
+        if (board.hasCastlingRight(Side.BLACK, king)) {
+            key ^= RANDOMS[CASTLING + 2];
+        }
+        if (board.hasCastlingRight(Side.BLACK, queen)) {
+            key ^= RANDOMS[CASTLING + 3];
+        }
+
+        Side toMove = board.getSideToMove();
+        int ep = board.getEnPassantSquare();
+        if (ep >= 0 && (Bitboards.pawnAttacks(opponent(toMove), ep)
+                    & board.getPieces(toMove,
+                        ChessPiece.ChessPieceType.PAWN)) != 0) {
+            key ^= RANDOMS[EN_PASSANT + Bitboards.col(ep)];
+        }
+        if (toMove == Side.WHITE) {
+            key ^= RANDOMS[TURN];
+        }
+        return key;
+    }
+
+    /**
+     * @param sq a square numbered from Black's back row
+     * @return the same square numbered from White's back row, as Polyglot
+     * numbers them
+     */
+    static int square(int sq) {
+        return sq ^ 56;
+    }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+
+    // splitmix64 from SEED: computed, so the class loads without any file
+    private static long[] randoms() {
+        long[] randoms = new long[RANDOM_COUNT];
+        long state = SEED;
+        for (int i = 0; i < randoms.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            randoms[i] = z ^ (z >>> 31);
+        }
+        return randoms;
+    }
+}
@@ -0,0 +1,194 @@
+package gamecontrol.ai;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import model.Side;
+
+/**
+ * A search of the position the opponent is expected to leave, started
+ * while the opponent is still thinking. Until the opponent moves it is
+ * held to a budget, checked between iterations, and stops by itself when
+ * that is spent. On a hit it is given the limits of a normal move, counted
+ * from the moment of the hit, and carries on from the depth it has
+ * reached. On a miss it is stopped, and what it stored in the transposition
+ * table stays there for the real search.
+ *
+ * @author Joe
+ */
+final class PonderSearch {
+
+    private final int reply;
+    private final long key;
+    private final Side side;
+    private final SearchLimits budget;
+    private Future<SearchResult> future;
+    private Searcher searcher;
+    private volatile SearchLimits limits;
+    private volatile long startNanos;
+    private volatile long hitNanos;
+    private volatile boolean spent;
+    private volatile int finishedDepth;
+    private boolean cancelled;
+
+    /**
+     * @param reply the opponent's expected PackedMove
+     * @param key the hash of the position it leads to
+     * @param side the side to move in it, the engine's
+     * @param budget how far to search before the opponent moves
+     */
+    PonderSearch(int reply, long key, Side side, SearchLimits budget) {
+        this.reply = reply;
+        this.key = key;
+        this.side = side;
+        this.budget = budget;
+    }
+
+    void setFuture(Future<SearchResult> future) {
+        this.future = future;
+    }
+
+    int getReply() {
+        return reply;
+    }
+
+    /**
+     * @return whether the opponent left the position this search is on
+     */
+    boolean matches(long actualKey, Side actualSide) {
+        return key == actualKey && side == actualSide;
+    }
+
+    /**
+     * Called by the searching thread once its Searcher exists.
+     */
+    synchronized void attach(Searcher s) {
+        searcher = s;
+        startNanos = System.nanoTime();
+        if (cancelled) {
+            s.stop();
+        } else if (limits != null) {
+            apply();
+        }
+    }
+
+    /**
+     * Turns the search into one for a move made now.
+     *
+     * @param moveLimits the limits of the move
+     * @return the result of the search, once it has finished
+     */
+    SearchResult hit(SearchLimits moveLimits) {
+        synchronized (this) {
+            hitNanos = System.nanoTime();
+            limits = moveLimits;
+            if (searcher != null) {
+                apply();
+            }
+        }
+        return await();
+    }
+
+    /**
+     * Stops the search without waiting for it, or if it has not started
+     * yet, as soon as it does.
+     */
+    synchronized void stop() {
+        cancelled = true;
+        if (searcher != null) {
+            searcher.stop();
+        }
+    }
+
+    /**
+     * Stops the search and waits for its threads to be off the tables.
+     */
+    void cancel() {
+        stop();
+        await();
+    }
+
+    // the iterations in progress keep going unless the move's limits are
+    // already met; the first iteration always finishes
+    private void apply() {
+        if (finishedDepth >= limits.getMaxDepth()) {
+            searcher.stop();
+        } else if (limits.isTimed() && finishedDepth >= 1) {
+            searcher.setDeadline(hitNanos + limits.getMoveTimeMillis()
+                    * 1000000L);
+        }
+    }
+
+    boolean isHit() {
+        return limits != null;
+    }
+
+    /**
+     * @return the limits of the search before it is hit
+     */
+    SearchLimits getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return when the search started, which its budget counts from
+     */
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return the limits of the move, once the search has been hit
+     */
+    SearchLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return when the search was hit, which the move's time counts from
+     */
+    long getHitNanos() {
+        return hitNanos;
+    }
+
+    /**
+     * Called by the searching thread when it stops because the budget is
+     * used up, whether or not a hit has come in meanwhile.
+     */
+    void budgetSpent() {
+        spent = true;
+    }
+
+    /**
+     * @return whether the search stopped on its budget rather than on the
+     * limits of the move
+     */
+    boolean isSpent() {
+        return spent;
+    }
+
+    /**
+     * @return whether the search has finished, by itself or stopped
+     */
+    boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Called by the searching thread after every finished iteration.
+     */
+    void finished(int depth) {
+        finishedDepth = depth;
+    }
+
+    private SearchResult await() {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
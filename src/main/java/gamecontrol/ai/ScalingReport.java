@@ -0,0 +1,59 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+
+import model.chess.ChessBoard;
+
+/**
+ * Measures how the Lazy SMP search scales: every thread count searches the
+ * same position to the same depth with a fresh engine and table, and the
+ * time to depth is compared with the single threaded run.
+ *
+ * Usage: ScalingReport depth [fen]
+ *
+ * @author Joe
+ */
+public final class ScalingReport {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    private ScalingReport() {
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        String fen = args.length > 1
+            ? String.join(" ", Arrays.copyOfRange(args, 1, args.length))
+            : "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1"
+            + " w - -";
+
+        // let the JIT compile the search first, or the 1 thread baseline
+        // pays for it alone
+        run(fen, depth, 1);
+
+        System.out.println(Runtime.getRuntime().availableProcessors()
+                + " processors, depth " + depth);
+        System.out.println("threads      ms       nodes       nps  speedup");
+        long baseline = 0;
+        for (int threads : THREADS) {
+            SearchResult result = run(fen, depth, threads);
+            if (baseline == 0) {
+                baseline = result.getNanos();
+            }
+            System.out.printf("%7d %7d %11d %9d %8.2f  %s%n", threads,
+                    result.getNanos() / 1000000, result.getNodes(),
+                    result.getNodesPerSecond(),
+                    (double) baseline / result.getNanos(),
+                    result.getNotation());
+        }
+    }
+
+    private static SearchResult run(String fen, int depth, int threads) {
+        ChessBoard board = new ChessBoard(fen);
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(
+                SearchLimits.depth(depth),
+                AlphaBetaChessEngine.DEFAULT_HASH_MEGABYTES, threads);
+        return engine.search(board, board.getSideToMove(),
+                engine.getLimits());
+    }
+}
@@ -0,0 +1,75 @@
+package gamecontrol.ai;
+
+/**
+ * When a search has to stop: at a fixed depth, or when a time budget for
+ * the move runs out, whichever comes first.
+ *
+ * @author Joe
+ */
+public final class SearchLimits {
+
+    // how many more moves a game clock is assumed to have to last
+    private static final int MOVES_TO_GO = 30;
+
+    // kept back from a game clock for the time a move takes to reach it
+    private static final long CLOCK_RESERVE_MILLIS = 50;
+
+    private final int maxDepth;
+    private final long moveTimeMillis;
+
+    private SearchLimits(int maxDepth, long moveTimeMillis) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        this.maxDepth = Math.min(maxDepth, Searcher.MAX_PLY);
+        this.moveTimeMillis = moveTimeMillis;
+    }
+
+    /**
+     * @param depth the number of plies to search
+     * @return limits that search to depth however long that takes
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0);
+    }
+
+    /**
+     * @param millis the time to spend on the move
+     * @return limits that search deeper until the time is up
+     */
+    public static SearchLimits moveTime(long millis) {
+        return new SearchLimits(Searcher.MAX_PLY, Math.max(1, millis));
+    }
+
+    /**
+     * @param remainingMillis the time left on the engine's game clock
+     * @param incrementMillis the time added to the clock after every move
+     * @return limits that spend a share of the clock on this move
+     */
+    public static SearchLimits clock(long remainingMillis,
+            long incrementMillis) {
+        long budget = remainingMillis / MOVES_TO_GO + incrementMillis * 3 / 4;
+        return moveTime(Math.min(budget,
+                    remainingMillis - CLOCK_RESERVE_MILLIS));
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the time budget for the move, or 0 if there is none
+     */
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    public boolean isTimed() {
+        return moveTimeMillis > 0;
+    }
+
+    @Override
+    public String toString() {
+        return isTimed() ? moveTimeMillis + " ms" : "depth " + maxDepth;
+    }
+}
@@ -0,0 +1,87 @@
+package gamecontrol.ai;
+
+/**
+ * Which selective search techniques a search may use. Each one searches
+ * fewer nodes at the risk of missing a move that only a full width search
+ * would find, so each can be switched off to measure it or to rule it out.
+ *
+ * @author Joe
+ */
+public final class SearchOptions {
+
+    private static final SearchOptions ALL = new SearchOptions(true, true,
+            true);
+    private static final SearchOptions NONE = new SearchOptions(false, false,
+            false);
+
+    private final boolean nullMove;
+    private final boolean lateMoveReductions;
+    private final boolean futility;
+
+    private SearchOptions(boolean nullMove, boolean lateMoveReductions,
+            boolean futility) {
+        this.nullMove = nullMove;
+        this.lateMoveReductions = lateMoveReductions;
+        this.futility = futility;
+    }
+
+    /**
+     * @return every technique switched on
+     */
+    public static SearchOptions all() {
+        return ALL;
+    }
+
+    /**
+     * @return a full width alpha-beta search
+     */
+    public static SearchOptions none() {
+        return NONE;
+    }
+
+    /**
+     * Null move pruning: let the opponent move twice in a row; if a shallow
+     * search still fails high, so will the real moves.
+     */
+    public SearchOptions withNullMove(boolean on) {
+        return new SearchOptions(on, lateMoveReductions, futility);
+    }
+
+    /**
+     * Late move reductions: search quiet moves that come late in the
+     * ordering less deeply, and again at full depth only if they surprise.
+     */
+    public SearchOptions withLateMoveReductions(boolean on) {
+        return new SearchOptions(nullMove, on, futility);
+    }
+
+    /**
+     * Futility pruning and razoring: near the leaves, skip quiet moves or
+     * whole nodes whose static evaluation is too far from the window.
+     */
+    public SearchOptions withFutility(boolean on) {
+        return new SearchOptions(nullMove, lateMoveReductions, on);
+    }
+
+    public boolean isNullMove() {
+        return nullMove;
+    }
+
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public boolean isFutility() {
+        return futility;
+    }
+
+    @Override
+    public String toString() {
+        return "null move " + onOff(nullMove) + ", reductions "
+            + onOff(lateMoveReductions) + ", futility " + onOff(futility);
+    }
+
+    private static String onOff(boolean on) {
+        return on ? "on" : "off";
+    }
+}
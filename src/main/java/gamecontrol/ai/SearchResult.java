@@ -0,0 +1,113 @@
+package gamecontrol.ai;
+
+import model.Move;
+
+/**
+ * What one search found and what it cost.
+ *
+ * @author Joe
+ */
+public final class SearchResult {
+
+    private final Move move;
+    private final String notation;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long nanos;
+    private final long pawnProbes;
+    private final long pawnHits;
+    private final long pawnSavedNanos;
+
+    /**
+     * @param move the best move, or null if the side had no moves
+     * @param notation the move in coordinate notation
+     * @param score the score of the move for the side that makes it
+     * @param depth the depth that was searched completely
+     * @param nodes the positions visited
+     * @param nanos the time the search took
+     */
+    public SearchResult(Move move, String notation, int score, int depth,
+            long nodes, long nanos) {
+        this(move, notation, score, depth, nodes, nanos, 0, 0, 0);
+    }
+
+    /**
+     * @param pawnProbes how often the evaluation looked up a pawn structure
+     * @param pawnHits how often it was cached
+     * @param pawnSavedNanos roughly the time the cache saved
+     */
+    public SearchResult(Move move, String notation, int score, int depth,
+            long nodes, long nanos, long pawnProbes, long pawnHits,
+            long pawnSavedNanos) {
+        this.move = move;
+        this.notation = notation;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.nanos = nanos;
+        this.pawnProbes = pawnProbes;
+        this.pawnHits = pawnHits;
+        this.pawnSavedNanos = pawnSavedNanos;
+    }
+
+    public Move getMove() {
+        return move;
+    }
+
+    public String getNotation() {
+        return notation;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getNodesPerSecond() {
+        return nodes * 1000000000L / Math.max(1, nanos);
+    }
+
+    public long getPawnProbes() {
+        return pawnProbes;
+    }
+
+    public long getPawnHits() {
+        return pawnHits;
+    }
+
+    /**
+     * @return the share of pawn structure lookups that were cached, from 0
+     * to 1
+     */
+    public double getPawnHitRate() {
+        return pawnProbes == 0 ? 0 : (double) pawnHits / pawnProbes;
+    }
+
+    public long getPawnSavedNanos() {
+        return pawnSavedNanos;
+    }
+
+    @Override
+    public String toString() {
+        String s = "depth " + depth + " score " + score + " nodes " + nodes
+            + " time " + nanos / 1000000 + " ms nps " + getNodesPerSecond()
+            + " move " + notation;
+        if (pawnProbes > 0) {
+            s += String.format(" pawn hits %.1f%% saved %d ms",
+                    100 * getPawnHitRate(), pawnSavedNanos / 1000000);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,450 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.PackedMove;
+
+/**
+ * Depth-limited negamax with alpha-beta pruning on one board. The board is
+ * played on with makeMove and unmakeMove and is left as it was found.
+ *
+ * At the horizon a quiescence search goes on with captures and promotions
+ * until the position is quiet, so a capture is never scored without the
+ * recapture that follows it. Captures that lose material by static exchange
+ * evaluation are not searched there.
+ *
+ * Moves come from a MovePicker per ply, best first, so that most cutoffs
+ * happen on the first move. Every move after the first is searched with a
+ * null window (principal variation search), and away from the principal
+ * variation the SearchOptions decide which selective techniques prune or
+ * reduce the tree.
+ *
+ * A search can be cut short by a deadline or by stop; it then unwinds
+ * quickly and its result must be thrown away, see isAborted.
+ *
+ * A searcher is not thread safe; every thread needs its own board and
+ * searcher.
+ *
+ * @author Joe
+ */
+final class Searcher {
+
+    static final int INFINITY = 32000;
+
+    // scores above this are mates, closer mates scoring higher
+    static final int MATE = 31000;
+
+    static final int MAX_PLY = 128;
+
+    // the clock is read once every this many nodes
+    private static final int CHECK_INTERVAL = 1024;
+
+    // futility pruning looks this many plies from the horizon, allowing
+    // this much per ply for what a quiet move could still change
+    private static final int FUTILITY_DEPTH = 3;
+    private static final int FUTILITY_MARGIN = 150;
+    private static final int RAZOR_MARGIN = 400;
+
+    // quiet moves after this many are searched less deeply
+    private static final int LATE_MOVE = 4;
+
+    private final ChessBoard board;
+    private final TranspositionTable table;
+    private final SearchOptions options;
+    private final PawnTable pawns;
+    private final HistoryTable history = new HistoryTable();
+    private final MovePicker[] pickers;
+    private Tablebase tablebase;
+    private long nodes;
+    private int bestScore;
+
+    private volatile long deadline = Long.MAX_VALUE;
+    private volatile boolean stopRequested;
+    private boolean aborted;
+
+    /**
+     * @param board the position to search
+     * @param table shared with any other searcher of the same game
+     */
+    Searcher(ChessBoard board, TranspositionTable table) {
+        this(board, table, SearchOptions.all(),
+                new PawnTable(PawnTable.DEFAULT_ENTRIES));
+    }
+
+    /**
+     * @param board the position to search
+     * @param table shared with any other searcher of the same game
+     * @param options the selective techniques to use
+     * @param pawns this searcher's own pawn structure cache
+     */
+    Searcher(ChessBoard board, TranspositionTable table,
+            SearchOptions options, PawnTable pawns) {
+        this.board = board;
+        this.table = table;
+        this.options = options;
+        this.pawns = pawns;
+        pickers = new MovePicker[MAX_PLY + 1];
+        for (int i = 0; i < pickers.length; i++) {
+            pickers[i] = new MovePicker(board, history);
+        }
+    }
+
+    /**
+     * @param firstMove a move to search before all others, usually the best
+     * move of the previous iteration, or PackedMove.NONE
+     * @return the best PackedMove for s, or PackedMove.NONE if s has no
+     * moves
+     */
+    int search(Side s, int depth, int firstMove) {
+        aborted = stopRequested;
+        if (aborted) {
+            return PackedMove.NONE;
+        }
+        MovePicker picker = pickers[0];
+        picker.reset(s, firstMove, 0, false);
+
+        int best = PackedMove.NONE;
+        int alpha = -INFINITY;
+        int searched = 0;
+        for (int move = picker.next(); move != PackedMove.NONE;
+                move = picker.next()) {
+            board.makeMove(move);
+            int score = searchMove(s, depth, alpha, INFINITY, 0, searched++,
+                    0);
+            board.unmakeMove();
+            if (aborted) {
+                return PackedMove.NONE;
+            }
+            if (score > alpha) {
+                alpha = score;
+                best = move;
+            }
+        }
+        bestScore = best == PackedMove.NONE ? 0 : alpha;
+        if (best != PackedMove.NONE) {
+            table.store(board.hash(), best, toTable(bestScore, 0), depth,
+                    TranspositionTable.EXACT);
+        }
+        return best;
+    }
+
+    /**
+     * Scores the position with a full window, deepening one ply at a time
+     * so the table orders the moves of the deeper passes.
+     *
+     * @param s the side to move
+     * @param ply how far the position is below the root, for mate scores
+     * @return the score for s
+     */
+    int score(Side s, int depth, int ply) {
+        aborted = stopRequested;
+        int score = 0;
+        for (int d = Math.min(1, depth); d <= depth && !aborted; d++) {
+            score = negamax(s, d, -INFINITY, INFINITY, ply, true);
+        }
+        return score;
+    }
+
+    int getBestScore() {
+        return bestScore;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param nanos a System.nanoTime value after which searches give up;
+     * can be called from any thread
+     */
+    void setDeadline(long nanos) {
+        deadline = nanos;
+    }
+
+    /**
+     * @param tablebase endgame tables that answer positions with few enough
+     * pieces without searching them, or null
+     */
+    void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Makes the running search, and any later one, give up. Can be called
+     * from any thread.
+     */
+    void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * @return true if the last search gave up before it finished
+     */
+    boolean isAborted() {
+        return aborted;
+    }
+
+    private int negamax(Side s, int depth, int alpha, int beta, int ply,
+            boolean nullAllowed) {
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return quiesce(s, alpha, beta, ply);
+        }
+        if (countNode()) {
+            return 0;
+        }
+
+        long key = board.hash();
+        long entry = table.probe(key);
+        int hashMove = PackedMove.NONE;
+        if (entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER && score >= beta
+                        || bound == TranspositionTable.UPPER
+                        && score <= alpha) {
+                    return score;
+                }
+            }
+        }
+        if (tablebase != null) {
+            int value = tablebase.value(board);
+            if (value >= 0) {
+                return tablebaseScore(value, ply);
+            }
+        }
+
+        boolean inCheck = board.isInCheck(s);
+        // a null window means some earlier move already set the score
+        boolean pvNode = beta - alpha > 1;
+        int eval = inCheck ? -INFINITY : Evaluator.evaluate(board, s, pawns);
+        boolean futile = false;
+
+        if (!inCheck && !pvNode && !isMate(beta)) {
+            if (options.isFutility() && depth <= FUTILITY_DEPTH) {
+                // so far above beta that no quiet reply will bring it back
+                if (eval - FUTILITY_MARGIN * depth >= beta) {
+                    return eval;
+                }
+                // razoring: so far below alpha that only captures can help
+                if (depth == 1 && eval + RAZOR_MARGIN < alpha) {
+                    return quiesce(s, alpha, beta, ply);
+                }
+                futile = eval + FUTILITY_MARGIN * depth <= alpha;
+            }
+
+            // zugzwang is common with pawns alone, where passing is not safe
+            if (options.isNullMove() && nullAllowed && depth >= 3
+                    && eval >= beta && hasPieces(s)) {
+                int reduction = depth >= 7 ? 3 : 2;
+                board.makeNullMove();
+                int score = -negamax(opponent(s), depth - 1 - reduction,
+                        -beta, -beta + 1, ply + 1, false);
+                board.unmakeMove();
+                if (aborted) {
+                    return 0;
+                }
+                if (score >= beta) {
+                    // a mate found with a pass in between is not proven
+                    return isMate(score) ? beta : score;
+                }
+            }
+        }
+
+        MovePicker picker = pickers[ply];
+        picker.reset(s, hashMove, ply, false);
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = PackedMove.NONE;
+        int searched = 0;
+        for (int move = picker.next(); move != PackedMove.NONE;
+                move = picker.next()) {
+            boolean quiet = !PackedMove.isCapture(move)
+                && !PackedMove.isPromotion(move);
+            board.makeMove(move);
+            boolean givesCheck = board.isInCheck(opponent(s));
+            boolean tame = quiet && !givesCheck && !inCheck;
+
+            if (futile && tame && searched > 0) {
+                board.unmakeMove();
+                continue;
+            }
+
+            int reduction = 0;
+            if (options.isLateMoveReductions() && tame && depth >= 3
+                    && searched >= LATE_MOVE) {
+                reduction = searched >= 2 * LATE_MOVE && !pvNode ? 2 : 1;
+            }
+            int score = searchMove(s, depth, alpha, beta, ply, searched,
+                    reduction);
+            board.unmakeMove();
+            searched++;
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                if (quiet) {
+                    history.cutoff(board, move, depth, ply);
+                }
+                break;
+            }
+        }
+        if (bestMove == PackedMove.NONE) {
+            // checkmate, or stalemate which is a draw
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int bound = best >= beta ? TranspositionTable.LOWER
+            : best > originalAlpha ? TranspositionTable.EXACT
+            : TranspositionTable.UPPER;
+        table.store(key, bound == TranspositionTable.UPPER
+                ? PackedMove.NONE : bestMove, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    /**
+     * Principal variation search of a move that has been made: the first
+     * move gets the full window, the rest only have to prove they are no
+     * better than alpha, and are searched again with the full window and
+     * depth when they are.
+     */
+    private int searchMove(Side s, int depth, int alpha, int beta, int ply,
+            int searched, int reduction) {
+        Side next = opponent(s);
+        if (searched == 0) {
+            return -negamax(next, depth - 1, -beta, -alpha, ply + 1, true);
+        }
+        int score = -negamax(next, depth - 1 - reduction, -alpha - 1, -alpha,
+                ply + 1, true);
+        if (score > alpha && reduction > 0) {
+            score = -negamax(next, depth - 1, -alpha - 1, -alpha, ply + 1,
+                    true);
+        }
+        if (score > alpha && score < beta) {
+            score = -negamax(next, depth - 1, -beta, -alpha, ply + 1, true);
+        }
+        return score;
+    }
+
+    /**
+     * Searches captures and promotions only. The side to move may stand pat
+     * on the static evaluation instead of capturing, unless it is in check,
+     * when every evasion is searched.
+     */
+    private int quiesce(Side s, int alpha, int beta, int ply) {
+        if (countNode()) {
+            return 0;
+        }
+        boolean inCheck = board.isInCheck(s);
+        int best = -INFINITY;
+        if (!inCheck) {
+            best = Evaluator.evaluate(board, s, pawns);
+            if (best >= beta || ply >= MAX_PLY) {
+                return best;
+            }
+            alpha = Math.max(alpha, best);
+        } else if (ply >= MAX_PLY) {
+            return Evaluator.evaluate(board, s, pawns);
+        }
+
+        // every evasion when in check, otherwise captures only
+        MovePicker picker = pickers[ply];
+        picker.reset(s, PackedMove.NONE, ply, !inCheck);
+        int searched = 0;
+        for (int move = picker.next(); move != PackedMove.NONE;
+                move = picker.next()) {
+            searched++;
+            if (!inCheck && (isUnderPromotion(move)
+                        || Evaluator.see(board, move) < 0)) {
+                continue;
+            }
+            board.makeMove(move);
+            int score = -quiesce(opponent(s), -beta, -alpha, ply + 1);
+            board.unmakeMove();
+            if (aborted) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return inCheck && searched == 0 ? -MATE + ply : best;
+    }
+
+    // counts a node and reads the clock now and then; true if the search
+    // has to give up
+    private boolean countNode() {
+        if (++nodes % CHECK_INTERVAL == 0
+                && (stopRequested || System.nanoTime() > deadline)) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    // whether s has anything but pawns and the king
+    private boolean hasPieces(Side s) {
+        return (board.getPieces(s, ChessPiece.ChessPieceType.KNIGHT)
+                | board.getPieces(s, ChessPiece.ChessPieceType.BISHOP)
+                | board.getPieces(s, ChessPiece.ChessPieceType.ROOK)
+                | board.getPieces(s, ChessPiece.ChessPieceType.QUEEN)) != 0;
+    }
+
+    /**
+     * @param value an endgame table's byte for the position
+     * @return the score of the position for the side to move; a mate too
+     * far off for the search's own mate scores still scores above any
+     * evaluation
+     */
+    static int tablebaseScore(int value, int ply) {
+        if (value == EndgameTable.DRAW) {
+            return 0;
+        }
+        int distance = Math.min(ply + EndgameTable.plies(value), MAX_PLY);
+        return EndgameTable.isWin(value) ? MATE - distance : -MATE + distance;
+    }
+
+    private static boolean isMate(int score) {
+        return Math.abs(score) > MATE - MAX_PLY;
+    }
+
+    private static boolean isUnderPromotion(int move) {
+        return PackedMove.isPromotion(move) && PackedMove.promotionType(move)
+            != ChessPiece.ChessPieceType.QUEEN;
+    }
+
+    // mate scores are stored as distance from the position, not the root
+    private static int toTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score + ply;
+        }
+        return score < -MATE + MAX_PLY ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score - ply;
+        }
+        return score < -MATE + MAX_PLY ? score + ply : score;
+    }
+
+    static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+}
@@ -0,0 +1,75 @@
+package gamecontrol.ai;
+
+import model.chess.ChessBoard;
+
+/**
+ * Shows what each selective search technique saves: a fixed set of
+ * positions is searched to the same depth with every technique off, with
+ * each one on alone and with all of them on, printing the nodes and the
+ * effective branching factor, the growth in nodes from one iteration to
+ * the next.
+ *
+ * Usage: SelectivityReport [depth]
+ *
+ * @author Joe
+ */
+public final class SelectivityReport {
+
+    private static final String[] POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - -",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -",
+        "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - -"
+    };
+
+    private SelectivityReport() {
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        SearchOptions none = SearchOptions.none();
+        SearchOptions[] configurations = {
+            none,
+            none.withNullMove(true),
+            none.withLateMoveReductions(true),
+            none.withFutility(true),
+            SearchOptions.all()
+        };
+
+        // let the JIT compile the search before anything is timed
+        run(SearchOptions.all(), depth);
+
+        System.out.println("depth " + depth + ", " + POSITIONS.length
+                + " positions");
+        System.out.println("      nodes      ms    ebf  options");
+        for (SearchOptions options : configurations) {
+            long[] totals = run(options, depth);
+            System.out.printf("%11d %7d %6.2f  %s%n", totals[0],
+                    totals[1] / 1000000,
+                    (double) totals[0] / Math.max(1, totals[2]), options);
+        }
+    }
+
+    // nodes to depth, nanoseconds, and nodes to depth - 1, over every
+    // position
+    private static long[] run(SearchOptions options, int depth) {
+        long[] totals = new long[3];
+        for (String fen : POSITIONS) {
+            ChessBoard board = new ChessBoard(fen);
+            AlphaBetaChessEngine engine = new AlphaBetaChessEngine(
+                    SearchLimits.depth(depth));
+            engine.setOptions(options);
+            engine.setIterationListener(result -> {
+                if (result.getDepth() == depth - 1) {
+                    totals[2] += result.getNodes();
+                }
+            });
+            SearchResult result = engine.search(board, board.getSideToMove(),
+                    engine.getLimits());
+            totals[0] += result.getNodes();
+            totals[1] += result.getNanos();
+        }
+        return totals;
+    }
+}
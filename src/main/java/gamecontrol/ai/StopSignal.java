@@ -0,0 +1,45 @@
+package gamecontrol.ai;
+
+/**
+ * Tells the search for one move to stop. Unlike AIChessEngine.stop, which
+ * reaches whatever search is under way when it is called, a signal belongs
+ * to a single chooseNextMove: a stop that comes before its search has
+ * started is kept until it does, and a stop that comes after it has
+ * finished reaches no other search.
+ *
+ * @author Joe
+ */
+public final class StopSignal {
+
+    private boolean stopped;
+    private Runnable action;
+
+    /**
+     * Makes the search return as soon as it can, with the best move it has,
+     * or null if it has none yet.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Called by the engine once its search can be stopped, and again
+     * whenever another search takes over the move.
+     *
+     * @param stopAction what stops the search; run at once if the signal
+     * has already been given
+     */
+    public synchronized void register(Runnable stopAction) {
+        action = stopAction;
+        if (stopped) {
+            stopAction.run();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package gamecontrol.ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.CastlingMove;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+import model.chess.PromotionMove;
+
+/**
+ * Endgame tables made by TablebaseGenerator, memory mapped from a
+ * directory of name.tb files as they are first needed. A probe is a few
+ * array reads and never touches the heap beyond a little scratch, so
+ * searches can look up every position with few enough pieces.
+ *
+ * Tables hold no castling rights and no en passant captures, so positions
+ * with either are not answered. Probes are thread safe.
+ *
+ * @author Joe
+ */
+public final class Tablebase {
+
+    /** The most pieces, kings included, a table can hold. */
+    public static final int MAX_PIECES = 4;
+
+    static final String SUFFIX = ".tb";
+
+    // what a table that is not there maps to
+    private static final ByteBuffer MISSING = ByteBuffer.allocate(0);
+
+    private static final ChessPiece.ChessPieceType[] PIECE_TYPES = {
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.KNIGHT,
+        ChessPiece.ChessPieceType.PAWN
+    };
+    // a side and piece type, other than the king, numbered from 1
+    private static final int KINDS = 2 * PIECE_TYPES.length + 1;
+
+    private final Path directory;
+    private final Map<String, ByteBuffer> tables = new ConcurrentHashMap<>();
+    // by the two kinds of piece besides the kings, 0 for none; racing
+    // threads at worst both build the same probe
+    private final EndgameProbe[] probes = new EndgameProbe[KINDS * KINDS];
+    private final boolean[] missing = new boolean[KINDS * KINDS];
+
+    private Tablebase(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param directory where the .tb files are
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new NoSuchFileException(directory.toString());
+        }
+        return new Tablebase(directory);
+    }
+
+    /**
+     * @return what the tables know about the position, or null if they do
+     * not hold it
+     */
+    public TablebaseResult probe(ChessBoard board) {
+        int value = value(board);
+        return value < 0 ? null : new TablebaseResult(value);
+    }
+
+    /**
+     * Picks the move that keeps the best result: the fastest mate when
+     * winning, a draw when there is one, and the longest resistance when
+     * losing.
+     *
+     * @param pieceMoves the legal moves, as a controller hands them to an
+     * AIChessEngine
+     * @param board the position
+     * @return one of the moves in pieceMoves, or null if the tables do not
+     * hold the position
+     */
+    public Move chooseMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        if (pieceMoves == null || pieceMoves.isEmpty()) {
+            return null;
+        }
+        Side side = pieceMoves.keySet().iterator().next().getSide();
+        ChessBoard copy = board instanceof ChessBoard
+            ? new ChessBoard((ChessBoard) board) : new ChessBoard(board, side);
+        int best = bestMove(copy);
+        if (best == PackedMove.NONE) {
+            return null;
+        }
+        Position start = Bitboards.position(PackedMove.from(best));
+        Position dest = Bitboards.position(PackedMove.to(best));
+        Set<Move> moves = pieceMoves.get(board.getPieceAt(start));
+        if (moves == null) {
+            return null;
+        }
+        for (Move m : moves) {
+            if (m.getStart().equals(start) && m.getDestination().equals(dest)) {
+                if (m instanceof PromotionMove) {
+                    ((PromotionMove) m).setPromotingTo(
+                            PackedMove.promotionType(best));
+                }
+                return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the byte of the position, see EndgameTable, or -1 if the
+     * tables do not hold it
+     */
+    int value(ChessBoard board) {
+        long occupied = board.getOccupied();
+        if (Bitboards.count(occupied) > MAX_PIECES || hasCastling(board)
+                || canCaptureEnPassant(board)) {
+            return -1;
+        }
+        // the kings, then the other pieces in kind order, so that one probe
+        // serves every position of the material
+        int[] squares = new int[MAX_PIECES];
+        squares[0] = Bitboards.first(board.getPieces(Side.WHITE,
+                    ChessPiece.ChessPieceType.KING));
+        squares[1] = Bitboards.first(board.getPieces(Side.BLACK,
+                    ChessPiece.ChessPieceType.KING));
+        int n = 2;
+        int key = 0;
+        for (Side s : Side.values()) {
+            for (int t = 0; t < PIECE_TYPES.length; t++) {
+                for (long bb = board.getPieces(s, PIECE_TYPES[t]); bb != 0;
+                        bb &= bb - 1) {
+                    squares[n++] = Bitboards.first(bb);
+                    key = key * KINDS + 1 + s.ordinal() * PIECE_TYPES.length
+                        + t;
+                }
+            }
+        }
+        EndgameProbe probe = probes[key];
+        if (probe == null) {
+            if (missing[key]) {
+                return -1;
+            }
+            probe = probe(key, n);
+            if (probe == null) {
+                missing[key] = true;
+                return -1;
+            }
+            probes[key] = probe;
+        }
+        return probe.value(squares, board.getSideToMove(),
+                new int[MAX_PIECES]);
+    }
+
+    /**
+     * @return the PackedMove of the side to move that keeps the best
+     * result, or PackedMove.NONE if the tables do not hold the position
+     */
+    int bestMove(ChessBoard board) {
+        if (value(board) < 0) {
+            return PackedMove.NONE;
+        }
+        MoveList moves = new MoveList();
+        board.generateLegalMoves(board.getSideToMove(), moves);
+        int best = PackedMove.NONE;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            board.makeMove(moves.get(i));
+            int reply = value(board);
+            board.unmakeMove();
+            if (reply < 0) {
+                continue;
+            }
+            int rank = rank(reply);
+            if (rank > bestRank) {
+                bestRank = rank;
+                best = moves.get(i);
+            }
+        }
+        return best;
+    }
+
+    // how good a move is for the side making it, by the value of the
+    // position it leaves the opponent: mating sooner beats mating later,
+    // which beats drawing, which beats being mated later, then sooner
+    private static int rank(int reply) {
+        if (EndgameTable.isLoss(reply)) {
+            return 1000 - EndgameTable.plies(reply);
+        } else if (EndgameTable.isWin(reply)) {
+            return -1000 + EndgameTable.plies(reply);
+        }
+        return 0;
+    }
+
+    /**
+     * @param sides the side of each piece
+     * @param types the type of each piece
+     * @param n how many pieces there are
+     * @return a probe for positions with the pieces in the given order, or
+     * null if the table of the material is not there
+     */
+    EndgameProbe probe(Side[] sides, ChessPiece.ChessPieceType[] types,
+            int n) {
+        EndgameTable table = EndgameTable.of(EndgameTable.name(sides, types,
+                    n));
+        ByteBuffer data = tables.computeIfAbsent(table.getName(), this::map);
+        if (data == MISSING || data.capacity() != table.size()) {
+            return null;
+        }
+        return new EndgameProbe(sides, types, table, data);
+    }
+
+    // the probe for the material of key, with the pieces in kind order
+    private EndgameProbe probe(int key, int n) {
+        Side[] sides = new Side[n];
+        ChessPiece.ChessPieceType[] types = new ChessPiece.ChessPieceType[n];
+        sides[0] = Side.WHITE;
+        sides[1] = Side.BLACK;
+        types[0] = ChessPiece.ChessPieceType.KING;
+        types[1] = ChessPiece.ChessPieceType.KING;
+        for (int i = n - 1; i >= 2; i--) {
+            int kind = key % KINDS - 1;
+            key /= KINDS;
+            sides[i] = Side.values()[kind / PIECE_TYPES.length];
+            types[i] = PIECE_TYPES[kind % PIECE_TYPES.length];
+        }
+        return probe(sides, types, n);
+    }
+
+    private ByteBuffer map(String name) {
+        Path file = directory.resolve(name + SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return MISSING;
+        }
+        // the mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException e) {
+            return MISSING;
+        }
+    }
+
+    private static boolean hasCastling(ChessBoard board) {
+        for (Side s : Side.values()) {
+            for (CastlingMove.CastlingType t
+                    : CastlingMove.CastlingType.values()) {
+                if (board.hasCastlingRight(s, t)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // a pawn that just moved two rows only matters if it can be taken
+    private static boolean canCaptureEnPassant(ChessBoard board) {
+        int sq = board.getEnPassantSquare();
+        Side s = board.getSideToMove();
+        return sq >= 0 && (Bitboards.pawnAttacks(Searcher.opponent(s), sq)
+                & board.getPieces(s, ChessPiece.ChessPieceType.PAWN)) != 0;
+    }
+}
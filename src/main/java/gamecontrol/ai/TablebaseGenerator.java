@@ -0,0 +1,649 @@
+package gamecontrol.ai;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessPiece;
+
+/**
+ * Makes endgame tables by retrograde analysis, for Tablebase to read.
+ *
+ * Every position of a table is first scored on its own: checkmates are
+ * lost, stalemates drawn, and captures and promotions, which leave the
+ * table, are scored from the smaller tables, which are made first. Then,
+ * one half move further from mate at a time, the positions just found to
+ * be lost make every position that can move into them a win, and the
+ * positions just found to be won make the positions that can only move
+ * into wins losses. Only the predecessors of newly decided positions are
+ * looked at, found by taking moves back. Whatever is left undecided at
+ * the end is a draw.
+ *
+ * Each pass is split over the index range between the threads. Writes to
+ * positions of another thread's range only ever set the same value or a
+ * mark, so the threads need no locks.
+ *
+ * Usage: TablebaseGenerator [-threads n] directory [KQK KRK ...]
+ *
+ * @author Joe
+ */
+public final class TablebaseGenerator {
+
+    private static final String[] DEFAULT_TABLES = {
+        "KQK", "KRK", "KBK", "KNK", "KPK"
+    };
+
+    private static final ChessPiece.ChessPieceType[] PROMOTIONS = {
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.KNIGHT
+    };
+
+    // a mate further off than this does not fit a byte of the table
+    private static final int MAX_PLIES = 253;
+
+    private final Path directory;
+    private final int threads;
+    private Consumer<String> listener;
+
+    // the table being made
+    private Tablebase smaller;
+    private ExecutorService pool;
+    private EndgameTable table;
+    private byte[] values;
+    // the ply plus one at which a position is decided by leaving the
+    // table, or 0
+    private byte[] pending;
+    private byte[] candidates;
+    private final AtomicInteger lastPending = new AtomicInteger();
+    // [captured piece + 1][promoting pawn + 1][promotion + 1]: where a
+    // move that leaves the table goes
+    private EndgameProbe[][][] exits;
+
+    /**
+     * @param directory where the tables are written, and looked for when
+     * a bigger table needs them
+     * @param threads how many threads share the work
+     */
+    public TablebaseGenerator(Path directory, int threads) {
+        this.directory = directory;
+        this.threads = threads;
+    }
+
+    /**
+     * @param listener told a line of statistics for every table made
+     */
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Makes the tables of the given materials and every smaller one they
+     * lead to, skipping any that are already in the directory.
+     *
+     * @param names materials such as KQK or KBNK, of at most
+     * Tablebase.MAX_PIECES pieces
+     */
+    public void generate(String... names) throws IOException {
+        Files.createDirectories(directory);
+        pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String name : names) {
+                make(EndgameTable.of(name));
+            }
+        } finally {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-threads")) {
+            threads = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (args.length <= i) {
+            System.err.println(
+                    "Usage: TablebaseGenerator [-threads n] directory"
+                    + " [KQK KRK ...]");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[i]);
+        String[] names = args.length > i + 1
+            ? Arrays.copyOfRange(args, i + 1, args.length) : DEFAULT_TABLES;
+
+        TablebaseGenerator generator = new TablebaseGenerator(directory,
+                threads);
+        generator.setListener(System.out::println);
+        generator.generate(names);
+    }
+
+    private void make(EndgameTable t) throws IOException {
+        if (t.getPieces() > Tablebase.MAX_PIECES) {
+            throw new IllegalArgumentException("More than "
+                    + Tablebase.MAX_PIECES + " pieces: " + t.getName());
+        }
+        Path file = directory.resolve(t.getName() + Tablebase.SUFFIX);
+        if (Files.exists(file)) {
+            return;
+        }
+        for (String name : smallerTables(t)) {
+            make(EndgameTable.of(name));
+        }
+
+        long start = System.nanoTime();
+        table = t;
+        smaller = Tablebase.open(directory);
+        exits = exits(t);
+        values = new byte[t.size()];
+        pending = new byte[t.size()];
+        candidates = new byte[t.size()];
+        lastPending.set(0);
+
+        long valid = parallel((w, index) -> w.score(index));
+        int ply = 0;
+        for (;; ply++) {
+            int d = ply;
+            parallel((w, index) -> w.settle(index, d));
+            long decided = parallel((w, index) -> w.expand(index, d));
+            if (d % 2 == 1) {
+                parallel((w, index) -> w.verify(index, d));
+            }
+            if (decided == 0 && d >= lastPending.get()) {
+                break;
+            }
+        }
+
+        Path temporary = directory.resolve(t.getName() + ".tmp");
+        Files.write(temporary, values);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        report(t, valid, System.nanoTime() - start);
+        values = null;
+        pending = null;
+        candidates = null;
+    }
+
+    private void report(EndgameTable t, long valid, long nanos) {
+        if (listener == null) {
+            return;
+        }
+        long wins = 0;
+        long losses = 0;
+        int longest = 0;
+        for (byte b : values) {
+            int value = b & 0xFF;
+            if (EndgameTable.isWin(value)) {
+                wins++;
+                longest = Math.max(longest, EndgameTable.plies(value));
+            } else if (EndgameTable.isLoss(value)) {
+                losses++;
+            }
+        }
+        listener.accept(String.format("%s: %d positions, %d won, %d drawn,"
+                    + " %d lost, longest mate %d plies, %.1f s,"
+                    + " %d positions/s", t.getName(), valid, wins,
+                    valid - wins - losses, losses, longest, nanos / 1e9,
+                    valid * 1000000000L / Math.max(1, nanos)));
+    }
+
+    // the tables a capture or a promotion can lead to
+    private static List<String> smallerTables(EndgameTable t) {
+        List<String> names = new ArrayList<>();
+        int n = t.getPieces();
+        for (int captured = -1; captured < n; captured++) {
+            for (int pawn = -1; pawn < n; pawn++) {
+                for (int p = -1; p < PROMOTIONS.length; p++) {
+                    if (isExit(t, captured, pawn, p)) {
+                        String name = EndgameTable.of(name(t, captured, pawn,
+                                    p)).getName();
+                        if (!names.contains(name)) {
+                            names.add(name);
+                        }
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private EndgameProbe[][][] exits(EndgameTable t) throws IOException {
+        int n = t.getPieces();
+        EndgameProbe[][][] probes =
+            new EndgameProbe[n + 1][n + 1][PROMOTIONS.length + 1];
+        for (int captured = -1; captured < n; captured++) {
+            for (int pawn = -1; pawn < n; pawn++) {
+                for (int p = -1; p < PROMOTIONS.length; p++) {
+                    if (!isExit(t, captured, pawn, p)) {
+                        continue;
+                    }
+                    int size = captured < 0 ? n : n - 1;
+                    Side[] sides = new Side[size];
+                    ChessPiece.ChessPieceType[] types =
+                        new ChessPiece.ChessPieceType[size];
+                    pieces(t, captured, pawn, p, sides, types);
+                    EndgameProbe probe = smaller.probe(sides, types, size);
+                    if (probe == null) {
+                        throw new IOException("Missing table for "
+                                + name(t, captured, pawn, p));
+                    }
+                    probes[captured + 1][pawn + 1][p + 1] = probe;
+                }
+            }
+        }
+        return probes;
+    }
+
+    // whether a move that captures piece captured, or none if -1, and
+    // promotes pawn to PROMOTIONS[p], or nothing if -1, can happen
+    private static boolean isExit(EndgameTable t, int captured, int pawn,
+            int p) {
+        if (captured < 0 && p < 0) {
+            return false;
+        }
+        if (p < 0 ? pawn >= 0 : pawn < 0
+                || t.type(pawn) != ChessPiece.ChessPieceType.PAWN) {
+            return false;
+        }
+        return captured < 0
+            || t.type(captured) != ChessPiece.ChessPieceType.KING
+            && (pawn < 0 || t.side(captured) != t.side(pawn));
+    }
+
+    // the pieces after the move, in the table's order less the captured
+    private static void pieces(EndgameTable t, int captured, int pawn, int p,
+            Side[] sides, ChessPiece.ChessPieceType[] types) {
+        int k = 0;
+        for (int i = 0; i < t.getPieces(); i++) {
+            if (i != captured) {
+                sides[k] = t.side(i);
+                types[k++] = i == pawn ? PROMOTIONS[p] : t.type(i);
+            }
+        }
+    }
+
+    private static String name(EndgameTable t, int captured, int pawn,
+            int p) {
+        int size = captured < 0 ? t.getPieces() : t.getPieces() - 1;
+        Side[] sides = new Side[size];
+        ChessPiece.ChessPieceType[] types = new ChessPiece.ChessPieceType[size];
+        pieces(t, captured, pawn, p, sides, types);
+        return EndgameTable.name(sides, types, size);
+    }
+
+    // runs task on every index, split between the threads, and adds up
+    // what it returns
+    private long parallel(Task task) throws IOException {
+        int size = table.size();
+        int chunks = Math.min(size, threads * 16);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            int from = (int) ((long) size * c / chunks);
+            int to = (int) ((long) size * (c + 1) / chunks);
+            results.add(pool.submit(() -> {
+                Worker w = new Worker();
+                long sum = 0;
+                for (int index = from; index < to; index++) {
+                    sum += task.run(w, index);
+                }
+                return sum;
+            }));
+        }
+        long sum = 0;
+        try {
+            for (Future<Long> result : results) {
+                sum += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return sum;
+    }
+
+    private interface Task {
+        long run(Worker w, int index);
+    }
+
+    // the value a position decided at ply gets
+    private static int value(int ply) {
+        return ply % 2 == 1 ? EndgameTable.win(ply) : EndgameTable.loss(ply);
+    }
+
+    /**
+     * One thread's view of one position at a time.
+     */
+    private final class Worker {
+
+        private final int n = table.getPieces();
+        private final int[] squares = new int[n];
+        private final int[] rest = new int[n];
+        private final int[] scratch = new int[n];
+        // the values of the positions the legal moves lead to, for the
+        // opponent, and whether they are in this table
+        private final int[] replies = new int[256];
+        private final boolean[] inTable = new boolean[256];
+        private Side toMove;
+        private long occupied;
+        private final long[] sideOccupied = new long[2];
+
+        /**
+         * Scores the position on its own: invalid, mate, stalemate, or
+         * decided by leaving the table.
+         *
+         * @return 1 for a valid position
+         */
+        long score(int index) {
+            if (!load(index) || !isValid()) {
+                values[index] = (byte) EndgameTable.INVALID;
+                return 0;
+            }
+            int moves = generate();
+            if (moves == 0) {
+                if (isAttacked(squares[king(toMove)],
+                            Searcher.opponent(toMove), occupied, -1)) {
+                    values[index] = (byte) EndgameTable.loss(0);
+                }
+                return 1;
+            }
+            int fastestWin = Integer.MAX_VALUE;
+            int slowestLoss = 0;
+            boolean open = false;
+            for (int i = 0; i < moves; i++) {
+                int reply = replies[i];
+                if (inTable[i] || reply == EndgameTable.DRAW) {
+                    open = true;
+                } else if (EndgameTable.isLoss(reply)) {
+                    fastestWin = Math.min(fastestWin,
+                            EndgameTable.plies(reply) + 1);
+                } else {
+                    slowestLoss = Math.max(slowestLoss,
+                            EndgameTable.plies(reply) + 1);
+                }
+            }
+            if (fastestWin != Integer.MAX_VALUE) {
+                decideAt(index, fastestWin);
+            } else if (!open) {
+                decideAt(index, slowestLoss);
+            }
+            return 1;
+        }
+
+        /**
+         * Gives the positions whose moves out of the table decide them at
+         * ply their value.
+         */
+        long settle(int index, int ply) {
+            if (pending[index] != 0 && (pending[index] & 0xFF) - 1 == ply
+                    && values[index] == EndgameTable.DRAW) {
+                values[index] = (byte) value(ply);
+            }
+            return 0;
+        }
+
+        /**
+         * Takes back every move into a position decided at ply: a loss
+         * makes its predecessors wins, a win makes them candidates for
+         * losses.
+         *
+         * @return 1 if the position was decided at ply
+         */
+        long expand(int index, int ply) {
+            if ((values[index] & 0xFF) != value(ply)) {
+                return 0;
+            }
+            load(index);
+            Side mover = Searcher.opponent(toMove);
+            for (int i = 0; i < n; i++) {
+                if (table.side(i) != mover) {
+                    continue;
+                }
+                int to = squares[i];
+                for (long from = unmoves(i, to); from != 0;
+                        from &= from - 1) {
+                    squares[i] = Bitboards.first(from);
+                    int before = table.index(squares, mover);
+                    if (values[before] == EndgameTable.DRAW) {
+                        if (ply % 2 == 0) {
+                            values[before] = (byte) EndgameTable.win(ply + 1);
+                        } else {
+                            candidates[before] = 1;
+                        }
+                    }
+                }
+                squares[i] = to;
+            }
+            return 1;
+        }
+
+        /**
+         * Makes a candidate a loss if every move now leads to a win.
+         */
+        long verify(int index, int ply) {
+            if (candidates[index] == 0) {
+                return 0;
+            }
+            candidates[index] = 0;
+            if (values[index] != EndgameTable.DRAW) {
+                return 0;
+            }
+            load(index);
+            int moves = generate();
+            int slowest = 0;
+            for (int i = 0; i < moves; i++) {
+                if (!EndgameTable.isWin(replies[i])) {
+                    return 0;
+                }
+                slowest = Math.max(slowest, EndgameTable.plies(replies[i]));
+            }
+            if (moves > 0) {
+                if (slowest + 1 == ply + 1) {
+                    values[index] = (byte) EndgameTable.loss(ply + 1);
+                } else {
+                    decideAt(index, slowest + 1);
+                }
+            }
+            return 0;
+        }
+
+        private void decideAt(int index, int ply) {
+            if (ply > MAX_PLIES) {
+                throw new IllegalStateException("Mate too long for "
+                        + table.getName());
+            }
+            pending[index] = (byte) (ply + 1);
+            lastPending.accumulateAndGet(ply, Math::max);
+        }
+
+        // reads the position at index; false if two pieces share a square
+        private boolean load(int index) {
+            toMove = table.decode(index, squares);
+            occupied = 0;
+            sideOccupied[0] = 0;
+            sideOccupied[1] = 0;
+            for (int i = 0; i < n; i++) {
+                long bit = Bitboards.bit(squares[i]);
+                if ((occupied & bit) != 0) {
+                    return false;
+                }
+                occupied |= bit;
+                sideOccupied[table.side(i).ordinal()] |= bit;
+            }
+            return true;
+        }
+
+        // no pawn on a back row, and the side that just moved not in check
+        private boolean isValid() {
+            for (int i = 0; i < n; i++) {
+                int row = Bitboards.row(squares[i]);
+                if (table.type(i) == ChessPiece.ChessPieceType.PAWN
+                        && (row == 0 || row == 7)) {
+                    return false;
+                }
+            }
+            return !isAttacked(squares[king(Searcher.opponent(toMove))],
+                    toMove, occupied, -1);
+        }
+
+        /**
+         * Fills replies with the value of every legal move of the side to
+         * move, for the opponent.
+         *
+         * @return the number of legal moves
+         */
+        private int generate() {
+            Side opponent = Searcher.opponent(toMove);
+            long own = sideOccupied[toMove.ordinal()];
+            long enemy = sideOccupied[opponent.ordinal()];
+            int king = king(toMove);
+            int moves = 0;
+            for (int i = 0; i < n; i++) {
+                if (table.side(i) != toMove) {
+                    continue;
+                }
+                int from = squares[i];
+                boolean pawn = table.type(i) == ChessPiece.ChessPieceType.PAWN;
+                long targets = pawn ? pawnMoves(from, enemy)
+                    : attacks(i, from, occupied) & ~own;
+                for (; targets != 0; targets &= targets - 1) {
+                    int to = Bitboards.first(targets);
+                    int captured = pieceOn(to);
+                    squares[i] = to;
+                    long after = occupied & ~Bitboards.bit(from)
+                        | Bitboards.bit(to);
+                    if (!isAttacked(squares[king], opponent, after,
+                                captured)) {
+                        int row = Bitboards.row(to);
+                        if (pawn && (row == 0 || row == 7)) {
+                            for (int p = 0; p < PROMOTIONS.length; p++) {
+                                replies[moves] = leave(captured, i, p,
+                                        opponent);
+                                inTable[moves++] = false;
+                            }
+                        } else if (captured >= 0) {
+                            replies[moves] = leave(captured, -1, -1,
+                                    opponent);
+                            inTable[moves++] = false;
+                        } else {
+                            replies[moves] = values[table.index(squares,
+                                    opponent)] & 0xFF;
+                            inTable[moves++] = true;
+                        }
+                    }
+                    squares[i] = from;
+                }
+            }
+            return moves;
+        }
+
+        // the value, for opponent, of the position a move out of the table
+        // leads to; the moved piece is already on its new square
+        private int leave(int captured, int pawn, int p, Side opponent) {
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (i != captured) {
+                    rest[k++] = squares[i];
+                }
+            }
+            return exits[captured + 1][pawn + 1][p + 1].value(rest, opponent,
+                    scratch);
+        }
+
+        private long pawnMoves(int from, long enemy) {
+            int forward = toMove == Side.WHITE ? -8 : 8;
+            long moves = Bitboards.pawnAttacks(toMove, from) & enemy;
+            int one = from + forward;
+            if ((occupied & Bitboards.bit(one)) == 0) {
+                moves |= Bitboards.bit(one);
+                int two = one + forward;
+                if (Bitboards.row(from) == toMove.getFrontRow()
+                        && (occupied & Bitboards.bit(two)) == 0) {
+                    moves |= Bitboards.bit(two);
+                }
+            }
+            return moves;
+        }
+
+        // the squares piece i, now on to, could have come from without
+        // capturing or promoting
+        private long unmoves(int i, int to) {
+            if (table.type(i) != ChessPiece.ChessPieceType.PAWN) {
+                return attacks(i, to, occupied) & ~occupied;
+            }
+            Side s = table.side(i);
+            int back = s == Side.WHITE ? 8 : -8;
+            int one = to + back;
+            int row = Bitboards.row(one);
+            if (row == 0 || row == 7 || (occupied & Bitboards.bit(one)) != 0) {
+                return 0;
+            }
+            long from = Bitboards.bit(one);
+            int two = one + back;
+            if (row + (s == Side.WHITE ? 1 : -1) == s.getFrontRow()
+                    && (occupied & Bitboards.bit(two)) == 0) {
+                from |= Bitboards.bit(two);
+            }
+            return from;
+        }
+
+        private long attacks(int i, int from, long occupancy) {
+            switch (table.type(i)) {
+            case KING:
+                return Bitboards.kingAttacks(from);
+            case KNIGHT:
+                return Bitboards.knightAttacks(from);
+            case BISHOP:
+                return Bitboards.bishopAttacks(from, occupancy);
+            case ROOK:
+                return Bitboards.rookAttacks(from, occupancy);
+            case QUEEN:
+                return Bitboards.queenAttacks(from, occupancy);
+            default:
+                return Bitboards.pawnAttacks(table.side(i), from);
+            }
+        }
+
+        // whether a piece of side by, other than the one at skip, attacks
+        // sq
+        private boolean isAttacked(int sq, Side by, long occupancy,
+                int skip) {
+            for (int j = 0; j < n; j++) {
+                if (j != skip && table.side(j) == by
+                        && (attacks(j, squares[j], occupancy)
+                            & Bitboards.bit(sq)) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // the piece on sq, or -1
+        private int pieceOn(int sq) {
+            for (int j = 0; j < n; j++) {
+                if (squares[j] == sq) {
+                    return j;
+                }
+            }
+            return -1;
+        }
+
+        private int king(Side s) {
+            return s == Side.WHITE ? 0 : 1;
+        }
+    }
+}
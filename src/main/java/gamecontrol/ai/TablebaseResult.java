@@ -0,0 +1,46 @@
+package gamecontrol.ai;
+
+/**
+ * What an endgame table knows about a position: whether the side to move
+ * wins, draws or loses with best play, and how many half moves the mate
+ * takes.
+ *
+ * @author Joe
+ */
+public final class TablebaseResult {
+
+    private final int value;
+
+    /**
+     * @param value a byte of an endgame table, see EndgameTable
+     */
+    TablebaseResult(int value) {
+        this.value = value;
+    }
+
+    public boolean isWin() {
+        return EndgameTable.isWin(value);
+    }
+
+    public boolean isDraw() {
+        return value == EndgameTable.DRAW;
+    }
+
+    public boolean isLoss() {
+        return EndgameTable.isLoss(value);
+    }
+
+    /**
+     * @return the half moves until mate with best play from both sides, or
+     * 0 for a draw
+     */
+    public int getPliesToMate() {
+        return isDraw() ? 0 : EndgameTable.plies(value);
+    }
+
+    @Override
+    public String toString() {
+        return isDraw() ? "draw" : (isWin() ? "win" : "loss") + " in "
+            + getPliesToMate() + " plies";
+    }
+}
@@ -0,0 +1,182 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+
+import model.chess.PackedMove;
+
+/**
+ * A fixed-size hash table of search results, stored in a long array so
+ * that millions of entries cost 16 bytes each and no objects.
+ *
+ * Every entry is two longs: the position key XORed with the data, and the
+ * data. A reader recomputes the key from both words, so an entry torn by
+ * two threads writing at once simply fails to match and is treated as a
+ * miss. This makes the table safe to share between search threads without
+ * locks.
+ *
+ * Entries are grouped four to a bucket of 64 bytes, the size of a cache
+ * line. Where the array starts is up to its header and the collector, so a
+ * bucket is not aligned to a line and usually straddles two; a probe reads
+ * at most those two adjacent lines. A new position replaces the shallowest
+ * entry of its bucket, and entries left over from earlier searches count
+ * as shallower the older they are.
+ *
+ * @author Joe
+ */
+public final class TranspositionTable {
+
+    /** Score is exact. */
+    public static final int EXACT = 1;
+    /** Score is at least the stored value, the search failed high. */
+    public static final int LOWER = 2;
+    /** Score is at most the stored value, the search failed low. */
+    public static final int UPPER = 3;
+
+    /** What probe returns when the position is not in the table. */
+    public static final long MISS = 0L;
+
+    private static final int ENTRIES_PER_BUCKET = 4;
+    private static final int LONGS_PER_BUCKET = ENTRIES_PER_BUCKET * 2;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * 8;
+
+    // data layout: move 0-15, score 16-31, depth 32-39, bound 40-41,
+    // age 42-47; the bound is never 0, so stored data never equals MISS
+    private static final int SCORE_SHIFT = 16;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int AGE_SHIFT = 42;
+    private static final int AGE_MASK = 63;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int age;
+
+    /**
+     * @param megabytes the most memory the table may use; it is rounded
+     * down to a power of two number of buckets
+     */
+    public TranspositionTable(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(bytes / BYTES_PER_BUCKET);
+        // a Java array holds fewer than 2^31 longs
+        buckets = Math.min(buckets, 1L << 27);
+        table = new long[(int) buckets * LONGS_PER_BUCKET];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * @param key the hash of a position
+     * @return the data stored for key, or MISS; read it with move, score,
+     * depth and bound
+     */
+    public long probe(long key) {
+        int bucket = bucket(key);
+        for (int i = bucket; i < bucket + LONGS_PER_BUCKET; i += 2) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key && data != MISS) {
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * @param key the hash of the position
+     * @param move the best PackedMove found, or PackedMove.NONE
+     * @param score the score, between -32768 and 32767
+     * @param depth the depth searched, between 0 and 255
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int bucket = bucket(key);
+        int currentAge = age;
+        int victim = bucket;
+        int victimWorth = Integer.MAX_VALUE;
+
+        for (int i = bucket; i < bucket + LONGS_PER_BUCKET; i += 2) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key || data == MISS) {
+                victim = i;
+                if (move == PackedMove.NONE && data != MISS) {
+                    // a search without a best move keeps the old one
+                    move = move(data);
+                }
+                break;
+            }
+            int staleness = (currentAge - age(data)) & AGE_MASK;
+            int worth = depth(data) - 8 * staleness;
+            if (worth < victimWorth) {
+                victim = i;
+                victimWorth = worth;
+            }
+        }
+
+        long data = (move & 0xFFFFL)
+            | (score & 0xFFFFL) << SCORE_SHIFT
+            | (long) (depth & 0xFF) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) currentAge << AGE_SHIFT;
+        table[victim] = key ^ data;
+        table[victim + 1] = data;
+    }
+
+    /**
+     * Marks the entries stored so far as belonging to an earlier search, so
+     * that they are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int capacity() {
+        return table.length / 2;
+    }
+
+    /**
+     * @return how full the table is with entries from the current search,
+     * in parts per thousand, estimated from the first thousand entries
+     */
+    public int hashfull() {
+        int sample = Math.min(1000, capacity());
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            long data = table[2 * i + 1];
+            if (data != MISS && age(data) == age) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> SCORE_SHIFT);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    private int bucket(long key) {
+        // the low bits pick the bucket, the whole key is checked
+        return ((int) key & bucketMask) * LONGS_PER_BUCKET;
+    }
+}
@@ -63,4 +63,22 @@ public interface Board {
      * @param newPiece
      */
     void replacePieceAt(Position pos, Piece newPiece);
+
+    /**
+     * Answers if the king of a side is currently under attack
+     *
+     * @param s Side in question
+     * @return whether or not s is in check
+     */
+    boolean isInCheck(Side s);
+
+    /**
+     * Answers a 64-bit key for the current position. Positions with the same
+     * pieces on the same squares, side to move, castling rights and en
+     * passant capture get the same key; different positions collide only by
+     * chance.
+     *
+     * @return the hash of the position
+     */
+    long hash();
 }
@@ -5,11 +5,21 @@ package model;
  *
  */
 public class Position {
-    private int row;
-    private int col;
+    private static final int SIZE = 8;
+    private static final Position[] SQUARES = new Position[SIZE * SIZE];
+
+    static {
+        for (int i = 0; i < SQUARES.length; i++) {
+            SQUARES[i] = new Position(i / SIZE, i % SIZE);
+        }
+    }
+
+    private final int row;
+    private final int col;
 
     /**
-     * Constructs a 2D pair
+     * Constructs a 2D pair. Prefer Position.of, which does not allocate for
+     * positions on an 8x8 board
      *
      * @param row
      * @param col
@@ -19,6 +29,27 @@ public class Position {
         this.col = col;
     }
 
+    /**
+     * @param row
+     * @param col
+     * @return the shared instance for (row, col) if it lies on an 8x8
+     * board, otherwise a new Position
+     */
+    public static Position of(int row, int col) {
+        if (row >= 0 && row < SIZE && col >= 0 && col < SIZE) {
+            return SQUARES[row * SIZE + col];
+        }
+        return new Position(row, col);
+    }
+
+    /**
+     * @param index row * 8 + col, between 0 and 63
+     * @return the shared instance for that square
+     */
+    public static Position of(int index) {
+        return SQUARES[index];
+    }
+
     /**
      *
      * @return the row
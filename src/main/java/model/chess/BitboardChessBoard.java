@@ -0,0 +1,486 @@
+package model.chess;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.SideHasNoMovesException;
+
+/**
+ * Chess board that keeps one 64-bit set per piece type and side. Move
+ * generation and check detection work on whole sets of squares, and a move
+ * is tested for legality by looking for attacks on the mover's king in the
+ * resulting occupancy instead of building a copy of the board.
+ *
+ * Piece objects are kept in a 64 entry array only so that callers get the
+ * same Piece instances back from every query.
+ *
+ * @author Joe
+ */
+public class BitboardChessBoard implements ChessPosition {
+
+    private static final int PIECE_TYPES = 6;
+    private static final int PAWN =
+        ChessPiece.ChessPieceType.PAWN.ordinal();
+    private static final int ROOK =
+        ChessPiece.ChessPieceType.ROOK.ordinal();
+    private static final int KNIGHT =
+        ChessPiece.ChessPieceType.KNIGHT.ordinal();
+    private static final int BISHOP =
+        ChessPiece.ChessPieceType.BISHOP.ordinal();
+    private static final int QUEEN =
+        ChessPiece.ChessPieceType.QUEEN.ordinal();
+    private static final int KING =
+        ChessPiece.ChessPieceType.KING.ordinal();
+
+    private static final int NO_SQUARE = -1;
+
+    private long[] pieces;
+    private long[] sides;
+    private long occupied;
+    private Piece[] squares;
+
+    private int castlingRights;
+    private int enPassantSquare;
+    private Side sideToMove;
+    private long hash;
+
+    //creates a chess board with all pieces in the right place
+    public BitboardChessBoard() {
+        pieces = new long[2 * PIECE_TYPES];
+        sides = new long[2];
+        squares = new Piece[64];
+        castlingRights = CastlingMove.ALL_RIGHTS;
+        enPassantSquare = NO_SQUARE;
+        sideToMove = Side.WHITE;
+
+        for (Side side : Side.values()) {
+            int frontRow = side.getFrontRow();
+            int backRow = side.getBackRow();
+
+            for (int i = 0; i < 8; i++) {
+                place(new Pawn(side), Bitboards.square(frontRow, i));
+            }
+            place(new Rook(side), Bitboards.square(backRow, 0));
+            place(new Rook(side), Bitboards.square(backRow, 7));
+            place(new Knight(side), Bitboards.square(backRow, 1));
+            place(new Knight(side), Bitboards.square(backRow, 6));
+            place(new Bishop(side), Bitboards.square(backRow, 2));
+            place(new Bishop(side), Bitboards.square(backRow, 5));
+            place(new Queen(side), Bitboards.square(backRow, 3));
+            place(new King(side), Bitboards.square(backRow, 4));
+        }
+        hash ^= stateKey();
+    }
+
+    /**
+     * Creates a board holding the same position as another, a ChessBoard
+     * read from FEN for instance. The pieces are shared.
+     *
+     * @param position the position to copy, which is not changed
+     */
+    public BitboardChessBoard(ChessPosition position) {
+        pieces = new long[2 * PIECE_TYPES];
+        sides = new long[2];
+        squares = new Piece[64];
+        for (int sq = 0; sq < 64; sq++) {
+            Piece p = position.getPieceAt(Bitboards.position(sq));
+            if (p != null) {
+                place(p, sq);
+            }
+        }
+        for (Side side : Side.values()) {
+            for (CastlingMove.CastlingType t
+                    : CastlingMove.CastlingType.values()) {
+                if (position.hasCastlingRight(side, t)) {
+                    castlingRights |= t.getRight(side);
+                }
+            }
+        }
+        enPassantSquare = position.getEnPassantSquare();
+        sideToMove = position.getSideToMove();
+        hash ^= stateKey();
+    }
+
+    /**
+     * Creates a copy of b that can be played on without changing b. The
+     * pieces themselves are shared.
+     *
+     * @param b the board to copy
+     */
+    public BitboardChessBoard(BitboardChessBoard b) {
+        pieces = b.pieces.clone();
+        sides = b.sides.clone();
+        occupied = b.occupied;
+        squares = b.squares.clone();
+        castlingRights = b.castlingRights;
+        enPassantSquare = b.enPassantSquare;
+        sideToMove = b.sideToMove;
+        hash = b.hash;
+    }
+
+    @Override
+    public void movePiece(Piece p, Move m) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+
+        hash ^= stateKey();
+        castlingRights = CastlingMove.remainingRights(castlingRights, from,
+                to);
+
+        int captureSquare = to;
+        if (m instanceof PawnCaptureMove
+                && ((PawnCaptureMove) m).isEnPassant()) {
+            captureSquare = Bitboards.square(
+                    ((PawnCaptureMove) m).getEnPassantCapturePosition());
+        }
+
+        if (squares[captureSquare] != null) {
+            remove(captureSquare);
+        }
+        remove(from);
+        place(p, to);
+
+        // keep short history for en passant
+        enPassantSquare = typeOf(p) == PAWN && Math.abs(to - from) == 16
+            ? (from + to) / 2 : NO_SQUARE;
+        sideToMove = opponent(p.getSide());
+        hash ^= stateKey();
+    }
+
+    @Override
+    public Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
+        throws SideHasNoMovesException {
+
+        Map<Piece, Set<Move>> allMoves = new HashMap<>();
+        boolean sideHasMoves = false;
+
+        for (long own = sides[s.ordinal()]; own != 0; own &= own - 1) {
+            int from = Bitboards.first(own);
+            Set<Move> moves = new HashSet<>();
+            addLegalMoves(from, s, moves);
+            if (!moves.isEmpty()) {
+                sideHasMoves = true;
+            }
+            allMoves.put(squares[from], moves);
+        }
+
+        if (!sideHasMoves) {
+            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+        }
+
+        return allMoves;
+    }
+
+    @Override
+    public boolean pieceCanMove(Move m, Side movingSide) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+        Piece mover = squares[from];
+
+        if (mover == null || mover.getSide() != movingSide) {
+            return false;
+        }
+
+        if (m instanceof CastlingMove) {
+            return canCastle(movingSide,
+                    ((CastlingMove) m).getCastlingType());
+        }
+
+        Piece target = squares[to];
+        boolean isEnPassantCapture = typeOf(mover) == PAWN
+            && m instanceof PawnCaptureMove
+            && to == enPassantSquare
+            && (Bitboards.pawnAttacks(movingSide, from)
+                & Bitboards.bit(to)) != 0;
+        int captureSquare = to;
+
+        if (isEnPassantCapture) {
+            captureSquare = Bitboards.square(Bitboards.row(from),
+                    Bitboards.col(to));
+            PawnCaptureMove pcm = (PawnCaptureMove) m;
+            pcm.setIsEnPassant(true);
+            pcm.setEnPassantCapturePosition(
+                    Bitboards.position(captureSquare));
+        }
+
+        boolean canCapture = (target != null
+                && target.getSide() != movingSide)
+                || isEnPassantCapture;
+
+        if (target != null && !canCapture) {
+            return false;
+        }
+        if (!canCapture && m.mustCapture()) {
+            return false;
+        }
+        if (canCapture && m.cannotCapture()) {
+            return false;
+        }
+        if (!m.isJump() && (Bitboards.between(from, to) & occupied) != 0) {
+            return false;
+        }
+
+        return leavesKingSafe(from, to, captureSquare, movingSide);
+    }
+
+    @Override
+    public Map<Piece, Position> getAllActivePiecesPositions() {
+        Map<Piece, Position> all = new HashMap<>();
+        for (long bb = occupied; bb != 0; bb &= bb - 1) {
+            int sq = Bitboards.first(bb);
+            all.put(squares[sq], Bitboards.position(sq));
+        }
+        return all;
+    }
+
+    @Override
+    public boolean isInCheck(Side s) {
+        return isAttacked(kingSquare(s), opponent(s), occupied,
+                Bitboards.EMPTY);
+    }
+
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    @Override
+    public Side getSideToMove() {
+        return sideToMove;
+    }
+
+    @Override
+    public boolean hasCastlingRight(Side s, CastlingMove.CastlingType t) {
+        return (castlingRights & t.getRight(s)) != 0;
+    }
+
+    @Override
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    @Override
+    public Piece getPieceAt(Position p) {
+        return squares[Bitboards.square(p)];
+    }
+
+    @Override
+    public void replacePieceAt(Position pos, Piece newPiece) {
+        int sq = Bitboards.square(pos);
+        if (squares[sq] != null) {
+            remove(sq);
+        }
+        place(newPiece, sq);
+    }
+
+    private void addLegalMoves(int from, Side s, Set<Move> moves) {
+        Piece p = squares[from];
+        long own = sides[s.ordinal()];
+        Position start = Bitboards.position(from);
+
+        switch ((ChessPiece.ChessPieceType) p.getType()) {
+        case PAWN:
+            addPawnMoves(from, s, moves);
+            break;
+        case KNIGHT:
+            addLegalTargets(from, Bitboards.knightAttacks(from) & ~own, s,
+                    true, moves);
+            break;
+        case ROOK:
+            addLegalTargets(from,
+                    Bitboards.rookAttacks(from, occupied) & ~own, s, false,
+                    moves);
+            break;
+        case BISHOP:
+            addLegalTargets(from,
+                    Bitboards.bishopAttacks(from, occupied) & ~own, s, false,
+                    moves);
+            break;
+        case QUEEN:
+            addLegalTargets(from,
+                    Bitboards.queenAttacks(from, occupied) & ~own, s, false,
+                    moves);
+            break;
+        default:
+            addLegalTargets(from, Bitboards.kingAttacks(from) & ~own, s,
+                    false, moves);
+            for (CastlingMove.CastlingType t
+                    : CastlingMove.CastlingType.values()) {
+                if (canCastle(s, t)) {
+                    int destCol = t == CastlingMove.CastlingType.KING_SIDE
+                        ? 6 : 2;
+                    moves.add(new CastlingMove(start,
+                            Position.of(s.getBackRow(), destCol), t));
+                }
+            }
+            break;
+        }
+    }
+
+    private void addLegalTargets(int from, long targets, Side s,
+            boolean isJump, Set<Move> moves) {
+        Position start = Bitboards.position(from);
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Bitboards.first(targets);
+            if (leavesKingSafe(from, to, to, s)) {
+                moves.add(new Move(start, Bitboards.position(to), isJump));
+            }
+        }
+    }
+
+    private void addPawnMoves(int from, Side s, Set<Move> moves) {
+        Position start = Bitboards.position(from);
+        int dy = s == Side.WHITE ? -8 : 8;
+
+        int push = from + dy;
+        if ((occupied & Bitboards.bit(push)) == 0) {
+            if (leavesKingSafe(from, push, push, s)) {
+                moves.add(Pawn.createMove(start, Bitboards.position(push),
+                            false));
+            }
+            int doublePush = push + dy;
+            if (Bitboards.row(from) == s.getFrontRow()
+                    && (occupied & Bitboards.bit(doublePush)) == 0
+                    && leavesKingSafe(from, doublePush, doublePush, s)) {
+                moves.add(new Move(start, Bitboards.position(doublePush),
+                            false, true, false));
+            }
+        }
+
+        long captures = Bitboards.pawnAttacks(s, from)
+            & sides[opponent(s).ordinal()];
+        for (; captures != 0; captures &= captures - 1) {
+            int to = Bitboards.first(captures);
+            if (leavesKingSafe(from, to, to, s)) {
+                moves.add(Pawn.createMove(start, Bitboards.position(to),
+                            true));
+            }
+        }
+
+        if (enPassantSquare != NO_SQUARE
+                && (Bitboards.pawnAttacks(s, from)
+                    & Bitboards.bit(enPassantSquare)) != 0) {
+            int captureSquare = Bitboards.square(Bitboards.row(from),
+                    Bitboards.col(enPassantSquare));
+            if (leavesKingSafe(from, enPassantSquare, captureSquare, s)) {
+                PawnCaptureMove pcm = new PawnCaptureMove(start,
+                        Bitboards.position(enPassantSquare), false, false,
+                        true);
+                pcm.setIsEnPassant(true);
+                pcm.setEnPassantCapturePosition(
+                        Bitboards.position(captureSquare));
+                moves.add(pcm);
+            }
+        }
+    }
+
+    private boolean canCastle(Side s, CastlingMove.CastlingType t) {
+        if ((castlingRights & t.getRight(s)) == 0) {
+            return false;
+        }
+        int back = s.getBackRow();
+        int king = Bitboards.square(back, 4);
+        int rook = Bitboards.square(back, t.getStartCol());
+        int step = t == CastlingMove.CastlingType.KING_SIDE ? 1 : -1;
+        Side enemy = opponent(s);
+
+        if ((pieces[index(s, ROOK)] & Bitboards.bit(rook)) == 0
+                || (pieces[index(s, KING)] & Bitboards.bit(king)) == 0
+                || (Bitboards.between(king, rook) & occupied) != 0) {
+            return false;
+        }
+        // the king may not castle out of, through or into check
+        for (int sq = king; sq != king + 3 * step; sq += step) {
+            if (isAttacked(sq, enemy, occupied, Bitboards.EMPTY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answers whether s's king is safe after moving the piece on from to
+     * to, removing any enemy piece on captureSquare.
+     */
+    private boolean leavesKingSafe(int from, int to, int captureSquare,
+            Side s) {
+        long captured = Bitboards.bit(captureSquare);
+        long occ = (occupied & ~Bitboards.bit(from) & ~captured)
+            | Bitboards.bit(to);
+        int king = kingSquare(s);
+        if (king == from) {
+            king = to;
+        }
+        return !isAttacked(king, opponent(s), occ, captured);
+    }
+
+    /**
+     * Answers whether any piece of side by, other than those on the
+     * excluded squares, attacks sq when the board is occupied by occ.
+     */
+    private boolean isAttacked(int sq, Side by, long occ, long excluded) {
+        long mask = ~excluded;
+        long queens = pieces[index(by, QUEEN)];
+        Side other = opponent(by);
+
+        return (Bitboards.knightAttacks(sq) & pieces[index(by, KNIGHT)]
+                & mask) != 0
+            || (Bitboards.pawnAttacks(other, sq) & pieces[index(by, PAWN)]
+                & mask) != 0
+            || (Bitboards.kingAttacks(sq) & pieces[index(by, KING)]) != 0
+            || (Bitboards.rookAttacks(sq, occ)
+                & (pieces[index(by, ROOK)] | queens) & mask) != 0
+            || (Bitboards.bishopAttacks(sq, occ)
+                & (pieces[index(by, BISHOP)] | queens) & mask) != 0;
+    }
+
+    private int kingSquare(Side s) {
+        return Bitboards.first(pieces[index(s, KING)]);
+    }
+
+    // castling rights, en passant and side to move part of the hash
+    private long stateKey() {
+        int ep = enPassantSquare;
+        if (ep != NO_SQUARE && (Bitboards.pawnAttacks(opponent(sideToMove),
+                        ep) & pieces[index(sideToMove, PAWN)]) == 0) {
+            ep = NO_SQUARE;
+        }
+        return Zobrist.state(castlingRights, ep, sideToMove);
+    }
+
+    private void place(Piece p, int sq) {
+        long b = Bitboards.bit(sq);
+        pieces[index(p.getSide(), typeOf(p))] |= b;
+        sides[p.getSide().ordinal()] |= b;
+        occupied |= b;
+        squares[sq] = p;
+        hash ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+    }
+
+    private void remove(int sq) {
+        Piece p = squares[sq];
+        long b = ~Bitboards.bit(sq);
+        pieces[index(p.getSide(), typeOf(p))] &= b;
+        sides[p.getSide().ordinal()] &= b;
+        occupied &= b;
+        squares[sq] = null;
+        hash ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+    }
+
+    private static int typeOf(Piece p) {
+        return ((ChessPiece.ChessPieceType) p.getType()).ordinal();
+    }
+
+    private static int index(Side s, int type) {
+        return s.ordinal() * PIECE_TYPES + type;
+    }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+}
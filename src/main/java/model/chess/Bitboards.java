@@ -0,0 +1,188 @@
+package model.chess;
+
+import model.Position;
+import model.Side;
+
+/**
+ * Square indexing and precomputed attack masks for 64-bit board sets.
+ *
+ * Squares are numbered row * 8 + col, so bit 0 is (0, 0) on Black's back
+ * row and bit 63 is (7, 7) on White's back row.
+ *
+ * @author Joe
+ */
+public final class Bitboards {
+
+    public static final long EMPTY = 0L;
+    public static final long ALL = ~0L;
+
+    private static final int[][] KNIGHT_OFFSETS = {
+        {-2, -1}, {-2, 1}, {-1, -2}, {-1, 2},
+        {1, -2}, {1, 2}, {2, -1}, {2, 1}
+    };
+
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            int row = row(sq);
+            int col = col(sq);
+            for (int[] offset : KNIGHT_OFFSETS) {
+                KNIGHT_ATTACKS[sq] |= bitIfOnBoard(row + offset[0],
+                        col + offset[1]);
+            }
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx != 0 || dy != 0) {
+                        KING_ATTACKS[sq] |= bitIfOnBoard(row + dy, col + dx);
+                    }
+                }
+            }
+            // white pawns move towards row 0, black pawns towards row 7
+            PAWN_ATTACKS[Side.WHITE.ordinal()][sq] =
+                bitIfOnBoard(row - 1, col - 1) | bitIfOnBoard(row - 1, col + 1);
+            PAWN_ATTACKS[Side.BLACK.ordinal()][sq] =
+                bitIfOnBoard(row + 1, col - 1) | bitIfOnBoard(row + 1, col + 1);
+        }
+
+        for (int from = 0; from < 64; from++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) {
+                        continue;
+                    }
+                    long path = EMPTY;
+                    long line = bit(from) | ray(from, dy, dx)
+                        | ray(from, -dy, -dx);
+                    int row = row(from) + dy;
+                    int col = col(from) + dx;
+                    while (ChessUtils.posBoundsTest(row, col)) {
+                        int to = square(row, col);
+                        BETWEEN[from][to] = path;
+                        LINE[from][to] = line;
+                        path |= bit(to);
+                        row += dy;
+                        col += dx;
+                    }
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static int square(Position p) {
+        return square(p.getRow(), p.getCol());
+    }
+
+    public static int row(int sq) {
+        return sq >>> 3;
+    }
+
+    public static int col(int sq) {
+        return sq & 7;
+    }
+
+    public static Position position(int sq) {
+        return Position.of(sq);
+    }
+
+    public static long bit(int sq) {
+        return 1L << sq;
+    }
+
+    /**
+     * @param bb a non-empty set of squares
+     * @return the lowest square in bb
+     */
+    public static int first(long bb) {
+        return Long.numberOfTrailingZeros(bb);
+    }
+
+    public static int count(long bb) {
+        return Long.bitCount(bb);
+    }
+
+    public static long knightAttacks(int sq) {
+        return KNIGHT_ATTACKS[sq];
+    }
+
+    public static long kingAttacks(int sq) {
+        return KING_ATTACKS[sq];
+    }
+
+    /**
+     * @param side the side of the attacking pawn
+     * @param sq the square the pawn stands on
+     * @return the squares a pawn of side on sq can capture on
+     */
+    public static long pawnAttacks(Side side, int sq) {
+        return PAWN_ATTACKS[side.ordinal()][sq];
+    }
+
+    /**
+     * @param sq the square of the rook
+     * @param occupied every occupied square on the board
+     * @return the squares a rook on sq attacks, up to and including the
+     * first blocker in each direction
+     */
+    public static long rookAttacks(int sq, long occupied) {
+        return MagicBitboards.rookAttacks(sq, occupied);
+    }
+
+    /**
+     * @param sq the square of the bishop
+     * @param occupied every occupied square on the board
+     * @return the squares a bishop on sq attacks, up to and including the
+     * first blocker in each direction
+     */
+    public static long bishopAttacks(int sq, long occupied) {
+        return MagicBitboards.bishopAttacks(sq, occupied);
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    /**
+     * @return the squares strictly between from and to, or an empty set if
+     * the two squares do not share a row, column or diagonal
+     */
+    public static long between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    /**
+     * @return every square of the row, column or diagonal through both
+     * squares from edge to edge, or an empty set if they are not aligned
+     */
+    public static long line(int a, int b) {
+        return LINE[a][b];
+    }
+
+    private static long ray(int sq, int dy, int dx) {
+        long ray = EMPTY;
+        int row = row(sq) + dy;
+        int col = col(sq) + dx;
+        while (ChessUtils.posBoundsTest(row, col)) {
+            ray |= bit(square(row, col));
+            row += dy;
+            col += dx;
+        }
+        return ray;
+    }
+
+    private static long bitIfOnBoard(int row, int col) {
+        return ChessUtils.posBoundsTest(row, col) ? bit(square(row, col))
+            : EMPTY;
+    }
+}
@@ -2,6 +2,7 @@ package model.chess;
 
 import model.Move;
 import model.Position;
+import model.Side;
 
 /**
  * Created by joe on 10/22/15.
@@ -24,6 +25,37 @@ public class CastlingMove extends Move {
         public int getDestCol() {
             return destCol;
         }
+
+        /**
+         * @param side the castling side
+         * @return the bit that stands for this castling right of side in a
+         * castling rights mask
+         */
+        public int getRight(Side side) {
+            return 1 << (side.ordinal() * 2 + ordinal());
+        }
+    }
+
+    /**
+     * Castling rights mask with every right of both sides.
+     */
+    public static final int ALL_RIGHTS = 15;
+
+    // castling rights that survive a move touching each square
+    private static final int[] RIGHTS_MASK = new int[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            RIGHTS_MASK[sq] = ALL_RIGHTS;
+        }
+        for (Side side : Side.values()) {
+            int back = side.getBackRow();
+            for (CastlingType t : CastlingType.values()) {
+                RIGHTS_MASK[Bitboards.square(back, 4)] &= ~t.getRight(side);
+                RIGHTS_MASK[Bitboards.square(back, t.getStartCol())] &=
+                    ~t.getRight(side);
+            }
+        }
     }
 
     private CastlingType castlingType;
@@ -37,5 +69,18 @@ public class CastlingMove extends Move {
         return castlingType;
     }
 
+    /**
+     * A king or rook that leaves its starting square, or a rook that is
+     * captured there, loses the matching castling rights for good.
+     *
+     * @param rights the castling rights before the move
+     * @param from the square a piece moved from
+     * @param to the square a piece moved to
+     * @return the castling rights after the move
+     */
+    static int remainingRights(int rights, int from, int to) {
+        return rights & RIGHTS_MASK[from] & RIGHTS_MASK[to];
+    }
+
 
 }
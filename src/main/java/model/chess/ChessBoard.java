@@ -4,10 +4,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import model.Board;
 import model.Move;
 import model.Piece;
+import model.PieceType;
 import model.Position;
 import model.Side;
 import model.SideHasNoMovesException;
@@ -17,33 +17,82 @@ import model.SideHasNoMovesException;
  * @author Joe
  * @date Nov 2, 2015
  */
-public class ChessBoard implements Board {
+public class ChessBoard implements ChessPosition {
+
+    private static final int NO_SQUARE = -1;
+
+    // which moves generate adds to the list
+    private static final int ALL_MOVES = 0;
+    private static final int CAPTURES = 1;
+    private static final int QUIETS = 2;
+    private static final int INITIAL_HISTORY = 128;
+
+    // piece letters in ChessPieceType order
+    private static final String FEN_CHARS = "prnbqk";
+    private static final Map<Character, PieceType> FEN_PIECES =
+        new HashMap<>();
+
+    static {
+        for (ChessPiece.ChessPieceType t
+                : ChessPiece.ChessPieceType.values()) {
+            FEN_PIECES.put(FEN_CHARS.charAt(t.ordinal()), t);
+        }
+    }
+
+    // cheapest first, the order pieces join an exchange in
+    private static final ChessPiece.ChessPieceType[] EXCHANGE_ORDER = {
+        ChessPiece.ChessPieceType.PAWN, ChessPiece.ChessPieceType.KNIGHT,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.KING
+    };
+
+    // -Dchess.verifyHash=true recomputes the hash after every change
+    private static final boolean VERIFY_HASH =
+        Boolean.getBoolean("chess.verifyHash");
 
     private Map<Piece, Position> whitePositions;
     private Map<Piece, Position> blackPositions;
     private Map<Side, Piece> kings;
     private Piece[][] board;
+    private long occupied;
+    private long[] sideOccupied;
+    private long[] typeOccupied;
 
-    private Map<Side, Boolean> kingsideCastlingRules;
-    private Map<Side, Boolean> queensideCastlingRules;
+    // how many pieces of each side attack each square, kept up to date by
+    // placePiece and removePiece
+    private int[][] attackCounts;
 
-    private Move lastMove;
-    private Piece lastMovedPiece;
+    // PieceSquareTables sums per side and the game phase, kept up to date
+    // by placePiece and removePiece
+    private int[] midgame;
+    private int[] endgame;
+    private int phase;
 
-    //creates a chess board with all pieces in the right place
-    public ChessBoard() {
-        kingsideCastlingRules = new HashMap<>();
-        queensideCastlingRules = new HashMap<>();
+    private int castlingRights;
 
-        kingsideCastlingRules.put(Side.WHITE, true);
-        queensideCastlingRules.put(Side.WHITE, true);
-        kingsideCastlingRules.put(Side.BLACK, true);
-        queensideCastlingRules.put(Side.BLACK, true);
+    // square a pawn skipped with its last move, for en passant
+    private int enPassantSquare;
 
-        whitePositions = new HashMap<>();
-        blackPositions = new HashMap<>();
-        kings = new HashMap<>();
-        board = new ChessPiece[8][8];
+    // the side that did not make the last move
+    private Side sideToMove;
+    private long hash;
+
+    // the part of hash that comes from the pawns, for pawn structure caches
+    private long pawnHash;
+
+    private Undo[] history;
+    private int historySize;
+
+    // what each capture of an exchange has gained, for see
+    private final int[] swapList = new int[32];
+
+    // the moves of one piece, for isLegal
+    private final MoveList pieceMoves = new MoveList();
+
+    //creates a chess board with all pieces in the right place
+    public ChessBoard() {
+        clear();
+        castlingRights = CastlingMove.ALL_RIGHTS;
 
         for (Side side : Side.values()) {
             int frontRow = -1;
@@ -60,33 +109,156 @@ public class ChessBoard implements Board {
 
             // create pawns
             for (int i = 0; i < 8; i++) {
-                placePiece(new Pawn(side), new Position(frontRow, i));
+                placePiece(new Pawn(side), Position.of(frontRow, i));
             }
 
             // create Rooks
-            placePiece(new Rook(side), new Position(backRow, 0));
-            placePiece(new Rook(side), new Position(backRow, 7));
+            placePiece(new Rook(side), Position.of(backRow, 0));
+            placePiece(new Rook(side), Position.of(backRow, 7));
 
             // create knights
-            placePiece(new Knight(side), new Position(backRow, 1));
-            placePiece(new Knight(side), new Position(backRow, 6));
+            placePiece(new Knight(side), Position.of(backRow, 1));
+            placePiece(new Knight(side), Position.of(backRow, 6));
 
             // create Bishops
-            placePiece(new Bishop(side), new Position(backRow, 2));
-            placePiece(new Bishop(side), new Position(backRow, 5));
+            placePiece(new Bishop(side), Position.of(backRow, 2));
+            placePiece(new Bishop(side), Position.of(backRow, 5));
 
             // create Queen
             placePiece(new Queen(side),
-                    new Position(side == Side.BLACK ? 0 : 7, 3));
+                    Position.of(side == Side.BLACK ? 0 : 7, 3));
 
             // create King
             ChessPiece king = new King(side);
             kings.put(side, king);
-            placePiece(king, new Position(side == Side.BLACK ? 0 : 7, 4));
+            placePiece(king, Position.of(side == Side.BLACK ? 0 : 7, 4));
         }
+        hash ^= stateKey();
     }
 
-    private ChessBoard(ChessBoard b) {
+    /**
+     * Creates a board from Forsyth-Edwards Notation. The move clocks at the
+     * end are optional and ignored.
+     *
+     * @param fen for example
+     * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"
+     * @throws IllegalArgumentException if fen does not describe a position
+     * with one king per side
+     */
+    public ChessBoard(String fen) {
+        clear();
+        String[] fields = fen.trim().split("\\s+");
+        String[] rows = fields[0].split("/");
+        if (fields.length < 2 || rows.length != 8) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (char c : rows[row].toCharArray()) {
+                if (Character.isDigit(c)) {
+                    col += c - '0';
+                    continue;
+                }
+                Side side = Character.isUpperCase(c) ? Side.WHITE : Side.BLACK;
+                PieceType type = FEN_PIECES.get(Character.toLowerCase(c));
+                if (type == null || col > 7) {
+                    throw new IllegalArgumentException("Bad FEN: " + fen);
+                }
+                Piece p = ChessUtils.getPieceOfType(type, side);
+                if (p instanceof King) {
+                    kings.put(side, p);
+                }
+                placePiece(p, Position.of(row, col++));
+            }
+        }
+        if (kings.size() != 2) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+
+        sideToMove = fields[1].equals("b") ? Side.BLACK : Side.WHITE;
+        if (fields.length > 2) {
+            for (char c : fields[2].toCharArray()) {
+                Side side = Character.isUpperCase(c) ? Side.WHITE : Side.BLACK;
+                char t = Character.toLowerCase(c);
+                if (t == 'k') {
+                    castlingRights |= CastlingMove.CastlingType.KING_SIDE
+                        .getRight(side);
+                } else if (t == 'q') {
+                    castlingRights |= CastlingMove.CastlingType.QUEEN_SIDE
+                        .getRight(side);
+                }
+            }
+        }
+        if (fields.length > 3 && !fields[3].equals("-")) {
+            enPassantSquare = Bitboards.square('8' - fields[3].charAt(1),
+                    fields[3].charAt(0) - 'a');
+        }
+        hash ^= stateKey();
+    }
+
+    // an empty board with white to move and no castling rights
+    private void clear() {
+        castlingRights = 0;
+        enPassantSquare = NO_SQUARE;
+        sideToMove = Side.WHITE;
+        history = newHistory(INITIAL_HISTORY);
+
+        whitePositions = new HashMap<>();
+        blackPositions = new HashMap<>();
+        kings = new HashMap<>();
+        board = new ChessPiece[8][8];
+        sideOccupied = new long[2];
+        typeOccupied = new long[ChessPiece.ChessPieceType.values().length];
+        attackCounts = new int[2][64];
+        midgame = new int[2];
+        endgame = new int[2];
+        phase = 0;
+        pawnHash = 0;
+    }
+
+    /**
+     * Creates a ChessBoard with the same position as any other Board. The
+     * castling rights and en passant square are copied from a
+     * ChessPosition; a Board that does not keep them gets neither, as they
+     * cannot be told from the pieces.
+     *
+     * @param b the board to copy, which is not changed
+     * @param toMove the side whose turn it is on b
+     */
+    public ChessBoard(Board b, Side toMove) {
+        clear();
+        for (Map.Entry<Piece, Position> e
+                : b.getAllActivePiecesPositions().entrySet()) {
+            if (e.getKey() instanceof King) {
+                kings.put(e.getKey().getSide(), e.getKey());
+            }
+            placePiece(e.getKey(), e.getValue());
+        }
+
+        if (b instanceof ChessPosition) {
+            ChessPosition position = (ChessPosition) b;
+            for (Side side : Side.values()) {
+                for (CastlingMove.CastlingType t
+                        : CastlingMove.CastlingType.values()) {
+                    if (position.hasCastlingRight(side, t)) {
+                        castlingRights |= t.getRight(side);
+                    }
+                }
+            }
+            enPassantSquare = position.getEnPassantSquare();
+        }
+        sideToMove = toMove;
+        hash ^= stateKey();
+    }
+
+    /**
+     * Creates a copy of b that can be played on without changing b. The
+     * pieces themselves are shared.
+     *
+     * @param b the board to copy
+     */
+    public ChessBoard(ChessBoard b) {
         board = new ChessPiece[8][8];
 
         for (int row = 0; row < board.length; row++) {
@@ -95,16 +267,30 @@ public class ChessBoard implements Board {
             }
         }
 
+        occupied = b.occupied;
+        sideOccupied = b.sideOccupied.clone();
+        typeOccupied = b.typeOccupied.clone();
+        attackCounts = new int[][] {
+            b.attackCounts[0].clone(), b.attackCounts[1].clone()
+        };
+        midgame = b.midgame.clone();
+        endgame = b.endgame.clone();
+        phase = b.phase;
         whitePositions = new HashMap<>(b.whitePositions);
         blackPositions = new HashMap<>(b.blackPositions);
         kings = new HashMap<>(b.kings);
 
-        kingsideCastlingRules = new HashMap<>(b.kingsideCastlingRules);
-        queensideCastlingRules = new HashMap<>(b.queensideCastlingRules);
+        castlingRights = b.castlingRights;
+        enPassantSquare = b.enPassantSquare;
+        sideToMove = b.sideToMove;
+        hash = b.hash;
+        pawnHash = b.pawnHash;
+        history = newHistory(INITIAL_HISTORY);
     }
 
     @Override
     public void movePiece(Piece p, Move m) {
+        hash ^= stateKey();
 
         // check for castling
         validateCastling(p, m);
@@ -130,53 +316,372 @@ public class ChessBoard implements Board {
         placePiece(p, destPos);
 
         // keep short history for en passant
-        lastMove = m;
-        lastMovedPiece = p;
+        updateEnPassant(p, m);
+
+        // the rook half of castling is moved separately by the same side
+        sideToMove = opponent(p.getSide());
+        hash ^= stateKey();
+        verifyHash();
+    }
+
+    /**
+     * Plays a move including the rook half of a castling move and the
+     * promotion of a pawn, which becomes a queen unless the move says
+     * otherwise. The move can be taken back with unmakeMove.
+     *
+     * @param m a legal move for the piece at its start position
+     */
+    public void makeMove(Move m) {
+        makeMove(encode(m));
+    }
+
+    /**
+     * Plays a move from generateLegalMoves. The move can be taken back with
+     * unmakeMove.
+     *
+     * @param move a legal PackedMove for this position
+     */
+    public void makeMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Piece mover = getPieceAt(Bitboards.row(from), Bitboards.col(from));
+
+        Undo u = pushHistory();
+        u.move = move;
+        u.mover = mover;
+        u.castlingRights = castlingRights;
+        u.enPassantSquare = enPassantSquare;
+        u.sideToMove = sideToMove;
+        u.hash = hash;
+        hash ^= stateKey();
+        u.capturedAt = PackedMove.isEnPassant(move)
+            ? Bitboards.square(Bitboards.row(from), Bitboards.col(to)) : to;
+        u.captured = getPieceAt(Bitboards.row(u.capturedAt),
+                Bitboards.col(u.capturedAt));
+        u.promoted = null;
+
+        castlingRights = CastlingMove.remainingRights(castlingRights, from,
+                to);
+        if (u.captured != null) {
+            removePiece(u.captured);
+        }
+        removePiece(mover);
+        placePiece(mover, Bitboards.position(to));
+
+        if (PackedMove.isCastling(move)) {
+            moveCastlingRook(to, false);
+        }
+
+        if (PackedMove.isPromotion(move)) {
+            u.promoted = ChessUtils.getPieceOfType(
+                    PackedMove.promotionType(move), mover.getSide());
+            removePiece(mover);
+            placePiece(u.promoted, Bitboards.position(to));
+        }
+
+        enPassantSquare = PackedMove.isDoublePush(move) ? (from + to) / 2
+            : NO_SQUARE;
+        sideToMove = opponent(mover.getSide());
+        hash ^= stateKey();
+        verifyHash();
+    }
+
+    /**
+     * Passes the move to the opponent without moving a piece, for null move
+     * pruning. Only legal when the side to move is not in check; taken back
+     * with unmakeMove.
+     */
+    public void makeNullMove() {
+        Undo u = pushHistory();
+        u.move = PackedMove.NONE;
+        u.mover = null;
+        u.captured = null;
+        u.promoted = null;
+        u.castlingRights = castlingRights;
+        u.enPassantSquare = enPassantSquare;
+        u.sideToMove = sideToMove;
+        u.hash = hash;
+
+        hash ^= stateKey();
+        enPassantSquare = NO_SQUARE;
+        sideToMove = opponent(sideToMove);
+        hash ^= stateKey();
+        verifyHash();
+    }
+
+    /**
+     * Takes back the last move played with makeMove or makeNullMove,
+     * restoring any captured piece, the castling rights and the en passant
+     * state.
+     */
+    public void unmakeMove() {
+        Undo u = history[--historySize];
+        int move = u.move;
+        if (move == PackedMove.NONE) {
+            enPassantSquare = u.enPassantSquare;
+            sideToMove = u.sideToMove;
+            hash = u.hash;
+            return;
+        }
+        Position dest = Bitboards.position(PackedMove.to(move));
+
+        if (u.promoted != null) {
+            removePiece(u.promoted);
+            placePiece(u.mover, dest);
+        }
+
+        if (PackedMove.isCastling(move)) {
+            moveCastlingRook(PackedMove.to(move), true);
+        }
+
+        removePiece(u.mover);
+        placePiece(u.mover, Bitboards.position(PackedMove.from(move)));
+        if (u.captured != null) {
+            placePiece(u.captured, Bitboards.position(u.capturedAt));
+        }
+
+        castlingRights = u.castlingRights;
+        enPassantSquare = u.enPassantSquare;
+        sideToMove = u.sideToMove;
+        hash = u.hash;
+        verifyHash();
+
+        // let go of the pieces so the stack does not keep them alive
+        u.mover = null;
+        u.captured = null;
+        u.promoted = null;
+    }
+
+    /**
+     * @param m a move for the piece at its start position
+     * @return the same move as a PackedMove; a promotion without a piece
+     * promotes to a queen
+     */
+    public int encode(Move m) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+        Piece mover = getPieceAt(Bitboards.row(from), Bitboards.col(from));
+        boolean capture = getPieceAt(Bitboards.row(to), Bitboards.col(to))
+            != null;
+
+        if (mover instanceof King && Math.abs(to - from) == 2) {
+            return PackedMove.of(from, to, to > from
+                    ? PackedMove.KING_CASTLE : PackedMove.QUEEN_CASTLE);
+        }
+        if (mover instanceof Pawn) {
+            if (Math.abs(to - from) == 16) {
+                return PackedMove.of(from, to, PackedMove.DOUBLE_PUSH);
+            }
+            if (to == enPassantSquare
+                    && Bitboards.col(from) != Bitboards.col(to)) {
+                return PackedMove.of(from, to, PackedMove.EN_PASSANT);
+            }
+            int row = Bitboards.row(to);
+            if (row == 0 || row == 7) {
+                PieceType t = m instanceof PromotionMove
+                    ? ((PromotionMove) m).getPromotingTo() : null;
+                return PackedMove.promotion(from, to, t != null
+                        ? (ChessPiece.ChessPieceType) t
+                        : ChessPiece.ChessPieceType.QUEEN, capture);
+            }
+        }
+        return PackedMove.of(from, to,
+                capture ? PackedMove.CAPTURE : PackedMove.QUIET);
     }
 
+    /**
+     * @param move a legal PackedMove for this position
+     * @return the same move as the piece at its start would generate it,
+     * with the promotion piece filled in
+     */
+    public Move toMove(int move) {
+        Move m = createMove(move);
+        if (m instanceof PromotionMove) {
+            ((PromotionMove) m).setPromotingTo(
+                    PackedMove.promotionType(move));
+        }
+        return m;
+    }
+
+    // builds the Move subclasses the pieces themselves generate
+    private Move createMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Position start = Bitboards.position(from);
+        Position dest = Bitboards.position(to);
+        Piece mover = getPieceAt(Bitboards.row(from), Bitboards.col(from));
+
+        switch (PackedMove.flags(move)) {
+        case PackedMove.KING_CASTLE:
+            return new CastlingMove(start, dest,
+                    CastlingMove.CastlingType.KING_SIDE);
+        case PackedMove.QUEEN_CASTLE:
+            return new CastlingMove(start, dest,
+                    CastlingMove.CastlingType.QUEEN_SIDE);
+        case PackedMove.DOUBLE_PUSH:
+            return new Move(start, dest, false, true, false);
+        case PackedMove.EN_PASSANT:
+            PawnCaptureMove pcm = new PawnCaptureMove(start, dest, false,
+                    false, true);
+            pcm.setIsEnPassant(true);
+            pcm.setEnPassantCapturePosition(
+                    Position.of(Bitboards.row(from), Bitboards.col(to)));
+            return pcm;
+        default:
+            break;
+        }
+
+        if (mover instanceof Pawn) {
+            return Pawn.createMove(start, dest,
+                    Bitboards.col(from) != Bitboards.col(to));
+        }
+        return new Move(start, dest, mover instanceof Knight);
+    }
+
+    /**
+     * Generates only legal moves. Checking pieces and pinned pieces are
+     * found once, and every move is then filtered by two masks instead of
+     * being played to see if it leaves the king in check: the squares that
+     * block or capture a single checker, and the line a pinned piece must
+     * stay on.
+     */
     @Override
     public Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
         throws SideHasNoMovesException {
 
-        boolean sideInCheck = isInCheck(s);
+        MoveList list = new MoveList();
+        generateLegalMoves(s, list);
+        if (list.isEmpty()) {
+            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+        }
+
         Map<Piece, Set<Move>> allMoves = new HashMap<>();
-        Map<Piece, Position> piecePositions = (s == Side.WHITE)
-            ? whitePositions
-            : blackPositions;
-        boolean sideHasMoves = false;
-
-        for (Piece p : piecePositions.keySet()) {
-            Set<Move> moves = p.generateMoves(piecePositions.get(p));
-            if (p instanceof King) {
-                if (!sideInCheck && queensideCastlingRules.get(s)) {
-                    Position start = new Position(s.getBackRow(), 4);
-                    Position dest = new Position(s.getBackRow(), 2);
-                    moves.add(new CastlingMove(start, dest,
-                            CastlingMove.CastlingType.QUEEN_SIDE));
-                }
-                if (!sideInCheck && kingsideCastlingRules.get(s)) {
-                    Position start = new Position(s.getBackRow(), 4);
-                    Position dest = new Position(s.getBackRow(), 6);
-                    moves.add(new CastlingMove(start, dest,
-                            CastlingMove.CastlingType.KING_SIDE));
-                }
-            }
-            Set<Move> filtered = moves
-                .stream()
-                .filter(m -> pieceCanMove(m, s))
-                .collect(Collectors.toCollection(HashSet<Move>::new));
+        for (long bb = sideOccupied[s.ordinal()]; bb != 0; bb &= bb - 1) {
+            int sq = Bitboards.first(bb);
+            allMoves.put(getPieceAt(Bitboards.row(sq), Bitboards.col(sq)),
+                    new HashSet<>());
+        }
 
-            if (!filtered.isEmpty()) {
-                sideHasMoves = true;
+        for (int i = 0; i < list.size(); i++) {
+            int move = list.get(i);
+            // the player picks the piece later, so one move per square
+            if (PackedMove.isPromotion(move) && PackedMove.promotionType(move)
+                    != ChessPiece.ChessPieceType.QUEEN) {
+                continue;
             }
-            allMoves.put(p, filtered);
+            int from = PackedMove.from(move);
+            allMoves.get(getPieceAt(Bitboards.row(from), Bitboards.col(from)))
+                .add(createMove(move));
         }
 
-        if (!sideHasMoves) {
-            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+        return allMoves;
+    }
+
+    /**
+     * Fills list with every legal move of side s, without allocating.
+     * Promotions appear once for each piece a pawn can become.
+     *
+     * @param s the side to move
+     * @param list cleared, then filled with PackedMove ints
+     */
+    public void generateLegalMoves(Side s, MoveList list) {
+        generate(s, list, ALL_MOVES, Bitboards.ALL);
+    }
+
+    /**
+     * Fills list with the legal captures and promotions of side s, the
+     * moves a quiescence search looks at.
+     *
+     * @param s the side to move
+     * @param list cleared, then filled with PackedMove ints
+     */
+    public void generateLegalCaptures(Side s, MoveList list) {
+        generate(s, list, CAPTURES, Bitboards.ALL);
+    }
+
+    /**
+     * Fills list with the legal moves of side s that generateLegalCaptures
+     * leaves out: everything that neither captures nor promotes.
+     *
+     * @param s the side to move
+     * @param list cleared, then filled with PackedMove ints
+     */
+    public void generateLegalQuiets(Side s, MoveList list) {
+        generate(s, list, QUIETS, Bitboards.ALL);
+    }
+
+    /**
+     * Checks a move that may have come from another position, such as one
+     * from a transposition table, by generating the moves of its piece only.
+     *
+     * @return true if move is a legal move of side s here
+     */
+    public boolean isLegal(Side s, int move) {
+        generate(s, pieceMoves, ALL_MOVES,
+                Bitboards.bit(PackedMove.from(move)));
+        return pieceMoves.contains(move);
+    }
+
+    // adds the legal moves of kind of the pieces of s on the squares of
+    // movers
+    private void generate(Side s, MoveList list, int kind, long movers) {
+        list.clear();
+
+        int king = kingSquare(s);
+        long own = sideOccupied[s.ordinal()];
+        long enemy = sideOccupied[opponent(s).ordinal()];
+        long checkers = isInCheck(s)
+            ? attackersTo(king, opponent(s), occupied) : Bitboards.EMPTY;
+        long pinned = pinnedPieces(s, king);
+
+        long checkMask = Bitboards.ALL;
+        if (Bitboards.count(checkers) > 1) {
+            // only the king can get out of a double check
+            checkMask = Bitboards.EMPTY;
+        } else if (checkers != 0) {
+            checkMask = checkers
+                | Bitboards.between(king, Bitboards.first(checkers));
         }
 
-        return allMoves;
+        for (long bb = own & movers; bb != 0; bb &= bb - 1) {
+            int from = Bitboards.first(bb);
+            Piece p = getPieceAt(Bitboards.row(from), Bitboards.col(from));
+
+            long allowed = checkMask & ~own;
+            if (kind == CAPTURES && !(p instanceof Pawn)) {
+                allowed &= enemy;
+            } else if (kind == QUIETS && !(p instanceof Pawn)) {
+                allowed &= ~enemy;
+            }
+            if ((pinned & Bitboards.bit(from)) != 0) {
+                allowed &= Bitboards.line(king, from);
+            }
+
+            switch ((ChessPiece.ChessPieceType) p.getType()) {
+            case PAWN:
+                addPawnMoves(from, s, allowed, kind, list);
+                break;
+            case KNIGHT:
+                addMoves(from, Bitboards.knightAttacks(from) & allowed,
+                        enemy, list);
+                break;
+            case BISHOP:
+                addMoves(from, Bitboards.bishopAttacks(from, occupied)
+                        & allowed, enemy, list);
+                break;
+            case ROOK:
+                addMoves(from, Bitboards.rookAttacks(from, occupied)
+                        & allowed, enemy, list);
+                break;
+            case QUEEN:
+                addMoves(from, Bitboards.queenAttacks(from, occupied)
+                        & allowed, enemy, list);
+                break;
+            default:
+                addKingMoves(from, s, checkers, kind, list);
+                break;
+            }
+        }
     }
 
     @Override
@@ -187,26 +692,22 @@ public class ChessBoard implements Board {
         Piece pieceAtDest = getPieceAt(dest);
         Piece mover = getPieceAt(start);
 
-        boolean positionAvailable = pieceAtDest == null;
+        if (m instanceof CastlingMove) {
+            return mover instanceof King && mover.getSide() == movingSide
+                && canCastle(movingSide,
+                        ((CastlingMove) m).getCastlingType());
+        }
 
-        boolean isEnPassantCapture = false;
+        boolean positionAvailable = pieceAtDest == null;
 
-        if (lastMovedPiece != null && lastMove != null) {
-            isEnPassantCapture = mover instanceof Pawn
-                    && lastMovedPiece instanceof Pawn
-                    && m instanceof PawnCaptureMove
-                    && Math.abs(lastMove.getStart().getRow()
-                    - lastMove.getDestination().getRow()) == 2
-                    && m.getDestination().getCol()
-                    == lastMove.getDestination().getCol()
-                    && lastMove.getDestination().getRow()
-                    == m.getStart().getRow();
-        }
+        boolean isEnPassantCapture = m instanceof PawnCaptureMove
+                && isEnPassant(mover, m);
 
         if (isEnPassantCapture) {
             PawnCaptureMove pcm = (PawnCaptureMove) m;
             pcm.setIsEnPassant(true);
-            pcm.setEnPassantCapturePosition(lastMove.getDestination());
+            pcm.setEnPassantCapturePosition(
+                    Position.of(start.getRow(), dest.getCol()));
         }
 
         boolean canCapture = (!positionAvailable
@@ -225,44 +726,16 @@ public class ChessBoard implements Board {
             return false;
         }
 
-        if (!m.isJump()) {
-            //walk towards destination and check for pieces
-            //along the way
-            int xi = start.getCol(), xf = dest.getCol();
-            int yi = start.getRow(), yf = dest.getRow();
-
-            int dx = 0, dy = 0;
-            if (Math.abs(xf - xi) != 0) {
-                dx = (xf - xi) / Math.abs(xf - xi);
-            }
-            if (Math.abs(yf - yi) != 0) {
-                dy = (yf - yi) / Math.abs(yf - yi);
-            }
-
-            for (int x = xi + dx, y = yi + dy;
-                    x != xf || y != yf;
-                    x += dx, y += dy) {
-                if (getPieceAt(y, x) != null) {
-                    return false;
-                }
-            }
+        if (!m.isJump() && (Bitboards.between(Bitboards.square(start),
+                        Bitboards.square(dest)) & occupied) != 0) {
+            //a piece stands between start and destination
+            return false;
         }
 
         if (positionAvailable || canCapture) {
-            ChessBoard preview = new ChessBoard(this);
-            Position destPos = m.getDestination();
-
-            Piece destPiece = getPieceAt(destPos.getRow(), destPos.getCol());
-
-            //kill a piece
-            if (destPiece != null) {
-                preview.removePiece(destPiece);
-            }
-            //move p
-            preview.removePiece(mover);
-            preview.placePiece(mover, destPos);
-
-            boolean moveCausesCheck = preview.isInCheck(movingSide);
+            makeMove(m);
+            boolean moveCausesCheck = isInCheck(movingSide);
+            unmakeMove();
             return !moveCausesCheck;
         } else {
             return false;
@@ -277,73 +750,239 @@ public class ChessBoard implements Board {
         return all;
     }
 
+    @Override
     public boolean isInCheck(Side s) {
-        Piece k = kings.get(s);
-        Map<Piece, Position> piecePositions;
+        return attackCounts[opponent(s).ordinal()][kingSquare(s)] != 0;
+    }
+
+    /**
+     * @return true if any piece of side by attacks p
+     */
+    public boolean isAttacked(Position p, Side by) {
+        return attackCounts[by.ordinal()][Bitboards.square(p)] != 0;
+    }
 
-        if (s.equals(Side.BLACK)) {
-            piecePositions = blackPositions;
+    /**
+     * @return the squares of the pieces of side s and type t, as a
+     * Bitboards set
+     */
+    public long getPieces(Side s, ChessPiece.ChessPieceType t) {
+        return sideOccupied[s.ordinal()] & typeOccupied[t.ordinal()];
+    }
+
+    /**
+     * @return the squares of every piece on the board, as a Bitboards set
+     */
+    public long getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Static exchange evaluation: plays out every capture on the square move
+     * lands on, each side capturing with its cheapest piece and stopping
+     * when going on would lose material. Sliders behind a capturer join in
+     * once it has moved; pins are ignored.
+     *
+     * @param move a PackedMove of the side to move
+     * @param values what each piece is worth, indexed by ChessPieceType
+     * ordinal
+     * @return the material the side making move wins, or loses if negative
+     */
+    public int see(int move, int[] values) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Piece mover = getPieceAt(Bitboards.row(from), Bitboards.col(from));
+        Side side = mover.getSide();
+        long occ = occupied ^ Bitboards.bit(from);
+
+        int gain;
+        if (PackedMove.isEnPassant(move)) {
+            gain = values[ChessPiece.ChessPieceType.PAWN.ordinal()];
+            occ ^= Bitboards.bit(Bitboards.square(Bitboards.row(from),
+                        Bitboards.col(to)));
         } else {
-            piecePositions = whitePositions;
+            Piece target = getPieceAt(Bitboards.row(to), Bitboards.col(to));
+            gain = target == null ? 0 : value(target, values);
+        }
+        int onSquare = value(mover, values);
+        ChessPiece.ChessPieceType promotion = PackedMove.promotionType(move);
+        if (promotion != null) {
+            onSquare = values[promotion.ordinal()];
+            gain += onSquare - values[ChessPiece.ChessPieceType.PAWN.ordinal()];
         }
 
-        Position kingPosition = piecePositions.get(k);
-
-        //throws NPE when king is killed
-        int row = kingPosition.getRow();
-        int col = kingPosition.getCol();
-
-        // check for attacking knights because they're weird and special
-        for (int dx = -2; dx <= 2; dx++) {
-            for (int dy = -2; dy <= 2; dy++) {
-                if (dx != dy && dx != 0 && dy != 0 && dx + dy != 0) {
-                    if (ChessUtils.posBoundsTest(row + dy, col + dx)) {
-                        Piece p = getPieceAt(row + dy, col + dx);
-                        if (p != null
-                                && !p.getSide().equals(s)
-                                && p.getType().equals(
-                                    ChessPiece.ChessPieceType.KNIGHT)) {
-                            return true;
-                        }
-                    }
+        int[] swap = swapList;
+        swap[0] = gain;
+        int depth = 0;
+        Side toCapture = opponent(side);
+        while (true) {
+            long attackers = attackersTo(to, toCapture, occ);
+            if (attackers == 0) {
+                break;
+            }
+            ChessPiece.ChessPieceType type = null;
+            long capturer = Bitboards.EMPTY;
+            for (ChessPiece.ChessPieceType t : EXCHANGE_ORDER) {
+                capturer = attackers & pieces(t);
+                if (capturer != 0) {
+                    type = t;
+                    break;
                 }
             }
+            if (type == ChessPiece.ChessPieceType.KING
+                    && attackersTo(to, opponent(toCapture), occ) != 0) {
+                // the king may not capture into check
+                break;
+            }
+            depth++;
+            swap[depth] = onSquare - swap[depth - 1];
+            onSquare = values[type.ordinal()];
+            occ ^= Long.lowestOneBit(capturer);
+            toCapture = opponent(toCapture);
         }
 
+        // either side may stop capturing when that is better for it
+        for (; depth > 0; depth--) {
+            swap[depth - 1] = -Math.max(-swap[depth - 1], swap[depth]);
+        }
+        return swap[0];
+    }
 
-        // check for all the other linear pieces
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                int attackCol = col + dx;
-                int attackRow = row + dy;
-                boolean kingDefended = false;
-                while (!kingDefended
-                        && (dx != 0 || dy != 0)
-                        && ChessUtils.posBoundsTest(attackRow, attackCol)) {
-                    Piece attacker = getPieceAt(attackRow, attackCol);
-                    if (attacker != null && !attacker.getSide().equals(s)) {
-                        Position p = new Position(attackRow, attackCol);
-                        if (attacker.generateMoves(p).stream()
-                                .filter(m -> !m.cannotCapture())
-                                .map(m -> m.getDestination())
-                                .collect(Collectors
-                                    .toCollection(HashSet<Position>::new))
-                                .contains(kingPosition)) {
-                            return true;
-                        } else {
-                            kingDefended = true;
-                        }
-                    } else if (attacker != null
-                            && attacker.getSide().equals(s)) {
-                        kingDefended = true;
-                    }
-                    attackCol = attackCol + dx;
-                    attackRow = attackRow + dy;
+    private static int value(Piece p, int[] values) {
+        return values[((ChessPiece.ChessPieceType) p.getType()).ordinal()];
+    }
+
+    /**
+     * @return the PieceSquareTables middlegame score of the pieces of s
+     */
+    public int getMidgameScore(Side s) {
+        return midgame[s.ordinal()];
+    }
+
+    /**
+     * @return the PieceSquareTables endgame score of the pieces of s
+     */
+    public int getEndgameScore(Side s) {
+        return endgame[s.ordinal()];
+    }
+
+    /**
+     * @return the game phase, PieceSquareTables.MAX_PHASE with every piece
+     * on the board, more after early promotions, 0 with only pawns and kings
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @return a hash of where the pawns of both sides stand and nothing
+     * else, which two positions share whenever their pawns are the same
+     */
+    public long pawnHash() {
+        return pawnHash;
+    }
+
+    /**
+     * @return the pawn hash worked out from scratch, which always equals
+     * pawnHash()
+     */
+    public long computePawnHash() {
+        long key = 0;
+        for (Side s : Side.values()) {
+            for (long bb = getPieces(s, ChessPiece.ChessPieceType.PAWN);
+                    bb != 0; bb &= bb - 1) {
+                key ^= Zobrist.piece(s, ChessPiece.ChessPieceType.PAWN,
+                        Bitboards.first(bb));
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the hash of the position worked out from scratch, which
+     * always equals hash()
+     */
+    public long computeHash() {
+        long key = stateKey();
+        for (long bb = occupied; bb != 0; bb &= bb - 1) {
+            int sq = Bitboards.first(bb);
+            Piece p = getPieceAt(Bitboards.row(sq), Bitboards.col(sq));
+            key ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+        }
+        return key;
+    }
+
+    /**
+     * @return the position in Forsyth-Edwards Notation; the move clocks are
+     * not tracked and always read 0 1
+     */
+    public String toFen() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Piece p = getPieceAt(row, col);
+                if (p == null) {
+                    empty++;
+                    continue;
                 }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char c = FEN_CHARS.charAt(
+                        ((ChessPiece.ChessPieceType) p.getType()).ordinal());
+                sb.append(p.getSide() == Side.WHITE
+                        ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0) {
+                sb.append(empty);
             }
+            sb.append(row < 7 ? "/" : "");
         }
 
-        return false;
+        sb.append(sideToMove == Side.WHITE ? " w " : " b ");
+        int length = sb.length();
+        for (Side side : Side.values()) {
+            if (hasCastlingRight(side, CastlingMove.CastlingType.KING_SIDE)) {
+                sb.append(side == Side.WHITE ? 'K' : 'k');
+            }
+            if (hasCastlingRight(side, CastlingMove.CastlingType.QUEEN_SIDE)) {
+                sb.append(side == Side.WHITE ? 'Q' : 'q');
+            }
+        }
+        sb.append(sb.length() == length ? "-" : "");
+
+        if (enPassantSquare == NO_SQUARE) {
+            sb.append(" -");
+        } else {
+            sb.append(' ').append((char) ('a' + Bitboards.col(enPassantSquare)))
+                .append((char) ('8' - Bitboards.row(enPassantSquare)));
+        }
+        return sb.append(" 0 1").toString();
+    }
+
+    /**
+     * @return the side whose turn it is, which is the opponent of the side
+     * that moved last
+     */
+    @Override
+    public Side getSideToMove() {
+        return sideToMove;
+    }
+
+    /**
+     * @return the square the pawn that just moved two rows skipped, or -1
+     * if the last move was anything else
+     */
+    @Override
+    public int getEnPassantSquare() {
+        return enPassantSquare;
     }
 
     @Override
@@ -356,12 +995,299 @@ public class ChessBoard implements Board {
         Piece old = getPieceAt(pos);
         removePiece(old);
         placePiece(newPiece, pos);
+        verifyHash();
     }
 
     private Piece getPieceAt(int row, int col) {
         return board[row][col];
     }
 
+    private static void addMoves(int from, long targets, long enemy,
+            MoveList list) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Bitboards.first(targets);
+            list.add(PackedMove.of(from, to, (enemy & Bitboards.bit(to)) != 0
+                        ? PackedMove.CAPTURE : PackedMove.QUIET));
+        }
+    }
+
+    private void addPawnMoves(int from, Side s, long allowed, int kind,
+            MoveList list) {
+        int dy = s == Side.WHITE ? -8 : 8;
+
+        int push = from + dy;
+        boolean promotes = Bitboards.row(push) == 0
+            || Bitboards.row(push) == 7;
+        // promotions count as captures
+        boolean wanted = kind == ALL_MOVES
+            || promotes == (kind == CAPTURES);
+        if (wanted && (occupied & Bitboards.bit(push)) == 0) {
+            if ((allowed & Bitboards.bit(push)) != 0) {
+                addPawnMove(from, push, false, list);
+            }
+            int doublePush = push + dy;
+            if (Bitboards.row(from) == s.getFrontRow()
+                    && (occupied & Bitboards.bit(doublePush)) == 0
+                    && (allowed & Bitboards.bit(doublePush)) != 0) {
+                list.add(PackedMove.of(from, doublePush,
+                            PackedMove.DOUBLE_PUSH));
+            }
+        }
+
+        if (kind == QUIETS) {
+            return;
+        }
+        long captures = Bitboards.pawnAttacks(s, from)
+            & sideOccupied[opponent(s).ordinal()] & allowed;
+        for (; captures != 0; captures &= captures - 1) {
+            addPawnMove(from, Bitboards.first(captures), true, list);
+        }
+
+        if (enPassantSquare != NO_SQUARE
+                && (Bitboards.pawnAttacks(s, from)
+                    & Bitboards.bit(enPassantSquare)) != 0
+                && enPassantIsLegal(from, s)) {
+            list.add(PackedMove.of(from, enPassantSquare,
+                        PackedMove.EN_PASSANT));
+        }
+    }
+
+    private static void addPawnMove(int from, int to, boolean capture,
+            MoveList list) {
+        int row = Bitboards.row(to);
+        if (row == 0 || row == 7) {
+            list.add(PackedMove.promotion(from, to,
+                        ChessPiece.ChessPieceType.QUEEN, capture));
+            list.add(PackedMove.promotion(from, to,
+                        ChessPiece.ChessPieceType.KNIGHT, capture));
+            list.add(PackedMove.promotion(from, to,
+                        ChessPiece.ChessPieceType.ROOK, capture));
+            list.add(PackedMove.promotion(from, to,
+                        ChessPiece.ChessPieceType.BISHOP, capture));
+        } else {
+            list.add(PackedMove.of(from, to,
+                        capture ? PackedMove.CAPTURE : PackedMove.QUIET));
+        }
+    }
+
+    /**
+     * En passant removes two pieces from one row, which the pin masks do not
+     * cover, so the king is looked at again with both pawns gone.
+     */
+    private boolean enPassantIsLegal(int from, Side s) {
+        int captured = Bitboards.square(Bitboards.row(from),
+                Bitboards.col(enPassantSquare));
+        long occ = (occupied & ~Bitboards.bit(from) & ~Bitboards.bit(captured))
+            | Bitboards.bit(enPassantSquare);
+        return attackersTo(kingSquare(s), opponent(s), occ) == 0;
+    }
+
+    private void addKingMoves(int from, Side s, long checkers, int kind,
+            MoveList list) {
+        Side enemy = opponent(s);
+        int[] enemyAttacks = attackCounts[enemy.ordinal()];
+        long enemyPieces = sideOccupied[enemy.ordinal()];
+        long targets = Bitboards.kingAttacks(from)
+            & ~sideOccupied[s.ordinal()];
+        if (kind == CAPTURES) {
+            targets &= enemyPieces;
+        } else if (kind == QUIETS) {
+            targets &= ~enemyPieces;
+        }
+        // the king does not shield the squares behind it from a checking
+        // slider, which the attack counts do not see
+        long occ = occupied & ~Bitboards.bit(from);
+
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Bitboards.first(targets);
+            if (enemyAttacks[to] == 0 && (checkers == 0
+                        || attackersTo(to, enemy, occ) == 0)) {
+                list.add(PackedMove.of(from, to,
+                            (enemyPieces & Bitboards.bit(to)) != 0
+                            ? PackedMove.CAPTURE : PackedMove.QUIET));
+            }
+        }
+
+        if (checkers == 0 && kind != CAPTURES) {
+            if (canCastle(s, CastlingMove.CastlingType.KING_SIDE)) {
+                list.add(PackedMove.of(from, from + 2,
+                            PackedMove.KING_CASTLE));
+            }
+            if (canCastle(s, CastlingMove.CastlingType.QUEEN_SIDE)) {
+                list.add(PackedMove.of(from, from - 2,
+                            PackedMove.QUEEN_CASTLE));
+            }
+        }
+    }
+
+    private boolean canCastle(Side s, CastlingMove.CastlingType t) {
+        if (!hasCastlingRight(s, t)) {
+            return false;
+        }
+        int back = s.getBackRow();
+        int king = Bitboards.square(back, 4);
+        int rookSquare = Bitboards.square(back, t.getStartCol());
+        Piece rook = getPieceAt(back, t.getStartCol());
+        int step = t == CastlingMove.CastlingType.KING_SIDE ? 1 : -1;
+
+        if (!(rook instanceof Rook) || rook.getSide() != s
+                || (Bitboards.between(king, rookSquare) & occupied) != 0) {
+            return false;
+        }
+        // the king may not castle out of, through or into check
+        int[] enemyAttacks = attackCounts[opponent(s).ordinal()];
+        for (int sq = king; sq != king + 3 * step; sq += step) {
+            if (enemyAttacks[sq] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the squares of the pieces of side by that attack sq when the
+     * board is occupied by occ
+     */
+    private long attackersTo(int sq, Side by, long occ) {
+        long candidates = sideOccupied[by.ordinal()] & occ;
+        return (Bitboards.knightAttacks(sq) & candidates
+                & pieces(ChessPiece.ChessPieceType.KNIGHT))
+            | (Bitboards.pawnAttacks(opponent(by), sq) & candidates
+                    & pieces(ChessPiece.ChessPieceType.PAWN))
+            | (Bitboards.kingAttacks(sq) & candidates
+                    & pieces(ChessPiece.ChessPieceType.KING))
+            | (Bitboards.rookAttacks(sq, occ) & candidates
+                    & rookMovers())
+            | (Bitboards.bishopAttacks(sq, occ) & candidates
+                    & bishopMovers());
+    }
+
+    /**
+     * @return the pieces of side s that are the only piece between their
+     * king and an enemy slider moving along that line
+     */
+    private long pinnedPieces(Side s, int king) {
+        long enemy = sideOccupied[opponent(s).ordinal()];
+        long pinners = enemy
+            & ((Bitboards.rookAttacks(king, Bitboards.EMPTY) & rookMovers())
+                | (Bitboards.bishopAttacks(king, Bitboards.EMPTY)
+                    & bishopMovers()));
+        long pinned = Bitboards.EMPTY;
+
+        for (; pinners != 0; pinners &= pinners - 1) {
+            long blockers = Bitboards.between(king, Bitboards.first(pinners))
+                & occupied;
+            if (Bitboards.count(blockers) == 1
+                    && (blockers & sideOccupied[s.ordinal()]) != 0) {
+                pinned |= blockers;
+            }
+        }
+        return pinned;
+    }
+
+    private long pieces(ChessPiece.ChessPieceType t) {
+        return typeOccupied[t.ordinal()];
+    }
+
+    private long rookMovers() {
+        return pieces(ChessPiece.ChessPieceType.ROOK)
+            | pieces(ChessPiece.ChessPieceType.QUEEN);
+    }
+
+    private long bishopMovers() {
+        return pieces(ChessPiece.ChessPieceType.BISHOP)
+            | pieces(ChessPiece.ChessPieceType.QUEEN);
+    }
+
+    /**
+     * @return the squares a piece of type t and side s standing on sq
+     * attacks when the board is occupied by occ
+     */
+    private static long attacksFrom(PieceType t, Side s, int sq, long occ) {
+        switch ((ChessPiece.ChessPieceType) t) {
+        case PAWN:
+            return Bitboards.pawnAttacks(s, sq);
+        case KNIGHT:
+            return Bitboards.knightAttacks(sq);
+        case BISHOP:
+            return Bitboards.bishopAttacks(sq, occ);
+        case ROOK:
+            return Bitboards.rookAttacks(sq, occ);
+        case QUEEN:
+            return Bitboards.queenAttacks(sq, occ);
+        default:
+            return Bitboards.kingAttacks(sq);
+        }
+    }
+
+    private void addAttacks(Side s, long squares, int delta) {
+        int[] counts = attackCounts[s.ordinal()];
+        for (; squares != 0; squares &= squares - 1) {
+            counts[Bitboards.first(squares)] += delta;
+        }
+    }
+
+    /**
+     * Flips sq between empty and occupied and fixes the attacks of every
+     * slider whose ray runs through sq: filling it cuts off the squares
+     * behind it, emptying it opens them up again.
+     */
+    private void toggleOccupied(int sq) {
+        long sliders = (Bitboards.rookAttacks(sq, occupied) & rookMovers())
+            | (Bitboards.bishopAttacks(sq, occupied) & bishopMovers());
+        long before = occupied;
+        occupied ^= Bitboards.bit(sq);
+        int delta = (occupied & Bitboards.bit(sq)) != 0 ? -1 : 1;
+
+        for (; sliders != 0; sliders &= sliders - 1) {
+            int from = Bitboards.first(sliders);
+            Piece slider = getPieceAt(Bitboards.row(from),
+                    Bitboards.col(from));
+            long changed = attacksFrom(slider.getType(), slider.getSide(),
+                    from, before)
+                ^ attacksFrom(slider.getType(), slider.getSide(), from,
+                        occupied);
+            addAttacks(slider.getSide(), changed, delta);
+        }
+    }
+
+    private int kingSquare(Side s) {
+        Piece k = kings.get(s);
+        Position kingPosition = s == Side.BLACK ? blackPositions.get(k)
+            : whitePositions.get(k);
+        //throws NPE when king is killed
+        return Bitboards.square(kingPosition);
+    }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+
+    // castling rights, en passant and side to move part of the hash
+    private long stateKey() {
+        int ep = enPassantSquare;
+        if (ep != NO_SQUARE && (Bitboards.pawnAttacks(opponent(sideToMove),
+                        ep) & sideOccupied[sideToMove.ordinal()]
+                    & pieces(ChessPiece.ChessPieceType.PAWN)) == 0) {
+            // nobody can take en passant, so the position is the same
+            ep = NO_SQUARE;
+        }
+        return Zobrist.state(castlingRights, ep, sideToMove);
+    }
+
+    private void verifyHash() {
+        if (VERIFY_HASH && hash != computeHash()) {
+            throw new IllegalStateException("Incremental hash "
+                    + Long.toHexString(hash) + " differs from "
+                    + Long.toHexString(computeHash()));
+        }
+        if (VERIFY_HASH && pawnHash != computePawnHash()) {
+            throw new IllegalStateException("Incremental pawn hash "
+                    + Long.toHexString(pawnHash) + " differs from "
+                    + Long.toHexString(computePawnHash()));
+        }
+    }
+
     private void placePiece(Piece p, Position pos) {
         if (p.getSide().equals(Side.BLACK)) {
             blackPositions.put(p, pos);
@@ -369,6 +1295,23 @@ public class ChessBoard implements Board {
             whitePositions.put(p, pos);
         }
         board[pos.getRow()][pos.getCol()] = p;
+
+        int sq = Bitboards.square(pos);
+        hash ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+        if (p instanceof Pawn) {
+            pawnHash ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+        }
+        toggleOccupied(sq);
+        sideOccupied[p.getSide().ordinal()] |= Bitboards.bit(sq);
+        typeOccupied[((ChessPiece.ChessPieceType) p.getType()).ordinal()]
+            |= Bitboards.bit(sq);
+        addAttacks(p.getSide(),
+                attacksFrom(p.getType(), p.getSide(), sq, occupied), 1);
+        midgame[p.getSide().ordinal()] += PieceSquareTables.midgame(
+                p.getSide(), p.getType(), sq);
+        endgame[p.getSide().ordinal()] += PieceSquareTables.endgame(
+                p.getSide(), p.getType(), sq);
+        phase += PieceSquareTables.phase(p.getType());
     }
 
     private void removePiece(Piece p) {
@@ -381,19 +1324,96 @@ public class ChessBoard implements Board {
             whitePositions.remove(p);
         }
         board[pos.getRow()][pos.getCol()] = null;
+
+        int sq = Bitboards.square(pos);
+        hash ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+        if (p instanceof Pawn) {
+            pawnHash ^= Zobrist.piece(p.getSide(), p.getType(), sq);
+        }
+        addAttacks(p.getSide(),
+                attacksFrom(p.getType(), p.getSide(), sq, occupied), -1);
+        midgame[p.getSide().ordinal()] -= PieceSquareTables.midgame(
+                p.getSide(), p.getType(), sq);
+        endgame[p.getSide().ordinal()] -= PieceSquareTables.endgame(
+                p.getSide(), p.getType(), sq);
+        phase -= PieceSquareTables.phase(p.getType());
+        sideOccupied[p.getSide().ordinal()] &= ~Bitboards.bit(sq);
+        typeOccupied[((ChessPiece.ChessPieceType) p.getType()).ordinal()]
+            &= ~Bitboards.bit(sq);
+        toggleOccupied(sq);
     }
 
     private void validateCastling(Piece p, Move m) {
-        if (p instanceof King && m.getStart().getCol() == 4
-                && (m.getStart().getRow() == p.getSide().getBackRow())) {
-            kingsideCastlingRules.put(p.getSide(), false);
-            queensideCastlingRules.put(p.getSide(), false);
-        } else if (p instanceof Rook && m.getStart().getCol() == 0
-                && m.getStart().getRow() == p.getSide().getBackRow()) {
-            queensideCastlingRules.put(p.getSide(), false);
-        } else if (p instanceof Rook && m.getStart().getCol() == 7
-                && m.getStart().getRow() == p.getSide().getBackRow()) {
-            kingsideCastlingRules.put(p.getSide(), false);
+        castlingRights = CastlingMove.remainingRights(castlingRights,
+                Bitboards.square(m.getStart()),
+                Bitboards.square(m.getDestination()));
+    }
+
+    /**
+     * @return true if neither the king of s nor the rook on the t side has
+     * moved yet; whether s can castle right now is another matter
+     */
+    @Override
+    public boolean hasCastlingRight(Side s, CastlingMove.CastlingType t) {
+        return (castlingRights & t.getRight(s)) != 0;
+    }
+
+    // moves the rook that goes with a king landing on kingDest
+    private void moveCastlingRook(int kingDest, boolean undo) {
+        CastlingMove.CastlingType t = Bitboards.col(kingDest) == 6
+            ? CastlingMove.CastlingType.KING_SIDE
+            : CastlingMove.CastlingType.QUEEN_SIDE;
+        Position rookStart = Position.of(Bitboards.row(kingDest),
+                t.getStartCol());
+        Position rookDest = Position.of(Bitboards.row(kingDest),
+                t.getDestCol());
+        Piece rook = getPieceAt(undo ? rookDest : rookStart);
+        removePiece(rook);
+        placePiece(rook, undo ? rookStart : rookDest);
+    }
+
+    private boolean isEnPassant(Piece p, Move m) {
+        return p instanceof Pawn
+            && enPassantSquare == Bitboards.square(m.getDestination())
+            && m.getStart().getCol() != m.getDestination().getCol();
+    }
+
+    private void updateEnPassant(Piece p, Move m) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+        enPassantSquare = p instanceof Pawn && Math.abs(to - from) == 16
+            ? (from + to) / 2 : NO_SQUARE;
+    }
+
+    private Undo pushHistory() {
+        if (historySize == history.length) {
+            Undo[] bigger = newHistory(history.length * 2);
+            System.arraycopy(history, 0, bigger, 0, historySize);
+            history = bigger;
+        }
+        return history[historySize++];
+    }
+
+    private static Undo[] newHistory(int size) {
+        Undo[] undos = new Undo[size];
+        for (int i = 0; i < size; i++) {
+            undos[i] = new Undo();
         }
+        return undos;
+    }
+
+    /**
+     * Everything makeMove changes that cannot be worked out from the move
+     */
+    private static class Undo {
+        private int move;
+        private Piece mover;
+        private Piece captured;
+        private int capturedAt;
+        private Piece promoted;
+        private int castlingRights;
+        private int enPassantSquare;
+        private Side sideToMove;
+        private long hash;
     }
 }
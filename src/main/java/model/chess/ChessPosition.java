@@ -0,0 +1,32 @@
+package model.chess;
+
+import model.Board;
+import model.Side;
+
+/**
+ * A chess Board that also knows the parts of a position the pieces alone
+ * do not show: whose turn it is, who may still castle, and where an en
+ * passant capture can land. Copies made with ChessBoard(Board, Side) take
+ * these from the board instead of guessing them.
+ *
+ * @author Joe
+ */
+public interface ChessPosition extends Board {
+
+    /**
+     * @return the side whose turn it is
+     */
+    Side getSideToMove();
+
+    /**
+     * @return true if neither the king of s nor the rook on the t side has
+     * moved yet; whether s can castle right now is another matter
+     */
+    boolean hasCastlingRight(Side s, CastlingMove.CastlingType t);
+
+    /**
+     * @return the square the pawn that just moved two rows skipped, or -1
+     * if the last move was anything else
+     */
+    int getEnPassantSquare();
+}
@@ -24,7 +24,7 @@ public class King  extends ChessPiece {
                     int destCol = curCol + dx;
                     int destRow = curRow + dy;
                     if (ChessUtils.posBoundsTest(destRow, destCol)) {
-                        Position destPos = new Position(destRow, destCol);
+                        Position destPos = Position.of(destRow, destCol);
                         moves.add(new Move(curPos, destPos));
                     }
                 }
@@ -24,7 +24,7 @@ public class Knight extends ChessPiece {
                     int destCol = curCol + x;
                     int destRow = curRow + y;
                     if (ChessUtils.posBoundsTest(destRow, destCol)) {
-                        Position destPos = new Position(destRow, destCol);
+                        Position destPos = Position.of(destRow, destCol);
                         moves.add(new Move(curPos, destPos, true));
                     }
                 }
@@ -0,0 +1,53 @@
+package model.chess;
+
+/**
+ * A reusable list of PackedMove ints. Clearing it keeps the backing array,
+ * so a search can give every ply its own list and never allocate again.
+ *
+ * @author Joe
+ */
+public final class MoveList {
+
+    // no legal chess position has more moves than this
+    public static final int MAX_MOVES = 256;
+
+    private final int[] moves;
+    private int size;
+
+    public MoveList() {
+        moves = new int[MAX_MOVES];
+    }
+
+    public void add(int move) {
+        moves[size++] = move;
+    }
+
+    public int get(int i) {
+        return moves[i];
+    }
+
+    public void set(int i, int move) {
+        moves[i] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package model.chess;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.SideHasNoMovesException;
+
+/**
+ * Counts the legal move tree the way the game is played: moves come from
+ * generateAllMovesForSide and are applied with movePiece, the rook half of
+ * castling and the promoted piece being put down afterwards as
+ * ChessController does. This covers the Move path of any Board, where
+ * Perft covers the packed moves of ChessBoard.
+ *
+ * Boards cannot take a move back through the Move API, so every move is
+ * played on a copy. That is slow, and meant for shallow depths.
+ *
+ * @author Joe
+ */
+public final class MovePerft {
+
+    // the pieces a pawn may become, with their letters in move notation
+    private static final ChessPiece.ChessPieceType[] PROMOTIONS = {
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.KNIGHT
+    };
+    private static final String PROMOTION_LETTERS = "qrbn";
+
+    private final Board board;
+    private final Side toMove;
+    private final UnaryOperator<Board> copier;
+
+    /**
+     * @param board the position to count from, which is not changed
+     * @param toMove the side whose turn it is on board
+     * @param copier makes a copy of a board that can be played on
+     */
+    public MovePerft(Board board, Side toMove, UnaryOperator<Board> copier) {
+        this.board = board;
+        this.toMove = toMove;
+        this.copier = copier;
+    }
+
+    /**
+     * @return the number of legal move sequences of length depth
+     */
+    public long perft(int depth) {
+        return perft(board, toMove, depth);
+    }
+
+    /**
+     * @return the perft count below each legal move, keyed by the move in
+     * coordinate notation, a promotion once for each piece
+     */
+    public Map<String, Long> divide(int depth) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<Piece, Set<Move>> e : moves(board, toMove).entrySet()) {
+            for (Move m : e.getValue()) {
+                String name = name(m);
+                if (!(m instanceof PromotionMove)) {
+                    counts.put(name, count(play(board, e.getKey(), m, null),
+                                toMove, depth));
+                    continue;
+                }
+                for (int i = 0; i < PROMOTIONS.length; i++) {
+                    counts.put(name + PROMOTION_LETTERS.charAt(i),
+                            count(play(board, e.getKey(), m, PROMOTIONS[i]),
+                                toMove, depth));
+                }
+            }
+        }
+        return counts;
+    }
+
+    private long perft(Board b, Side s, int depth) {
+        long nodes = 0;
+        for (Map.Entry<Piece, Set<Move>> e : moves(b, s).entrySet()) {
+            for (Move m : e.getValue()) {
+                if (!(m instanceof PromotionMove)) {
+                    nodes += count(depth == 1 ? null
+                            : play(b, e.getKey(), m, null), s, depth);
+                    continue;
+                }
+                for (ChessPiece.ChessPieceType t : PROMOTIONS) {
+                    nodes += count(depth == 1 ? null
+                            : play(b, e.getKey(), m, t), s, depth);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    // the nodes below a move of s, the last ply needing no board
+    private long count(Board after, Side s, int depth) {
+        return depth == 1 ? 1 : perft(after, opponent(s), depth - 1);
+    }
+
+    private static Map<Piece, Set<Move>> moves(Board b, Side s) {
+        try {
+            return b.generateAllMovesForSide(s);
+        } catch (SideHasNoMovesException e) {
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * @param promotion the piece a promoting pawn becomes, or null
+     * @return a copy of b with p's move m played on it
+     */
+    private Board play(Board b, Piece p, Move m,
+            ChessPiece.ChessPieceType promotion) {
+        Board after = copier.apply(b);
+        after.movePiece(p, m);
+
+        if (m instanceof CastlingMove) {
+            CastlingMove.CastlingType t = ((CastlingMove) m).getCastlingType();
+            int back = p.getSide().getBackRow();
+            Position start = Position.of(back, t.getStartCol());
+            after.movePiece(after.getPieceAt(start),
+                    new Move(start, Position.of(back, t.getDestCol())));
+        }
+        if (promotion != null) {
+            after.replacePieceAt(m.getDestination(),
+                    ChessUtils.getPieceOfType(promotion, p.getSide()));
+        }
+        return after;
+    }
+
+    private static String name(Move m) {
+        return PackedMove.squareName(Bitboards.square(m.getStart()))
+            + PackedMove.squareName(Bitboards.square(m.getDestination()));
+    }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+}
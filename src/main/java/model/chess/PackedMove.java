@@ -0,0 +1,119 @@
+package model.chess;
+
+/**
+ * Moves packed into a single int so that they can be generated and stored
+ * without allocating. Bits 0-5 hold the start square, bits 6-11 the
+ * destination square and bits 12-15 the flags below. Squares are numbered
+ * like Bitboards, row * 8 + col.
+ *
+ * A move says nothing about the piece that makes it; use
+ * ChessBoard.toMove to turn one back into a Move for a given position.
+ *
+ * @author Joe
+ */
+public final class PackedMove {
+
+    /** Not a move, since no piece moves from a square onto itself. */
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int KING_CASTLE = 2;
+    public static final int QUEEN_CASTLE = 3;
+    public static final int CAPTURE = 4;
+    public static final int EN_PASSANT = 5;
+
+    // promotions set this bit and keep the piece in the two lowest flag
+    // bits, the capture bit still marks a capture
+    public static final int PROMOTION = 8;
+
+    private static final ChessPiece.ChessPieceType[] PROMOTION_TYPES = {
+        ChessPiece.ChessPieceType.KNIGHT,
+        ChessPiece.ChessPieceType.BISHOP,
+        ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.QUEEN
+    };
+
+    private PackedMove() {
+    }
+
+    public static int of(int from, int to, int flags) {
+        return from | to << 6 | flags << 12;
+    }
+
+    /**
+     * @param t the piece a pawn promotes to, one of knight, bishop, rook
+     * or queen
+     */
+    public static int promotion(int from, int to,
+            ChessPiece.ChessPieceType t, boolean capture) {
+        int flags = PROMOTION | promotionIndex(t) | (capture ? CAPTURE : 0);
+        return of(from, to, flags);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return move >>> 6 & 63;
+    }
+
+    public static int flags(int move) {
+        return move >>> 12 & 15;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return flags(move) == EN_PASSANT;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return flags(move) == DOUBLE_PUSH;
+    }
+
+    public static boolean isCastling(int move) {
+        int flags = flags(move);
+        return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (flags(move) & PROMOTION) != 0;
+    }
+
+    /**
+     * @return the piece a promotion move promotes to, null for any other
+     * move
+     */
+    public static ChessPiece.ChessPieceType promotionType(int move) {
+        return isPromotion(move) ? PROMOTION_TYPES[flags(move) & 3] : null;
+    }
+
+    /**
+     * @return the move in coordinate notation, for example e2e4 or e7e8q
+     */
+    public static String toString(int move) {
+        String s = squareName(from(move)) + squareName(to(move));
+        if (isPromotion(move)) {
+            s += "nbrq".charAt(flags(move) & 3);
+        }
+        return s;
+    }
+
+    static String squareName(int sq) {
+        return "" + (char) ('a' + Bitboards.col(sq))
+            + (char) ('8' - Bitboards.row(sq));
+    }
+
+    private static int promotionIndex(ChessPiece.ChessPieceType t) {
+        for (int i = 0; i < PROMOTION_TYPES.length; i++) {
+            if (PROMOTION_TYPES[i] == t) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Cannot promote to " + t);
+    }
+}
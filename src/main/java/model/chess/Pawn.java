@@ -35,30 +35,40 @@ public class Pawn  extends ChessPiece {
             int destRow = curRow + dy;
             if (ChessUtils.posBoundsTest(destRow, destCol)) {
                 boolean mustCapture = destCol != curCol;
-                boolean cannotCapture = destCol == curCol;
-                Move moveToAdd;
-                if (destRow == 0 || destRow == 7) {
-                    moveToAdd = new PromotionMove(curPos,
-                            new Position(destRow, destCol), false,
-                            cannotCapture, mustCapture);
-                } else if (mustCapture) {
-                    moveToAdd = new PawnCaptureMove(curPos,
-                            new Position(destRow, destCol), false,
-                            cannotCapture, mustCapture);
-                } else {
-                    moveToAdd = new Move(curPos, new Position(destRow, destCol),
-                            false, cannotCapture, mustCapture);
-                }
+                Move moveToAdd = createMove(curPos,
+                        Position.of(destRow, destCol), mustCapture);
                 moves.add(moveToAdd);
             }
         }
 
         if (curRow == initialRow) {
-            moves.add(new Move(curPos, new Position(curRow + dy * 2, curCol),
+            moves.add(new Move(curPos, Position.of(curRow + dy * 2, curCol),
                         false, true, false));
         }
 
         return moves;
     }
 
+    /**
+     * Creates a single step pawn move of the right kind: a promotion if it
+     * reaches the last row, a capture if it changes column.
+     *
+     * @param curPos the start position of the pawn
+     * @param destPos the position the pawn moves to
+     * @param mustCapture whether the pawn moves diagonally
+     * @return the move
+     */
+    static Move createMove(Position curPos, Position destPos,
+            boolean mustCapture) {
+        boolean cannotCapture = !mustCapture;
+        int destRow = destPos.getRow();
+        if (destRow == 0 || destRow == 7) {
+            return new PromotionMove(curPos, destPos, false, cannotCapture,
+                    mustCapture);
+        } else if (mustCapture) {
+            return new PawnCaptureMove(curPos, destPos, false, cannotCapture,
+                    mustCapture);
+        }
+        return new Move(curPos, destPos, false, cannotCapture, mustCapture);
+    }
 }
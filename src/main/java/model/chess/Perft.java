@@ -0,0 +1,108 @@
+package model.chess;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import model.Side;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. The counts
+ * for well known positions are published, so any difference points at a
+ * move generation bug, and the time taken measures generator speed.
+ *
+ * Usage: Perft depth [fen]
+ *
+ * @author Joe
+ */
+public final class Perft {
+
+    public static final String INITIAL_FEN =
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private final ChessBoard board;
+    private final MoveList[] lists;
+
+    /**
+     * @param board the position to count from; it is played on and left as
+     * it was found
+     * @param maxDepth the deepest search this instance will run
+     */
+    public Perft(ChessBoard board, int maxDepth) {
+        this.board = board;
+        lists = new MoveList[maxDepth + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * @return the number of legal move sequences of length depth
+     */
+    public long perft(int depth) {
+        return perft(board.getSideToMove(), depth);
+    }
+
+    /**
+     * @return the perft count below each legal move, keyed by the move in
+     * coordinate notation, in generation order
+     */
+    public Map<String, Long> divide(int depth) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Side s = board.getSideToMove();
+        MoveList list = lists[depth];
+        board.generateLegalMoves(s, list);
+        for (int i = 0; i < list.size(); i++) {
+            int move = list.get(i);
+            board.makeMove(move);
+            counts.put(PackedMove.toString(move),
+                    depth == 1 ? 1 : perft(opponent(s), depth - 1));
+            board.unmakeMove();
+        }
+        return counts;
+    }
+
+    private long perft(Side s, int depth) {
+        MoveList list = lists[depth];
+        board.generateLegalMoves(s, list);
+        if (depth == 1) {
+            // counting the last ply needs no make and unmake
+            return list.size();
+        }
+        long nodes = 0;
+        for (int i = 0; i < list.size(); i++) {
+            board.makeMove(list.get(i));
+            nodes += perft(opponent(s), depth - 1);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: Perft depth [fen]");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        String fen = args.length > 1 ? String.join(" ",
+                Arrays.copyOfRange(args, 1, args.length))
+            : INITIAL_FEN;
+        Perft perft = new Perft(new ChessBoard(fen), depth);
+
+        long start = System.nanoTime();
+        long total = 0;
+        for (Map.Entry<String, Long> e : perft.divide(depth).entrySet()) {
+            System.out.println(e.getKey() + ": " + e.getValue());
+            total += e.getValue();
+        }
+        long nanos = Math.max(1, System.nanoTime() - start);
+
+        System.out.println();
+        System.out.println("Nodes: " + total);
+        System.out.println("Time: " + nanos / 1000000 + " ms");
+        System.out.println("NPS: " + total * 1000000000L / nanos);
+    }
+}
@@ -0,0 +1,167 @@
+package model.chess;
+
+import model.PieceType;
+import model.Side;
+
+/**
+ * What a piece is worth on each square, once for the middlegame and once
+ * for the endgame, material included. ChessBoard keeps the sums up to date
+ * as pieces come and go, and an evaluation blends the two by the game
+ * phase, which falls from MAX_PHASE towards 0 as pieces are traded.
+ *
+ * The tables are written from White's side with Black's back row first,
+ * the same order as the squares, and are mirrored for Black.
+ *
+ * @author Joe
+ */
+public final class PieceSquareTables {
+
+    /** The phase of a game with every piece still on the board. */
+    public static final int MAX_PHASE = 24;
+
+    // indexed by ChessPieceType ordinal: pawn, rook, knight, bishop, queen,
+    // king
+    private static final int[] MIDGAME_VALUES = {82, 477, 337, 365, 1025, 0};
+    private static final int[] ENDGAME_VALUES = {94, 512, 281, 297, 936, 0};
+    private static final int[] PHASE_WEIGHTS = {0, 2, 1, 1, 4, 0};
+
+    private static final int[] PAWN = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         50,  50,  50,  50,  50,  50,  50,  50,
+         10,  10,  20,  30,  30,  20,  10,  10,
+          5,   5,  10,  25,  25,  10,   5,   5,
+          0,   0,   0,  20,  20,   0,   0,   0,
+          5,  -5, -10,   0,   0, -10,  -5,   5,
+          5,  10,  10, -20, -20,  10,  10,   5,
+          0,   0,   0,   0,   0,   0,   0,   0
+    };
+
+    // passed or not, a pawn near promotion matters most once pieces are off
+    private static final int[] PAWN_ENDGAME = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+         90,  90,  90,  90,  90,  90,  90,  90,
+         55,  55,  55,  55,  55,  55,  55,  55,
+         30,  30,  30,  30,  30,  30,  30,  30,
+         15,  15,  15,  15,  15,  15,  15,  15,
+          5,   5,   5,   5,   5,   5,   5,   5,
+          0,   0,   0,   0,   0,   0,   0,   0,
+          0,   0,   0,   0,   0,   0,   0,   0
+    };
+
+    private static final int[] KNIGHT = {
+        -50, -40, -30, -30, -30, -30, -40, -50,
+        -40, -20,   0,   0,   0,   0, -20, -40,
+        -30,   0,  10,  15,  15,  10,   0, -30,
+        -30,   5,  15,  20,  20,  15,   5, -30,
+        -30,   0,  15,  20,  20,  15,   0, -30,
+        -30,   5,  10,  15,  15,  10,   5, -30,
+        -40, -20,   0,   5,   5,   0, -20, -40,
+        -50, -40, -30, -30, -30, -30, -40, -50
+    };
+
+    private static final int[] BISHOP = {
+        -20, -10, -10, -10, -10, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,  10,  10,   5,   0, -10,
+        -10,   5,   5,  10,  10,   5,   5, -10,
+        -10,   0,  10,  10,  10,  10,   0, -10,
+        -10,  10,  10,  10,  10,  10,  10, -10,
+        -10,   5,   0,   0,   0,   0,   5, -10,
+        -20, -10, -10, -10, -10, -10, -10, -20
+    };
+
+    private static final int[] ROOK = {
+          0,   0,   0,   0,   0,   0,   0,   0,
+          5,  10,  10,  10,  10,  10,  10,   5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+         -5,   0,   0,   0,   0,   0,   0,  -5,
+          0,   0,   0,   5,   5,   0,   0,   0
+    };
+
+    private static final int[] QUEEN = {
+        -20, -10, -10,  -5,  -5, -10, -10, -20,
+        -10,   0,   0,   0,   0,   0,   0, -10,
+        -10,   0,   5,   5,   5,   5,   0, -10,
+         -5,   0,   5,   5,   5,   5,   0,  -5,
+          0,   0,   5,   5,   5,   5,   0,  -5,
+        -10,   5,   5,   5,   5,   5,   0, -10,
+        -10,   0,   5,   0,   0,   0,   0, -10,
+        -20, -10, -10,  -5,  -5, -10, -10, -20
+    };
+
+    // behind the pawns while the queens are on
+    private static final int[] KING = {
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -20, -30, -30, -40, -40, -30, -30, -20,
+        -10, -20, -20, -20, -20, -20, -20, -10,
+         20,  20,   0,   0,   0,   0,  20,  20,
+         20,  30,  10,   0,   0,  10,  30,  20
+    };
+
+    // in the centre once it is safe there
+    private static final int[] KING_ENDGAME = {
+        -50, -40, -30, -20, -20, -30, -40, -50,
+        -30, -20, -10,   0,   0, -10, -20, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  30,  40,  40,  30, -10, -30,
+        -30, -10,  20,  30,  30,  20, -10, -30,
+        -30, -30,   0,   0,   0,   0, -30, -30,
+        -50, -30, -30, -30, -30, -30, -30, -50
+    };
+
+    private static final int[][] MIDGAME_TABLES = {
+        PAWN, ROOK, KNIGHT, BISHOP, QUEEN, KING
+    };
+    private static final int[][] ENDGAME_TABLES = {
+        PAWN_ENDGAME, ROOK, KNIGHT, BISHOP, QUEEN, KING_ENDGAME
+    };
+
+    // [side][type][square], material included
+    private static final int[][][] MIDGAME = build(MIDGAME_TABLES,
+            MIDGAME_VALUES);
+    private static final int[][][] ENDGAME = build(ENDGAME_TABLES,
+            ENDGAME_VALUES);
+
+    private PieceSquareTables() {
+    }
+
+    public static int midgame(Side s, PieceType t, int sq) {
+        return MIDGAME[s.ordinal()][ordinal(t)][sq];
+    }
+
+    public static int endgame(Side s, PieceType t, int sq) {
+        return ENDGAME[s.ordinal()][ordinal(t)][sq];
+    }
+
+    /**
+     * @return how much the piece counts towards the game phase
+     */
+    public static int phase(PieceType t) {
+        return PHASE_WEIGHTS[ordinal(t)];
+    }
+
+    private static int ordinal(PieceType t) {
+        return ((ChessPiece.ChessPieceType) t).ordinal();
+    }
+
+    private static int[][][] build(int[][] tables, int[] values) {
+        int[][][] scores = new int[2][tables.length][64];
+        for (int t = 0; t < tables.length; t++) {
+            for (int sq = 0; sq < 64; sq++) {
+                scores[Side.WHITE.ordinal()][t][sq] = values[t]
+                    + tables[t][sq];
+                // the same square seen from the other end of the board
+                scores[Side.BLACK.ordinal()][t][sq] = values[t]
+                    + tables[t][sq ^ 56];
+            }
+        }
+        return scores;
+    }
+}
@@ -32,6 +32,6 @@ public class PromotionMove extends Move {
 
     @Override
     public String toString() {
-        return "PROMO:" + promotingTo.toString() + ":" + super.toString();
+        return "PROMO:" + promotingTo + ":" + super.toString();
     }
 }
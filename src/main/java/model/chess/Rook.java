@@ -24,23 +24,12 @@ public class Rook  extends ChessPiece {
     @Override
     public Set<Move> generateMoves(Position curPos) {
         Set<Move> moves = new HashSet<Move>();
-        int curCol = curPos.getCol();
-        int curRow = curPos.getRow();
+        long targets = Bitboards.rookAttacks(Bitboards.square(curPos),
+                Bitboards.EMPTY);
 
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                if (Math.abs(dx) != Math.abs(dy)) {
-                    int destCol = curCol + dx;
-                    int destRow = curRow + dy;
-                    while (ChessUtils.posBoundsTest(destRow, destCol)) {
-                        Position destPos = new Position(destRow, destCol);
-                        moves.add(new Move(curPos, destPos));
-
-                        destCol = destCol + dx;
-                        destRow = destRow + dy;
-                    }
-                }
-            }
+        for (; targets != 0; targets &= targets - 1) {
+            Position destPos = Bitboards.position(Bitboards.first(targets));
+            moves.add(new Move(curPos, destPos));
         }
         return moves;
     }
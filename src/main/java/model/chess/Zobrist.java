@@ -0,0 +1,78 @@
+package model.chess;
+
+import model.PieceType;
+import model.Side;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of one key
+ * per piece on its square, one for the castling rights, one for the column
+ * of a capturable en passant square and one if black is to move, so a move
+ * updates it by XORing out what changed and XORing in the new state.
+ *
+ * The keys come from a fixed seed, so the same position hashes the same way
+ * in every run.
+ *
+ * @author Joe
+ */
+final class Zobrist {
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    private static final long[][] PIECES = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        long state = SEED;
+        for (long[] squares : PIECES) {
+            for (int sq = 0; sq < squares.length; sq++) {
+                state += 0x9E3779B97F4A7C15L;
+                squares[sq] = mix(state);
+            }
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            CASTLING[i] = mix(state);
+        }
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            EN_PASSANT[i] = mix(state);
+        }
+        state += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE = mix(state);
+    }
+
+    private Zobrist() {
+    }
+
+    static long piece(Side s, PieceType t, int sq) {
+        return PIECES[s.ordinal() * 6
+            + ((ChessPiece.ChessPieceType) t).ordinal()][sq];
+    }
+
+    /**
+     * @param castlingRights the castling rights as a CastlingMove mask
+     * @param enPassantSquare the square a pawn just skipped if a pawn of
+     * toMove can capture on it, otherwise a negative number
+     * @param toMove the side to move
+     * @return the key of everything but the pieces
+     */
+    static long state(int castlingRights, int enPassantSquare, Side toMove) {
+        long key = CASTLING[castlingRights];
+        if (enPassantSquare >= 0) {
+            key ^= EN_PASSANT[Bitboards.col(enPassantSquare)];
+        }
+        if (toMove == Side.BLACK) {
+            key ^= BLACK_TO_MOVE;
+        }
+        return key;
+    }
+
+    // splitmix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
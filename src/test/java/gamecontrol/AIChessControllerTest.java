@@ -0,0 +1,186 @@
+package gamecontrol;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import gamecontrol.ai.AIChessEngine;
+import model.IllegalMoveException;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.PromotionMove;
+
+public class AIChessControllerTest extends TestCase {
+
+    // the tests only look at the board once the computer's move is made
+    private static final Executor ON_ENGINE_THREAD = Runnable::run;
+
+    @Test
+    public void testComputerMovesWithoutHoldingUpTheHuman() throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        AIChessEngine slow = (moves, board) -> {
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // b8c6, always legal after e2e4
+            return new Move(Position.of(0, 1), Position.of(2, 2));
+        };
+        AIChessController controller = new AIChessController(Side.WHITE,
+                slow, ON_ENGINE_THREAD);
+        CountDownLatch moved = new CountDownLatch(1);
+        controller.addCurrentSideListener(s -> {
+            if (s == Side.WHITE) {
+                moved.countDown();
+            }
+        });
+        controller.startGame();
+
+        humanMove(controller, Position.of(6, 4), Position.of(4, 4));
+        assertTrue(controller.isThinking());
+        assertEquals(Side.BLACK, controller.getCurrentSide());
+        // nothing can be moved for the computer meanwhile
+        assertTrue(controller.getMovesForPieceAt(Position.of(1, 4))
+                .isEmpty());
+        try {
+            controller.makeMove(new Move(Position.of(1, 4),
+                        Position.of(3, 4)));
+            fail();
+        } catch (IllegalMoveException expected) {
+        }
+
+        go.countDown();
+        assertTrue(moved.await(5, TimeUnit.SECONDS));
+        assertFalse(controller.isThinking());
+        assertEquals(Side.WHITE, controller.getCurrentSide());
+        assertNull(controller.getBoard().getPieceAt(Position.of(0, 1)));
+    }
+
+    @Test
+    public void testIllegalComputerMoveIsReplaced() throws Exception {
+        // a1a8 is never legal at the start
+        AIChessEngine broken = (moves, board) -> new Move(Position.of(7, 0),
+                Position.of(0, 0));
+        AIChessController controller = new AIChessController(Side.WHITE,
+                broken, ON_ENGINE_THREAD);
+        CountDownLatch moved = new CountDownLatch(1);
+        controller.addCurrentSideListener(s -> {
+            if (s == Side.WHITE) {
+                moved.countDown();
+            }
+        });
+        controller.startGame();
+
+        humanMove(controller, Position.of(6, 4), Position.of(4, 4));
+        assertTrue(moved.await(5, TimeUnit.SECONDS));
+        // both rooks are where they were
+        assertNotNull(controller.getBoard().getPieceAt(Position.of(7, 0)));
+        assertNotNull(controller.getBoard().getPieceAt(Position.of(0, 0)));
+    }
+
+    @Test
+    public void testEngineFailureIsReportedAndNoMoveIsMade()
+        throws Exception {
+        IllegalStateException failure = new IllegalStateException("broken");
+        AIChessEngine broken = (moves, board) -> {
+            throw failure;
+        };
+        AIChessController controller = new AIChessController(Side.WHITE,
+                broken, ON_ENGINE_THREAD);
+        CountDownLatch reported = new CountDownLatch(1);
+        controller.addEngineErrorListener(e -> {
+            assertSame(failure, e);
+            reported.countDown();
+        });
+        controller.startGame();
+
+        humanMove(controller, Position.of(6, 4), Position.of(4, 4));
+        assertTrue(reported.await(5, TimeUnit.SECONDS));
+        assertSame(failure, controller.getEngineError());
+        assertFalse(controller.isThinking());
+        // still the computer's turn, with none of its pieces moved
+        assertEquals(Side.BLACK, controller.getCurrentSide());
+        for (int col = 0; col < 8; col++) {
+            assertNotNull(controller.getBoard().getPieceAt(
+                        Position.of(0, col)));
+            assertNotNull(controller.getBoard().getPieceAt(
+                        Position.of(1, col)));
+        }
+    }
+
+    @Test
+    public void testMovesNeedAnExecutor() {
+        try {
+            new AIChessController(Side.WHITE, (moves, board) -> null, null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void testCloseAbandonsTheMove() throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        AIChessEngine slow = (moves, board) -> {
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        };
+        AIChessController controller = new AIChessController(Side.WHITE,
+                slow, ON_ENGINE_THREAD);
+        controller.startGame();
+        humanMove(controller, Position.of(6, 4), Position.of(4, 4));
+
+        controller.close();
+        go.countDown();
+        Thread.sleep(100);
+        assertFalse(controller.isThinking());
+        assertEquals(Side.BLACK, controller.getCurrentSide());
+    }
+
+    @Test
+    public void testComputerPromotesToThePieceItChose() throws Exception {
+        // b2b1 making a knight, played by black after the human's Kf1
+        AIChessEngine promoter = (moves, board) -> new PromotionMove(
+                Position.of(6, 1), Position.of(7, 1),
+                ChessPiece.ChessPieceType.KNIGHT);
+        AIChessController controller = new AIChessController(Side.WHITE,
+                promoter, () -> new ChessBoard("4k3/8/8/8/8/8/1p6/4K3 w - -"),
+                ON_ENGINE_THREAD);
+        controller.setPromotionListener(() -> {
+            fail("the human was asked for the computer's piece");
+            return null;
+        });
+        CountDownLatch moved = new CountDownLatch(1);
+        controller.addCurrentSideListener(s -> {
+            if (s == Side.WHITE) {
+                moved.countDown();
+            }
+        });
+        controller.startGame();
+
+        humanMove(controller, Position.of(7, 4), Position.of(7, 5));
+        assertTrue(moved.await(5, TimeUnit.SECONDS));
+        Piece promoted = controller.getBoard().getPieceAt(Position.of(7, 1));
+        assertEquals(ChessPiece.ChessPieceType.KNIGHT, promoted.getType());
+        assertEquals(Side.BLACK, promoted.getSide());
+    }
+
+    private static void humanMove(AIChessController controller,
+            Position start, Position dest) throws IllegalMoveException {
+        controller.makeMove(new Move(start, dest));
+        controller.endTurn();
+        controller.beginTurn();
+    }
+}
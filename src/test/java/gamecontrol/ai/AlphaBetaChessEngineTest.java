@@ -0,0 +1,239 @@
+package gamecontrol.ai;
+
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.BitboardChessBoard;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+public class AlphaBetaChessEngineTest extends TestCase {
+
+    @Test
+    public void testFindsBackRankMate() throws Exception {
+        ChessBoard board = new ChessBoard("6k1/5ppp/8/8/8/8/8/R5K1 w - -");
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(3);
+
+        Move m = engine.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board);
+
+        assertEquals(Position.of(7, 0), m.getStart());
+        assertEquals(Position.of(0, 0), m.getDestination());
+        assertTrue(engine.getLastResult().getScore() > Searcher.MATE - 10);
+    }
+
+    @Test
+    public void testTakesHangingQueen() throws Exception {
+        ChessBoard board = new ChessBoard(
+                "rnb1kbnr/pppp1ppp/8/4p3/4P2q/5N2/PPPP1PPP/RNBQKB1R w KQkq -");
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(2);
+
+        Move m = engine.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board);
+
+        assertEquals(Position.of(5, 5), m.getStart());
+        assertEquals(Position.of(4, 7), m.getDestination());
+    }
+
+    @Test
+    public void testSeesTheRecapture() throws Exception {
+        // at depth 1 Qxd5 looks like a free pawn until cxd5 is searched
+        ChessBoard board = new ChessBoard("4k3/8/2p5/3p4/8/8/8/3QK3 w - -");
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(1);
+
+        Move m = engine.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board);
+
+        assertFalse(m.getDestination().equals(Position.of(3, 3)));
+        // still about a queen against two pawns
+        assertTrue(engine.getLastResult().getScore() > 500);
+    }
+
+    @Test
+    public void testSelectivitySearchesFewerNodes() throws Exception {
+        AlphaBetaChessEngine full = new AlphaBetaChessEngine(5);
+        full.setOptions(SearchOptions.none());
+        AlphaBetaChessEngine selective = new AlphaBetaChessEngine(5);
+
+        ChessBoard board = new ChessBoard(
+                "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1"
+                + " w - -");
+        assertTrue(selective.search(board, Side.WHITE, 5).getNodes()
+                < full.search(board, Side.WHITE, 5).getNodes());
+
+        // the mate is still found
+        board = new ChessBoard("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - -");
+        assertEquals("a1a8", selective.search(board, Side.WHITE, 5)
+                .getNotation());
+    }
+
+    @Test
+    public void testTimedSearchKeepsToBudget() {
+        ChessBoard board = new ChessBoard(
+                "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1"
+                + " w - -");
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(
+                SearchLimits.moveTime(200));
+
+        long start = System.currentTimeMillis();
+        SearchResult result = engine.search(board, Side.WHITE,
+                engine.getLimits());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertNotNull(result.getMove());
+        assertTrue(result.getDepth() >= 2);
+        // one clock check interval late at most, plus a loaded test machine
+        assertTrue("took " + elapsed + " ms", elapsed < 600);
+    }
+
+    @Test
+    public void testClockBudgetIsAShare() {
+        SearchLimits limits = SearchLimits.clock(60000, 1000);
+        assertTrue(limits.isTimed());
+        assertTrue(limits.getMoveTimeMillis() < 60000 / 10);
+        assertTrue(SearchLimits.clock(100, 0).getMoveTimeMillis() > 0);
+    }
+
+    @Test
+    public void testLeavesBoardAlone() throws Exception {
+        ChessBoard board = new ChessBoard();
+        String fen = board.toFen();
+        long hash = board.hash();
+        Map<Piece, Set<Move>> moves = board.generateAllMovesForSide(
+                Side.WHITE);
+
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(3);
+        assertNotNull(engine.chooseNextMove(moves, board));
+        assertEquals(fen, board.toFen());
+        assertEquals(hash, board.hash());
+        assertTrue(engine.getLastResult().getNodes() > 0);
+
+        // any other Board is searched through a ChessBoard copy
+        BitboardChessBoard other = new BitboardChessBoard();
+        assertNotNull(engine.chooseNextMove(
+                    other.generateAllMovesForSide(Side.WHITE), other));
+    }
+
+    @Test
+    public void testHelperThreadsShareTheSearch() throws Exception {
+        ChessBoard board = new ChessBoard(
+                "rnb1kbnr/pppp1ppp/8/4p3/4P2q/5N2/PPPP1PPP/RNBQKB1R w KQkq -");
+        String fen = board.toFen();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(
+                SearchLimits.depth(4),
+                AlphaBetaChessEngine.DEFAULT_HASH_MEGABYTES, 3);
+
+        for (int i = 0; i < 2; i++) {
+            Move m = engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board);
+            assertEquals(Position.of(5, 5), m.getStart());
+            assertEquals(Position.of(4, 7), m.getDestination());
+            assertEquals(fen, board.toFen());
+        }
+    }
+
+    @Test
+    public void testPonderHitCarriesOnWithTheSearch() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(4);
+        board.makeMove(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        engine.ponder(board, Side.BLACK);
+        int reply = engine.getPondering().getReply();
+        assertFalse(reply == PackedMove.NONE);
+        Thread.sleep(50);
+        board.makeMove(reply);
+        assertNotNull(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        assertEquals(1, engine.getPonderHits());
+        assertEquals(0, engine.getPonderMisses());
+        assertEquals(1.0, engine.getPonderHitRate());
+        assertNull(engine.getPondering());
+        assertTrue(engine.getLastResult().getDepth() >= 4);
+    }
+
+    @Test
+    public void testPonderMissSearchesAfresh() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(4);
+        board.makeMove(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        engine.ponder(board, Side.BLACK);
+        int reply = engine.getPondering().getReply();
+        MoveList replies = new MoveList();
+        board.generateLegalMoves(Side.BLACK, replies);
+        int other = replies.get(0) == reply ? replies.get(1) : replies.get(0);
+        board.makeMove(other);
+        String fen = board.toFen();
+        assertNotNull(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        assertEquals(0, engine.getPonderHits());
+        assertEquals(1, engine.getPonderMisses());
+        assertEquals(0.0, engine.getPonderHitRate());
+        assertEquals(4, engine.getLastResult().getDepth());
+        assertEquals(fen, board.toFen());
+    }
+
+    @Test
+    public void testPonderWithoutAHitStopsByItself() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(
+                SearchLimits.depth(4),
+                AlphaBetaChessEngine.DEFAULT_HASH_MEGABYTES, 2);
+        board.makeMove(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        // by default to the depth of the engine's own moves
+        engine.ponder(board, Side.BLACK);
+        assertTrue(awaitDone(engine.getPondering()));
+        assertTrue(engine.getPondering().isSpent());
+
+        engine.setPonderLimits(SearchLimits.moveTime(50));
+        engine.ponder(board, Side.BLACK);
+        assertTrue(awaitDone(engine.getPondering()));
+        assertTrue(engine.getPondering().isSpent());
+        engine.stopPondering();
+    }
+
+    @Test
+    public void testHitAfterTheBudgetSearchesToTheMovesLimits()
+        throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(4);
+        board.makeMove(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        engine.setPonderLimits(SearchLimits.depth(2));
+        engine.ponder(board, Side.BLACK);
+        PonderSearch pondering = engine.getPondering();
+        assertTrue(awaitDone(pondering));
+        board.makeMove(pondering.getReply());
+        assertNotNull(engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board));
+
+        assertEquals(1, engine.getPonderHits());
+        assertEquals(4, engine.getLastResult().getDepth());
+    }
+
+    // whether the ponder search finishes within a few seconds
+    private static boolean awaitDone(PonderSearch pondering)
+        throws InterruptedException {
+        for (int i = 0; i < 500 && !pondering.isDone(); i++) {
+            Thread.sleep(10);
+        }
+        return pondering.isDone();
+    }
+}
@@ -0,0 +1,116 @@
+package gamecontrol.ai;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Side;
+import model.chess.ChessBoard;
+
+public class AsyncChessEngineTest extends TestCase {
+
+    @Test
+    public void testChoosesOffTheCallingThread() throws Exception {
+        ChessBoard board = new ChessBoard();
+        String[] thread = new String[1];
+        AsyncChessEngine async = new AsyncChessEngine((moves, b) -> {
+            thread[0] = Thread.currentThread().getName();
+            return new RandomChessEngine().chooseNextMove(moves, b);
+        });
+
+        Move m = async.chooseNextMove(board.generateAllMovesForSide(
+                    Side.WHITE), board, 0).get(5, TimeUnit.SECONDS);
+        assertNotNull(m);
+        assertEquals("ai-move", thread[0]);
+    }
+
+    @Test
+    public void testDeadlineStopsTheSearchWithAMove() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(40);
+        AsyncChessEngine async = new AsyncChessEngine(engine);
+
+        long start = System.nanoTime();
+        Move m = async.chooseNextMove(board.generateAllMovesForSide(
+                    Side.WHITE), board, 200).get(10, TimeUnit.SECONDS);
+        assertNotNull(m);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(engine.getLastResult().getDepth() < 40);
+    }
+
+    @Test
+    public void testCancelStopsTheSearch() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(40);
+        AsyncChessEngine async = new AsyncChessEngine(engine);
+
+        CompletableFuture<Move> endless = async.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board, 0);
+        Thread.sleep(100);
+        assertTrue(endless.cancel(false));
+
+        // the next move waits for the cancelled search to give up
+        engine.setLimits(SearchLimits.depth(2));
+        Move m = async.chooseNextMove(board.generateAllMovesForSide(
+                    Side.WHITE), board, 0).get(10, TimeUnit.SECONDS);
+        assertNotNull(m);
+        assertEquals(2, engine.getLastResult().getDepth());
+    }
+
+    @Test
+    public void testStopBeforeTheSearchStartsIsKept() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(40);
+        StopSignal stop = new StopSignal();
+        stop.stop();
+
+        long start = System.nanoTime();
+        engine.chooseNextMove(board.generateAllMovesForSide(Side.WHITE),
+                board, stop);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testCancellingAQueuedMoveLeavesTheRunningOne()
+        throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(40);
+        AsyncChessEngine async = new AsyncChessEngine(engine);
+
+        long start = System.nanoTime();
+        CompletableFuture<Move> running = async.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board, 500);
+        CompletableFuture<Move> queued = async.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board, 500);
+        Thread.sleep(50);
+        assertTrue(queued.cancel(false));
+
+        assertNotNull(running.get(10, TimeUnit.SECONDS));
+        // stopped by its own deadline, not by the cancel
+        assertTrue(System.nanoTime() - start
+                >= TimeUnit.MILLISECONDS.toNanos(400));
+    }
+
+    @Test
+    public void testDeadlineCountsFromTheStartOfTheMove() throws Exception {
+        ChessBoard board = new ChessBoard();
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(40);
+        AsyncChessEngine async = new AsyncChessEngine(engine);
+
+        CompletableFuture<Move> first = async.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board, 300);
+        CompletableFuture<Move> second = async.chooseNextMove(
+                board.generateAllMovesForSide(Side.WHITE), board, 300);
+
+        assertNotNull(first.get(10, TimeUnit.SECONDS));
+        long firstDone = System.nanoTime();
+        // the second deadline did not run out while the first move thought
+        assertNotNull(second.get(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - firstDone
+                >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+}
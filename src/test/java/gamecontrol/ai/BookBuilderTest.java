@@ -0,0 +1,178 @@
+package gamecontrol.ai;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.chess.CastlingMove;
+import model.chess.ChessBoard;
+
+public class BookBuilderTest extends TestCase {
+
+    private static final String GAMES =
+        "[Event \"one\"]\n"
+        + "[Result \"1-0\"]\n"
+        + "\n"
+        + "1. e4 e5 2. Nf3 {the usual} Nc6 3. Bc4 Bc5 (3... Nf6 4. Ng5)\n"
+        + "4. O-O $1 Nf6 1-0\n"
+        + "\n"
+        + "[Event \"two\"]\n"
+        + "\n"
+        + "1. e4 c5 2. Nf3 d6 0-1\n"
+        + "\n"
+        + "e2e4 e7e5 g1f3 b8c6 f1c4 f8c5 e1g1 1/2-1/2\n"
+        + "1. e4 e4 1-0\n"
+        + "1. d4 d5 *\n";
+
+    @Test
+    public void testCountsEveryFinishedGame() throws Exception {
+        BookBuilder builder = new BookBuilder(40, 1, 1);
+        builder.addGames(new StringReader(GAMES));
+        assertEquals(3, builder.getGames());
+        // the illegal move and the unfinished game
+        assertEquals(2, builder.getSkippedGames());
+    }
+
+    @Test
+    public void testBookIsSortedAndWeighted() throws Exception {
+        BookBuilder builder = new BookBuilder(40, 1, 1);
+        builder.addGames(new StringReader(GAMES));
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            builder.write(file);
+            try (PolyglotBook book = PolyglotBook.open(file)) {
+                ChessBoard board = new ChessBoard();
+                List<Move> first = book.getMoves(moves(board), board);
+                assertEquals(1, first.size());
+                assertEquals(Position.of(4, 4),
+                        first.get(0).getDestination());
+
+                // c5 won once, e5 lost once and drew once
+                board.makeMove(first.get(0));
+                List<Move> replies = book.getMoves(moves(board), board);
+                assertEquals(2, replies.size());
+                assertEquals(Position.of(3, 2),
+                        replies.get(0).getDestination());
+                assertEquals(Position.of(3, 4),
+                        replies.get(1).getDestination());
+
+                assertSortedByKey(file);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCastlingAndRarelyPlayedMoves() throws Exception {
+        BookBuilder builder = new BookBuilder(40, 2, 1);
+        builder.addGames(new StringReader(GAMES));
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            builder.write(file);
+            try (PolyglotBook book = PolyglotBook.open(file)) {
+                ChessBoard board = new ChessBoard(
+                        "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R"
+                        + " w KQkq -");
+                Move castle = book.chooseMove(moves(board), board);
+                assertTrue(castle instanceof CastlingMove);
+
+                // c5 was only played once
+                board = new ChessBoard("rnbqkbnr/pppppppp/8/8/4P3/8"
+                        + "/PPPP1PPP/RNBQKBNR b KQkq -");
+                assertEquals(1, book.getMoves(moves(board), board).size());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFilesAreReadInParallel() throws Exception {
+        Path a = Files.createTempFile("games", ".pgn");
+        Path b = Files.createTempFile("games", ".pgn");
+        try {
+            Files.write(a, GAMES.getBytes("ISO-8859-1"));
+            Files.write(b, GAMES.getBytes("ISO-8859-1"));
+            BookBuilder builder = new BookBuilder(40, 1, 2);
+            builder.addGames(Arrays.asList(a, b));
+            assertEquals(6, builder.getGames());
+            assertEquals(4, builder.getSkippedGames());
+        } finally {
+            Files.delete(a);
+            Files.delete(b);
+        }
+    }
+
+    @Test
+    public void testEntriesAreWrittenAsPolyglotReadsThem() throws Exception {
+        BookBuilder builder = new BookBuilder(40, 1, 1);
+        builder.addGames(new StringReader(GAMES));
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            builder.write(file);
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+
+            // e2e4 from the start, to and from squares counted from a1
+            assertEquals(28 | 12 << 6,
+                    moveAt(data, PolyglotKey.of(new ChessBoard())));
+            // the keys are not the published ones yet; once PolyglotKey
+            // has that table, the start key written here must equal it
+            assertEquals(-1, moveAt(data, PolyglotKey.PUBLISHED_START));
+
+            // after 1. e4 no black pawn can take en passant, so e3 is not
+            // part of the key
+            ChessBoard afterE4 = new ChessBoard("rnbqkbnr/pppppppp/8/8/4P3/8"
+                    + "/PPPP1PPP/RNBQKBNR b KQkq -");
+            assertTrue(moveAt(data, PolyglotKey.of(afterE4)) >= 0);
+
+            // castling is written as the king taking its own rook, e1h1
+            ChessBoard castling = new ChessBoard(
+                    "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R"
+                    + " w KQkq -");
+            assertEquals(7 | 4 << 6,
+                    moveAt(data, PolyglotKey.of(castling)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // the move of the first entry for key, or -1 if there is none
+    private static int moveAt(ByteBuffer data, long key) {
+        for (int i = 0; i < data.limit(); i += PolyglotBook.ENTRY_BYTES) {
+            if (data.getLong(i) == key) {
+                return data.getShort(i + 8) & 0xFFFF;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<Piece, Set<Move>> moves(ChessBoard board)
+        throws Exception {
+        return board.generateAllMovesForSide(board.getSideToMove());
+    }
+
+    private static void assertSortedByKey(Path file) throws Exception {
+        byte[] bytes = Files.readAllBytes(file);
+        assertEquals(0, bytes.length % PolyglotBook.ENTRY_BYTES);
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        for (int i = PolyglotBook.ENTRY_BYTES; i < bytes.length;
+                i += PolyglotBook.ENTRY_BYTES) {
+            assertTrue(Long.compareUnsigned(
+                        data.getLong(i - PolyglotBook.ENTRY_BYTES),
+                        data.getLong(i)) <= 0);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package gamecontrol.ai;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Position;
+import model.Side;
+import model.chess.ChessBoard;
+
+public class ForkJoinChessEngineTest extends TestCase {
+
+    private static final String MIDDLEGAME =
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - -";
+
+    @Test
+    public void testTakesHangingQueen() throws Exception {
+        ChessBoard board = new ChessBoard(
+                "rnb1kbnr/pppp1ppp/8/4p3/4P2q/5N2/PPPP1PPP/RNBQKB1R w KQkq -");
+        String fen = board.toFen();
+        try (ForkJoinChessEngine engine = new ForkJoinChessEngine(2, 2,
+                    false)) {
+            Move m = engine.chooseNextMove(
+                    board.generateAllMovesForSide(Side.WHITE), board);
+
+            assertEquals(Position.of(5, 5), m.getStart());
+            assertEquals(Position.of(4, 7), m.getDestination());
+            assertEquals(fen, board.toFen());
+        }
+    }
+
+    @Test
+    public void testCloseShutsThePoolDown() {
+        ForkJoinChessEngine engine = new ForkJoinChessEngine(2, 2, false);
+        engine.close();
+        try {
+            engine.search(new ChessBoard(MIDDLEGAME), Side.WHITE);
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+    }
+
+    @Test
+    public void testResultDoesNotDependOnThreads() {
+        for (boolean split : new boolean[] {false, true}) {
+            SearchResult one = search(1, split);
+            for (int threads = 2; threads <= 4; threads *= 2) {
+                SearchResult many = search(threads, split);
+                assertEquals(one.getNotation(), many.getNotation());
+                assertEquals(one.getScore(), many.getScore());
+                assertEquals(one.getNodes(), many.getNodes());
+            }
+        }
+    }
+
+    private SearchResult search(int threads, boolean split) {
+        ChessBoard board = new ChessBoard(MIDDLEGAME);
+        try (ForkJoinChessEngine engine = new ForkJoinChessEngine(3, threads,
+                    split)) {
+            return engine.search(board, Side.WHITE);
+        }
+    }
+}
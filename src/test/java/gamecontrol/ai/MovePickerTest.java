@@ -0,0 +1,72 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+public class MovePickerTest extends TestCase {
+
+    // white can take the queen on d5 with the pawn or the knight, or a
+    // pawn on a6 with the bishop
+    private static final String FEN =
+        "4k3/8/p7/3q4/4P3/2N5/8/4KB2 w - -";
+
+    @Test
+    public void testEveryMoveOnceInStageOrder() {
+        ChessBoard board = new ChessBoard(FEN);
+        int hashMove = PackedMove.of(Bitboards.square(7, 4),
+                Bitboards.square(6, 5), PackedMove.QUIET);
+        int killer = PackedMove.of(Bitboards.square(7, 4),
+                Bitboards.square(6, 4), PackedMove.QUIET);
+        HistoryTable history = new HistoryTable();
+        history.cutoff(board, killer, 3, 2);
+
+        MovePicker picker = new MovePicker(board, history);
+        picker.reset(Side.WHITE, hashMove, 2, false);
+        List<Integer> picked = new ArrayList<>();
+        for (int m = picker.next(); m != PackedMove.NONE; m = picker.next()) {
+            picked.add(m);
+        }
+
+        MoveList legal = new MoveList();
+        board.generateLegalMoves(Side.WHITE, legal);
+        assertEquals(legal.size(), picked.size());
+        assertEquals(legal.size(), new HashSet<>(picked).size());
+
+        assertEquals(hashMove, (int) picked.get(0));
+        // the queen falls to the cheapest attacker first
+        assertEquals(PackedMove.of(Bitboards.square(4, 4),
+                    Bitboards.square(3, 3), PackedMove.CAPTURE),
+                (int) picked.get(1));
+        assertEquals(Bitboards.square(3, 3), PackedMove.to(picked.get(2)));
+        assertEquals(Bitboards.square(2, 0), PackedMove.to(picked.get(3)));
+        assertEquals(killer, (int) picked.get(4));
+    }
+
+    @Test
+    public void testCapturesOnly() {
+        ChessBoard board = new ChessBoard(FEN);
+        MovePicker picker = new MovePicker(board, new HistoryTable());
+        // a quiet hash move is left for the full search
+        picker.reset(Side.WHITE, PackedMove.of(Bitboards.square(7, 4),
+                    Bitboards.square(6, 5), PackedMove.QUIET), 0, true);
+
+        Set<Integer> picked = new HashSet<>();
+        for (int m = picker.next(); m != PackedMove.NONE; m = picker.next()) {
+            assertTrue(PackedMove.isCapture(m));
+            picked.add(m);
+        }
+        assertEquals(3, picked.size());
+    }
+}
@@ -0,0 +1,66 @@
+package gamecontrol.ai;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Position;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+
+public class PawnTableTest extends TestCase {
+
+    @Test
+    public void testPassedPawns() {
+        // a2 and h7 are passed, e4 is held up by e5
+        ChessBoard board = new ChessBoard("4k3/7P/8/4p3/4P3/8/P7/4K3 w - -");
+        PawnTable pawns = new PawnTable(1024);
+        int entry = pawns.probe(board);
+
+        assertEquals(Bitboards.bit(Bitboards.square(6, 0))
+                | Bitboards.bit(Bitboards.square(1, 7)),
+                pawns.passed(entry, Side.WHITE));
+        assertEquals(0, pawns.passed(entry, Side.BLACK));
+        assertTrue(pawns.endgame(entry) > 0);
+    }
+
+    @Test
+    public void testEvaluateCountsKingsNearPassedPawns() {
+        // the same pawn a file apart from the black king, then far from it
+        ChessBoard caught = new ChessBoard("7k/8/7P/8/8/8/8/4K3 w - -");
+        ChessBoard running = new ChessBoard("7k/8/P7/8/8/8/8/4K3 w - -");
+        PawnTable pawns = new PawnTable(1024);
+        int entry = pawns.probe(caught);
+        assertEquals(pawns.endgame(entry),
+                pawns.endgame(pawns.probe(running)));
+        assertTrue(Evaluator.evaluate(running, Side.WHITE, pawns)
+                > Evaluator.evaluate(caught, Side.WHITE, pawns));
+    }
+
+    @Test
+    public void testDoubledAndIsolated() {
+        // the same material, but White's pawns are doubled and isolated
+        ChessBoard weak = new ChessBoard("4k3/pp6/8/8/8/2P5/2P5/4K3 w - -");
+        PawnTable pawns = new PawnTable(1024);
+        int entry = pawns.probe(weak);
+        assertTrue(pawns.midgame(entry) < 0);
+        assertTrue(pawns.endgame(entry) < 0);
+    }
+
+    @Test
+    public void testSecondProbeHits() {
+        ChessBoard board = new ChessBoard();
+        PawnTable pawns = new PawnTable(1024);
+        int entry = pawns.probe(board);
+        assertEquals(0, pawns.midgame(entry));
+
+        // a knight move leaves the pawns as they were
+        board.makeMove(board.encode(new Move(Position.of(7, 6),
+                        Position.of(5, 5))));
+        assertEquals(entry, pawns.probe(board));
+        assertEquals(2, pawns.getProbes());
+        assertEquals(1, pawns.getHits());
+    }
+}
@@ -0,0 +1,128 @@
+package gamecontrol.ai;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.CastlingMove;
+import model.chess.ChessBoard;
+
+public class PolyglotBookTest extends TestCase {
+
+    @Test
+    public void testFindsTheMovesOfAPosition() throws Exception {
+        ChessBoard board = new ChessBoard();
+        long key = PolyglotKey.of(board);
+        // e2e4 three times as often as d2d4, among entries of other keys
+        Path file = writeBook(
+                new long[] {key - 1, bookMove(6, 0, 5, 0), 9},
+                new long[] {key, bookMove(6, 4, 4, 4), 3},
+                new long[] {key, bookMove(6, 3, 4, 3), 1},
+                new long[] {key + 1, bookMove(6, 7, 5, 7), 9});
+        Map<Piece, Set<Move>> moves = board.generateAllMovesForSide(
+                Side.WHITE);
+
+        try (PolyglotBook book = PolyglotBook.open(file, new Random(1))) {
+            assertEquals(4, book.size());
+            List<Move> known = book.getMoves(moves, board);
+            assertEquals(2, known.size());
+            assertEquals(Position.of(4, 4), known.get(0).getDestination());
+            assertEquals(Position.of(4, 3), known.get(1).getDestination());
+
+            int e4 = 0;
+            for (int i = 0; i < 400; i++) {
+                Move m = book.chooseMove(moves, board);
+                assertTrue(known.contains(m));
+                if (m == known.get(0)) {
+                    e4++;
+                }
+            }
+            assertTrue(e4 > 250 && e4 < 350);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCastlingIsWrittenAsTakingTheRook() throws Exception {
+        ChessBoard board = new ChessBoard("r3k2r/8/8/8/8/8/8/R3K2R w KQkq -");
+        Path file = writeBook(
+                new long[] {PolyglotKey.of(board), bookMove(7, 4, 7, 7), 1});
+
+        try (PolyglotBook book = PolyglotBook.open(file)) {
+            Move m = book.chooseMove(board.generateAllMovesForSide(
+                        Side.WHITE), board);
+            assertTrue(m instanceof CastlingMove);
+            assertEquals(Position.of(7, 6), m.getDestination());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testUnknownPositionHasNoMove() throws Exception {
+        ChessBoard board = new ChessBoard();
+        Path file = writeBook(
+                new long[] {PolyglotKey.of(board), bookMove(6, 4, 4, 4), 1});
+        board.makeMove(new Move(Position.of(6, 3), Position.of(4, 3), false,
+                    true, false));
+
+        try (PolyglotBook book = PolyglotBook.open(file)) {
+            assertNull(book.chooseMove(board.generateAllMovesForSide(
+                        Side.BLACK), board));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRefusesABookWithThePublishedKeys() throws Exception {
+        // the published key of the starting position, 1. e4
+        Path file = writeBook(new long[] {PolyglotKey.PUBLISHED_START,
+            bookMove(6, 4, 4, 4), 1});
+
+        try (PolyglotBook book = PolyglotBook.open(file)) {
+            fail("opened a book no position can be found in");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("published"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // a move as Polyglot writes it, from and to in its square numbering
+    private static long bookMove(int fromRow, int fromCol, int toRow,
+            int toCol) {
+        return PolyglotKey.square(Bitboards.square(toRow, toCol))
+            | PolyglotKey.square(Bitboards.square(fromRow, fromCol)) << 6;
+    }
+
+    // entries of key, move and weight, already sorted by key
+    private static Path writeBook(long[]... entries) throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try (DataOutputStream out = new DataOutputStream(
+                    Files.newOutputStream(file))) {
+            for (long[] e : entries) {
+                out.writeLong(e[0]);
+                out.writeShort((int) e[1]);
+                out.writeShort((int) e[2]);
+                out.writeInt(0);
+            }
+        }
+        return file;
+    }
+}
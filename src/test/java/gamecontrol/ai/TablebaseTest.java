@@ -0,0 +1,165 @@
+package gamecontrol.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Piece;
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+public class TablebaseTest extends TestCase {
+
+    // made once for all the tests, it takes a few seconds
+    private static Path directory;
+    private static final List<String> REPORTS = new ArrayList<>();
+
+    private static synchronized Tablebase tablebase() throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("tables");
+            directory.toFile().deleteOnExit();
+            TablebaseGenerator generator = new TablebaseGenerator(directory,
+                    2);
+            generator.setListener(REPORTS::add);
+            generator.generate("KQK", "KRK", "KPK");
+            for (File f : directory.toFile().listFiles()) {
+                f.deleteOnExit();
+            }
+        }
+        return Tablebase.open(directory);
+    }
+
+    @Test
+    public void testFindsTheLongestMates() throws Exception {
+        tablebase();
+        assertEquals(19, longestWin("KQK"));
+        assertEquals(31, longestWin("KRK"));
+        // KK, the tables of the four promotions, then KPK itself
+        assertEquals(6, REPORTS.size());
+        assertTrue(REPORTS.get(5).startsWith("KPK:"));
+        assertTrue(REPORTS.get(5).contains("longest mate 55 plies"));
+    }
+
+    @Test
+    public void testKnowsMateAndStalemate() throws Exception {
+        Tablebase tables = tablebase();
+        TablebaseResult mate = tables.probe(
+                new ChessBoard("k7/1Q6/1K6/8/8/8/8/8 b - - 0 1"));
+        assertTrue(mate.isLoss());
+        assertEquals(0, mate.getPliesToMate());
+
+        TablebaseResult stalemate = tables.probe(
+                new ChessBoard("k7/2Q5/1K6/8/8/8/8/8 b - - 0 1"));
+        assertTrue(stalemate.isDraw());
+
+        TablebaseResult won = tables.probe(
+                new ChessBoard("k7/8/1K6/8/8/8/8/2Q5 w - - 0 1"));
+        assertTrue(won.isWin());
+        assertEquals(1, won.getPliesToMate());
+
+        // more than 4 pieces, or castling left, is not answered
+        assertNull(tables.probe(new ChessBoard()));
+        assertNull(tables.probe(
+                new ChessBoard("4k3/8/8/8/8/8/8/R3K3 w Q - 0 1")));
+    }
+
+    @Test
+    public void testBestPlayMatesInTheKnownNumberOfPlies() throws Exception {
+        Tablebase tables = tablebase();
+        // the black side of the table is found by flipping the board
+        String[] fens = {
+            "8/8/8/3k4/8/8/8/KQ6 w - - 0 1",
+            "8/8/8/3k4/8/8/8/KR6 b - - 0 1",
+            "8/8/8/8/8/2k5/6r1/K7 w - - 0 1",
+            "4k3/8/4K3/4P3/8/8/8/8 b - - 0 1"
+        };
+        for (String fen : fens) {
+            ChessBoard board = new ChessBoard(fen);
+            TablebaseResult result = tables.probe(board);
+            assertFalse(fen, result.isDraw());
+            assertEquals(fen, result.getPliesToMate(), playOut(tables,
+                        board));
+        }
+    }
+
+    @Test
+    public void testPawnEndings() throws Exception {
+        Tablebase tables = tablebase();
+        // the king on the sixth in front of its pawn wins whoever moves
+        assertTrue(tables.probe(
+                new ChessBoard("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1")).isWin());
+        assertTrue(tables.probe(
+                new ChessBoard("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1")).isLoss());
+        // the pawn on the sixth with the king behind it only draws
+        assertTrue(tables.probe(
+                new ChessBoard("4k3/8/4P3/4K3/8/8/8/8 w - - 0 1")).isDraw());
+        // a rook pawn with the defender in the corner
+        assertTrue(tables.probe(
+                new ChessBoard("k7/8/8/8/P7/8/8/7K w - - 0 1")).isDraw());
+    }
+
+    @Test
+    public void testChoosesAMoveThatKeepsTheWin() throws Exception {
+        Tablebase tables = tablebase();
+        ChessBoard board = new ChessBoard("8/8/8/3k4/8/8/8/KR6 w - - 0 1");
+        int plies = tables.probe(board).getPliesToMate();
+        Map<Piece, Set<Move>> moves = board.generateAllMovesForSide(
+                Side.WHITE);
+
+        Move m = tables.chooseMove(moves, board);
+        ChessBoard after = new ChessBoard(board);
+        after.makeMove(m);
+        TablebaseResult result = tables.probe(after);
+        assertTrue(result.isLoss());
+        assertEquals(plies - 1, result.getPliesToMate());
+    }
+
+    @Test
+    public void testEngineAnswersFromTheTables() throws Exception {
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(6);
+        engine.setTablebase(tablebase());
+        ChessBoard board = new ChessBoard("8/8/8/3k4/8/8/8/KQ6 w - - 0 1");
+        SearchResult result = engine.search(board, Side.WHITE,
+                SearchLimits.depth(6));
+        assertEquals(0, result.getNodes());
+        assertTrue(result.getScore() > Searcher.MATE - Searcher.MAX_PLY);
+    }
+
+    // plays the tables' moves for both sides until one is mated
+    private static int playOut(Tablebase tables, ChessBoard board) {
+        int plies = 0;
+        for (int move = tables.bestMove(board); move != PackedMove.NONE;
+                move = tables.bestMove(board)) {
+            board.makeMove(move);
+            plies++;
+        }
+        MoveList moves = new MoveList();
+        board.generateLegalMoves(board.getSideToMove(), moves);
+        assertEquals(0, moves.size());
+        assertTrue(board.isInCheck(board.getSideToMove()));
+        return plies;
+    }
+
+    private static int longestWin(String name) throws IOException {
+        int longest = 0;
+        for (byte b : Files.readAllBytes(directory.resolve(name
+                        + Tablebase.SUFFIX))) {
+            if (EndgameTable.isWin(b & 0xFF)) {
+                longest = Math.max(longest, EndgameTable.plies(b & 0xFF));
+            }
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,86 @@
+package gamecontrol.ai;
+
+import java.lang.reflect.Field;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.chess.PackedMove;
+
+public class TranspositionTableTest extends TestCase {
+    private TranspositionTable table;
+
+    @Before
+    public void setUp() {
+        table = new TranspositionTable(1);
+    }
+
+    @Test
+    public void testStoreAndProbe() {
+        int move = PackedMove.of(52, 36, PackedMove.DOUBLE_PUSH);
+        table.store(0x123456789ABCDEFL, move, -250, 7,
+                TranspositionTable.LOWER);
+
+        long data = table.probe(0x123456789ABCDEFL);
+        assertEquals(move, TranspositionTable.move(data));
+        assertEquals(-250, TranspositionTable.score(data));
+        assertEquals(7, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(data));
+
+        assertEquals(TranspositionTable.MISS, table.probe(0x42L));
+    }
+
+    @Test
+    public void testSizeIsInMegabytes() {
+        // 16 bytes an entry
+        assertEquals(1 << 16, table.capacity());
+        assertEquals(1 << 20, new TranspositionTable(16).capacity());
+    }
+
+    @Test
+    public void testFullBucketKeepsDeepEntries() {
+        // keys that differ only above the bucket bits share a bucket
+        long step = 1L << 40;
+        for (int i = 1; i <= 4; i++) {
+            table.store(i * step, PackedMove.NONE, 0, 10 + i,
+                    TranspositionTable.EXACT);
+        }
+        table.store(5 * step, PackedMove.NONE, 0, 1,
+                TranspositionTable.EXACT);
+
+        // the depth 11 entry made room
+        assertEquals(TranspositionTable.MISS, table.probe(step));
+        assertEquals(12, TranspositionTable.depth(table.probe(2 * step)));
+        assertEquals(1, TranspositionTable.depth(table.probe(5 * step)));
+
+        // after a few searches the old entries go first, however deep
+        for (int i = 0; i < 3; i++) {
+            table.newSearch();
+        }
+        table.store(6 * step, PackedMove.NONE, 0, 2,
+                TranspositionTable.EXACT);
+        table.store(7 * step, PackedMove.NONE, 0, 2,
+                TranspositionTable.EXACT);
+        assertEquals(2, TranspositionTable.depth(table.probe(6 * step)));
+        assertEquals(2, TranspositionTable.depth(table.probe(7 * step)));
+    }
+
+    @Test
+    public void testTornEntryIsAMiss() throws Exception {
+        long key = 0x0F0F0F0F0F0F0F0FL;
+        table.store(key, PackedMove.NONE, 1, 1, TranspositionTable.EXACT);
+
+        // overwrite just the data word, as a racing writer could
+        Field f = TranspositionTable.class.getDeclaredField("table");
+        f.setAccessible(true);
+        long[] raw = (long[]) f.get(table);
+        for (int i = 1; i < raw.length; i += 2) {
+            if (raw[i] != 0) {
+                raw[i] ^= 1L << 20;
+            }
+        }
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+    }
+}
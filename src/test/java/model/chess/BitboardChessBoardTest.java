@@ -0,0 +1,151 @@
+package model.chess;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.SideHasNoMovesException;
+
+public class BitboardChessBoardTest extends TestCase {
+    private Board board;
+
+    @Before
+    public void setUp() {
+        board = new BitboardChessBoard();
+    }
+
+    @Test
+    public void testOpeningMovesMatchChessBoard() throws Exception {
+        Set<Move> expected = allMoves(new ChessBoard(), Side.WHITE);
+        Set<Move> generated = allMoves(board, Side.WHITE);
+
+        assertEquals(20, generated.size());
+        assertEquals(expected, generated);
+    }
+
+    @Test
+    public void testCopyKeepsCastlingRightsAndEnPassant() {
+        // the rooks and kings are all at home, but only two rights are left
+        String fen = "r3k2r/8/8/3pP3/8/8/8/R3K2R w Kq d6 0 1";
+        ChessBoard expected = new ChessBoard(fen);
+        ChessBoard copy = new ChessBoard(new BitboardChessBoard(expected),
+                Side.WHITE);
+
+        assertEquals(fen, copy.toFen());
+        assertEquals(expected.hash(), copy.hash());
+        assertFalse(copy.hasCastlingRight(Side.WHITE,
+                    CastlingMove.CastlingType.QUEEN_SIDE));
+        assertEquals(expected.getEnPassantSquare(),
+                copy.getEnPassantSquare());
+    }
+
+    @Test
+    public void testFoolsMate() throws Exception {
+        move(6, 5, 5, 5);
+        move(1, 4, 3, 4);
+        move(6, 6, 4, 6);
+        move(0, 3, 4, 7);
+
+        assertTrue(board.isInCheck(Side.WHITE));
+        assertFalse(board.isInCheck(Side.BLACK));
+        try {
+            board.generateAllMovesForSide(Side.WHITE);
+            fail("White should be checkmated");
+        } catch (SideHasNoMovesException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEnPassant() throws Exception {
+        move(6, 4, 4, 4);
+        move(1, 0, 2, 0);
+        move(4, 4, 3, 4);
+        move(1, 3, 3, 3);
+
+        Move capture = null;
+        for (Move m : allMoves(board, Side.WHITE)) {
+            if (m.getStart().equals(new Position(3, 4))
+                    && m.getDestination().equals(new Position(2, 3))) {
+                capture = m;
+            }
+        }
+        assertNotNull(capture);
+        assertTrue(capture instanceof PawnCaptureMove);
+        assertTrue(((PawnCaptureMove) capture).isEnPassant());
+
+        board.movePiece(board.getPieceAt(capture.getStart()), capture);
+        assertNull(board.getPieceAt(new Position(3, 3)));
+        assertEquals(31, board.getAllActivePiecesPositions().size());
+    }
+
+    @Test
+    public void testCannotCastleThroughCheck() throws Exception {
+        move(6, 4, 4, 4);
+        move(1, 1, 2, 1);
+        move(7, 6, 5, 5);
+        move(0, 2, 2, 0);
+        move(6, 6, 5, 6);
+        move(1, 0, 3, 0);
+        move(7, 5, 6, 6);
+        move(3, 0, 4, 0);
+
+        // the black bishop on a6 covers f1, which the king passes
+        for (Move m : allMoves(board, Side.WHITE)) {
+            assertFalse(m instanceof CastlingMove);
+        }
+
+        move(6, 3, 5, 3);
+        move(1, 7, 2, 7);
+        assertTrue(board.pieceCanMove(new CastlingMove(new Position(7, 4),
+                new Position(7, 6), CastlingMove.CastlingType.KING_SIDE),
+                Side.WHITE));
+    }
+
+    @Test
+    public void testHashMatchesChessBoard() {
+        Board other = new ChessBoard();
+        assertEquals(other.hash(), board.hash());
+
+        move(6, 4, 4, 4);
+        move(1, 3, 3, 3);
+        move(4, 4, 3, 3);
+        Position start = Position.of(6, 4);
+        other.movePiece(other.getPieceAt(start),
+                new Move(start, Position.of(4, 4)));
+        start = Position.of(1, 3);
+        other.movePiece(other.getPieceAt(start),
+                new Move(start, Position.of(3, 3)));
+        start = Position.of(4, 4);
+        other.movePiece(other.getPieceAt(start),
+                new Move(start, Position.of(3, 3)));
+
+        assertEquals(other.hash(), board.hash());
+    }
+
+    private void move(int fromRow, int fromCol, int toRow, int toCol) {
+        Position start = new Position(fromRow, fromCol);
+        Piece p = board.getPieceAt(start);
+        board.movePiece(p, new Move(start, new Position(toRow, toCol)));
+    }
+
+    private Set<Move> allMoves(Board b, Side s)
+        throws SideHasNoMovesException {
+        Set<Move> moves = new HashSet<>();
+        Map<Piece, Set<Move>> all = b.generateAllMovesForSide(s);
+        for (Set<Move> pieceMoves : all.values()) {
+            moves.addAll(pieceMoves);
+        }
+        return moves;
+    }
+}
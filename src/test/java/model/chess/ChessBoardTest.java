@@ -0,0 +1,225 @@
+package model.chess;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+
+public class ChessBoardTest extends TestCase {
+    private ChessBoard board;
+
+    @Before
+    public void setUp() {
+        board = new ChessBoard();
+    }
+
+    @Test
+    public void testPinnedPieceStaysOnLine() throws Exception {
+        move(6, 4, 4, 4);
+        move(1, 3, 2, 3);
+        move(7, 5, 3, 1);
+
+        // blocking the check with the knight pins it to the king
+        move(0, 1, 2, 2);
+        move(6, 0, 5, 0);
+
+        Piece knight = board.getPieceAt(new Position(2, 2));
+        Set<Move> moves = board.generateAllMovesForSide(Side.BLACK)
+            .get(knight);
+        assertTrue(moves.isEmpty());
+    }
+
+    @Test
+    public void testOnlyBlockOrCaptureOutOfCheck() throws Exception {
+        move(6, 4, 4, 4);
+        move(1, 3, 2, 3);
+        move(7, 5, 3, 1);
+
+        // every black move has to deal with the bishop on b5
+        for (Set<Move> moves
+                : board.generateAllMovesForSide(Side.BLACK).values()) {
+            for (Move m : moves) {
+                Position d = m.getDestination();
+                Piece p = board.getPieceAt(m.getStart());
+                boolean kingMove = p instanceof King;
+                boolean blocks = d.equals(new Position(2, 2))
+                    || d.equals(new Position(1, 3));
+                boolean captures = d.equals(new Position(3, 1));
+                assertTrue(m.toString(), kingMove || blocks || captures);
+            }
+        }
+    }
+
+    @Test
+    public void testAttacksFollowMoves() {
+        Position f3 = new Position(5, 5);
+        assertTrue(board.isAttacked(f3, Side.WHITE));
+        assertFalse(board.isAttacked(f3, Side.BLACK));
+
+        // opening the diagonal lets the queen on d8 see all the way to h4
+        Position h4 = new Position(4, 7);
+        assertFalse(board.isAttacked(h4, Side.BLACK));
+        move(1, 4, 2, 4);
+        assertTrue(board.isAttacked(h4, Side.BLACK));
+
+        // and a knight on f6 cuts it off again
+        move(6, 0, 5, 0);
+        move(0, 6, 2, 5);
+        assertFalse(board.isAttacked(h4, Side.BLACK));
+
+        move(6, 5, 5, 5);
+        move(2, 5, 0, 6);
+        move(6, 6, 4, 6);
+        move(0, 3, 4, 7);
+        assertTrue(board.isInCheck(Side.WHITE));
+    }
+
+    @Test
+    public void testPackedMovesMatchMoves() throws Exception {
+        MoveList list = new MoveList();
+        board.generateLegalMoves(Side.WHITE, list);
+        assertEquals(20, list.size());
+
+        Set<Move> moves = new HashSet<>();
+        for (Set<Move> pieceMoves
+                : board.generateAllMovesForSide(Side.WHITE).values()) {
+            moves.addAll(pieceMoves);
+        }
+        for (int i = 0; i < list.size(); i++) {
+            Move m = board.toMove(list.get(i));
+            assertTrue(moves.contains(m));
+            assertEquals(list.get(i), board.encode(m));
+        }
+    }
+
+    @Test
+    public void testHashFollowsPosition() {
+        long start = board.hash();
+        assertEquals(board.computeHash(), start);
+
+        // the knights go out and back, which only passes the move twice
+        move(7, 6, 5, 5);
+        assertFalse(start == board.hash());
+        move(0, 6, 2, 5);
+        move(5, 5, 7, 6);
+        move(2, 5, 0, 6);
+        assertEquals(start, board.hash());
+
+        MoveList list = new MoveList();
+        board.generateLegalMoves(Side.WHITE, list);
+        for (int i = 0; i < list.size(); i++) {
+            board.makeMove(list.get(i));
+            assertEquals(board.computeHash(), board.hash());
+            board.unmakeMove();
+            assertEquals(start, board.hash());
+        }
+    }
+
+    @Test
+    public void testPieceSquareScoresFollowMoves() {
+        int midgame = board.getMidgameScore(Side.WHITE);
+        assertEquals(midgame, board.getMidgameScore(Side.BLACK));
+        assertEquals(PieceSquareTables.MAX_PHASE, board.getPhase());
+
+        // e2 is worth -20 to a pawn and e4 +20
+        move(6, 4, 4, 4);
+        assertEquals(midgame + 40, board.getMidgameScore(Side.WHITE));
+        move(1, 3, 3, 3);
+        move(4, 4, 3, 3);
+        assertEquals(PieceSquareTables.MAX_PHASE, board.getPhase());
+
+        // a knight for the pawn changes the material and the phase
+        Position d5 = Position.of(3, 3);
+        int before = board.getEndgameScore(Side.WHITE);
+        board.replacePieceAt(d5, new Knight(Side.WHITE));
+        assertEquals(PieceSquareTables.MAX_PHASE + 1, board.getPhase());
+        assertEquals(before
+                - PieceSquareTables.endgame(Side.WHITE,
+                    ChessPiece.ChessPieceType.PAWN, Bitboards.square(d5))
+                + PieceSquareTables.endgame(Side.WHITE,
+                    ChessPiece.ChessPieceType.KNIGHT, Bitboards.square(d5)),
+                board.getEndgameScore(Side.WHITE));
+    }
+
+    @Test
+    public void testPawnHashOnlySeesPawns() {
+        long pawns = board.pawnHash();
+        assertEquals(board.computePawnHash(), pawns);
+
+        move(7, 6, 5, 5);
+        assertEquals(pawns, board.pawnHash());
+        move(1, 4, 3, 4);
+        assertFalse(pawns == board.pawnHash());
+        assertEquals(board.computePawnHash(), board.pawnHash());
+
+        // the knight takes the pawn, leaving one pawn less
+        board = new ChessBoard(
+                "rnbqkbnr/pppp1ppp/8/4p3/8/5N2/PPPPPPPP/RNBQKB1R w KQkq -");
+        int capture = PackedMove.of(Bitboards.square(5, 5),
+                Bitboards.square(3, 4), PackedMove.CAPTURE);
+        board.makeMove(capture);
+        assertEquals(board.computePawnHash(), board.pawnHash());
+        board.unmakeMove();
+        assertEquals(board.computePawnHash(), board.pawnHash());
+    }
+
+    @Test
+    public void testNullMovePassesTheTurn() {
+        board = new ChessBoard(
+                "rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3");
+        String fen = board.toFen();
+        long hash = board.hash();
+
+        board.makeNullMove();
+        assertEquals(Side.WHITE, board.getSideToMove());
+        // the en passant chance is gone after the pass
+        assertEquals(board.computeHash(), board.hash());
+        assertFalse(hash == board.hash());
+        assertFalse(board.toFen().contains("e3"));
+
+        board.unmakeMove();
+        assertEquals(fen, board.toFen());
+        assertEquals(hash, board.hash());
+    }
+
+    @Test
+    public void testStaticExchange() {
+        int[] values = {100, 500, 320, 330, 900, 0};
+        int e5 = Bitboards.square(3, 4);
+
+        // the pawn on e5 is not defended
+        board = new ChessBoard(
+                "1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - -");
+        assertEquals(100, board.see(PackedMove.of(Bitboards.square(7, 4), e5,
+                        PackedMove.CAPTURE), values));
+
+        // the rook and queen behind the knight join in, but the knight is
+        // lost for the pawn
+        board = new ChessBoard(
+                "1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - -");
+        assertEquals(-220, board.see(PackedMove.of(Bitboards.square(5, 3), e5,
+                        PackedMove.CAPTURE), values));
+
+        // Nxe5, Bxb7 and Rxe5
+        MoveList captures = new MoveList();
+        board.generateLegalCaptures(Side.WHITE, captures);
+        assertEquals(3, captures.size());
+        for (int i = 0; i < captures.size(); i++) {
+            assertTrue(PackedMove.isCapture(captures.get(i)));
+        }
+    }
+
+    private void move(int fromRow, int fromCol, int toRow, int toCol) {
+        Position start = new Position(fromRow, fromCol);
+        Piece p = board.getPieceAt(start);
+        board.movePiece(p, new Move(start, new Position(toRow, toCol)));
+    }
+}
@@ -0,0 +1,33 @@
+package model.chess;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PackedMoveTest extends TestCase {
+
+    @Test
+    public void testFieldsRoundTrip() {
+        int move = PackedMove.of(52, 36, PackedMove.DOUBLE_PUSH);
+
+        assertEquals(52, PackedMove.from(move));
+        assertEquals(36, PackedMove.to(move));
+        assertTrue(PackedMove.isDoublePush(move));
+        assertFalse(PackedMove.isCapture(move));
+        assertFalse(PackedMove.isPromotion(move));
+        assertEquals("e2e4", PackedMove.toString(move));
+    }
+
+    @Test
+    public void testPromotionCapture() {
+        int move = PackedMove.promotion(9, 0,
+                ChessPiece.ChessPieceType.KNIGHT, true);
+
+        assertTrue(PackedMove.isPromotion(move));
+        assertTrue(PackedMove.isCapture(move));
+        assertFalse(PackedMove.isEnPassant(move));
+        assertEquals(ChessPiece.ChessPieceType.KNIGHT,
+                PackedMove.promotionType(move));
+        assertEquals("b7a8n", PackedMove.toString(move));
+    }
+}
@@ -0,0 +1,156 @@
+package model.chess;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import model.Move;
+import model.Side;
+
+/**
+ * Node counts from the reference positions on the chess programming wiki.
+ */
+public class PerftTest extends TestCase {
+
+    private static final String KIWIPETE =
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -";
+
+    // en passant discovered checks along the rank
+    private static final String POSITION_3 =
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -";
+
+    // promotions, under-promotions and castling out of the corner
+    private static final String POSITION_4 =
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+
+    private static final String POSITION_5 =
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+
+    @Test
+    public void testInitialPosition() {
+        assertCounts(Perft.INITIAL_FEN, 20, 400, 8902, 197281);
+    }
+
+    @Test
+    public void testKiwipete() {
+        assertCounts(KIWIPETE, 48, 2039, 97862);
+    }
+
+    @Test
+    public void testPosition3() {
+        assertCounts(POSITION_3, 14, 191, 2812, 43238);
+    }
+
+    @Test
+    public void testPosition4() {
+        assertCounts(POSITION_4, 6, 264, 9467);
+    }
+
+    @Test
+    public void testPosition5() {
+        assertCounts(POSITION_5, 44, 1486, 62379);
+    }
+
+    @Test
+    public void testDivideAddsUp() {
+        Perft perft = new Perft(new ChessBoard(KIWIPETE), 2);
+        Map<String, Long> divide = perft.divide(2);
+
+        long total = 0;
+        for (long nodes : divide.values()) {
+            total += nodes;
+        }
+        assertEquals(48, divide.size());
+        assertEquals(43L, (long) divide.get("e1g1"));
+        assertEquals(2039, total);
+    }
+
+    @Test
+    public void testFenRoundTrip() {
+        assertEquals(KIWIPETE + " 0 1", new ChessBoard(KIWIPETE).toFen());
+        assertEquals(Perft.INITIAL_FEN, new ChessBoard().toFen());
+    }
+
+    @Test
+    public void testMoveViewCollapsesPromotions() throws Exception {
+        ChessBoard board = new ChessBoard("4k3/1P6/8/8/8/8/8/4K3 w - -");
+        MoveList list = new MoveList();
+        board.generateLegalMoves(Side.WHITE, list);
+
+        Set<Move> moves = new HashSet<>();
+        for (Set<Move> pieceMoves
+                : board.generateAllMovesForSide(Side.WHITE).values()) {
+            moves.addAll(pieceMoves);
+        }
+
+        // the player picks the piece, so b7-b8 is offered once
+        assertEquals(9, list.size());
+        assertEquals(6, moves.size());
+        for (Move m : moves) {
+            if (m instanceof PromotionMove) {
+                assertNull(((PromotionMove) m).getPromotingTo());
+            }
+        }
+    }
+
+    @Test
+    public void testMoveApiOnChessBoard() {
+        assertMoveCounts(Perft.INITIAL_FEN, false, 20, 400, 8902);
+        assertMoveCounts(KIWIPETE, false, 48, 2039);
+        assertMoveCounts(POSITION_3, false, 14, 191, 2812);
+        assertMoveCounts(POSITION_4, false, 6, 264);
+    }
+
+    @Test
+    public void testMoveApiOnBitboardChessBoard() {
+        assertMoveCounts(Perft.INITIAL_FEN, true, 20, 400, 8902);
+        assertMoveCounts(KIWIPETE, true, 48, 2039);
+        assertMoveCounts(POSITION_3, true, 14, 191, 2812);
+        assertMoveCounts(POSITION_4, true, 6, 264);
+    }
+
+    @Test
+    public void testMoveApiDivideMatchesPackedDivide() {
+        for (String fen : new String[] {KIWIPETE, POSITION_4}) {
+            ChessBoard board = new ChessBoard(fen);
+            Map<String, Long> packed = new Perft(board, 2).divide(2);
+            assertEquals(fen, packed, moveApi(fen, false).divide(2));
+            assertEquals(fen, packed, moveApi(fen, true).divide(2));
+        }
+    }
+
+    private static MovePerft moveApi(String fen, boolean bitboard) {
+        ChessBoard board = new ChessBoard(fen);
+        if (bitboard) {
+            return new MovePerft(new BitboardChessBoard(board),
+                    board.getSideToMove(),
+                    b -> new BitboardChessBoard((BitboardChessBoard) b));
+        }
+        return new MovePerft(board, board.getSideToMove(),
+                b -> new ChessBoard((ChessBoard) b));
+    }
+
+    private static void assertMoveCounts(String fen, boolean bitboard,
+            long... counts) {
+        MovePerft perft = moveApi(fen, bitboard);
+        for (int depth = 1; depth <= counts.length; depth++) {
+            assertEquals(fen + " depth " + depth, counts[depth - 1],
+                    perft.perft(depth));
+        }
+    }
+
+    private static void assertCounts(String fen, long... counts) {
+        ChessBoard board = new ChessBoard(fen);
+        Perft perft = new Perft(board, counts.length);
+        long hash = board.hash();
+        for (int depth = 1; depth <= counts.length; depth++) {
+            assertEquals("depth " + depth, counts[depth - 1],
+                    perft.perft(depth));
+        }
+        assertEquals(hash, board.hash());
+    }
+}